@@ -75,6 +75,50 @@ public class ClassifaiApp
             {
                 removeDbLock = true;
             }
+            else if(arg.contains("--writebehind"))
+            {
+                DbConfig.configureWriteBehind(true);
+            }
+            else if(arg.contains("--dedup"))
+            {
+                DbConfig.configureDeduplication(true);
+            }
+            else if(arg.contains("--cachesize="))
+            {
+                String[] buffer = args[i].split("=");
+
+                if(!DbConfig.configureThumbnailCache(buffer[1])) return false;
+            }
+            else if(arg.contains("--thumbnailsizes="))
+            {
+                String[] buffer = args[i].split("=");
+
+                if(!DbConfig.configureThumbnailSizes(buffer[1])) return false;
+            }
+            else if(arg.contains("--prefetch="))
+            {
+                String[] buffer = args[i].split("=");
+
+                if(!DbConfig.configurePrefetch(buffer[1])) return false;
+            }
+            else if(arg.contains("--decodebudget="))
+            {
+                String[] buffer = args[i].split("=");
+
+                if(!DbConfig.configureDecodeBudget(buffer[1])) return false;
+            }
+            else if(arg.contains("--conversionthreads="))
+            {
+                String[] buffer = args[i].split("=");
+
+                if(!DbConfig.configureConversionThreads(buffer[1])) return false;
+            }
+            else if(arg.contains("--db="))
+            {
+                String[] buffer = args[i].split("=");
+
+                if(!DbConfig.configureStorageEngine(buffer[1])) return false;
+            }
         }
       
         FlatLightLaf.install();
@@ -16,9 +16,12 @@
 package ai.classifai.config;
 
 import ai.classifai.database.DatabaseConfig;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Database config before starting the server
@@ -28,6 +31,142 @@ import java.io.File;
 @Slf4j
 public class DbConfig
 {
+    private static final int MIN_THUMBNAIL_SIZE = 16;
+    private static final int MAX_THUMBNAIL_SIZE = 1024;
+    private static final int MAX_PREFETCH_SIZE = 64;
+
+    public static boolean configureStorageEngine(@NonNull String inputArg)
+    {
+        return DatabaseConfig.setStorageEngine(inputArg);
+    }
+
+    public static void configureWriteBehind(boolean isWriteBehind)
+    {
+        DatabaseConfig.setWriteBehind(isWriteBehind);
+    }
+
+    public static void configureDeduplication(boolean isDeduplication)
+    {
+        DatabaseConfig.setDeduplication(isDeduplication);
+    }
+
+    /**
+     * @param inputArg byte budget of in-memory thumbnail cache in MB, 0 to disable
+     */
+    public static boolean configureThumbnailCache(@NonNull String inputArg)
+    {
+        try
+        {
+            long cacheSizeInMB = Long.parseLong(inputArg);
+
+            if(cacheSizeInMB < 0) throw new NumberFormatException();
+
+            DatabaseConfig.setThumbnailCacheSize(cacheSizeInMB * 1024 * 1024);
+
+            return true;
+        }
+        catch(NumberFormatException e)
+        {
+            log.info("Invalid thumbnail cache size: " + inputArg + ". Expected size in MB.");
+            return false;
+        }
+    }
+
+    /**
+     * @param inputArg comma separated thumbnail sizes in pixel to generate in background, e.g. 64,128,256
+     */
+    public static boolean configureThumbnailSizes(@NonNull String inputArg)
+    {
+        List<Integer> thumbnailSizeList = new ArrayList<>();
+
+        try
+        {
+            for(String size : inputArg.split(","))
+            {
+                Integer thumbnailSize = Integer.parseInt(size.trim());
+
+                if((thumbnailSize < MIN_THUMBNAIL_SIZE) || (thumbnailSize > MAX_THUMBNAIL_SIZE)) throw new NumberFormatException();
+
+                if(!thumbnailSizeList.contains(thumbnailSize)) thumbnailSizeList.add(thumbnailSize);
+            }
+        }
+        catch(NumberFormatException e)
+        {
+            log.info("Invalid thumbnail sizes: " + inputArg + ". Expected comma separated sizes between " + MIN_THUMBNAIL_SIZE + " and " + MAX_THUMBNAIL_SIZE + " pixel.");
+            return false;
+        }
+
+        DatabaseConfig.setThumbnailSizeList(thumbnailSizeList);
+
+        return true;
+    }
+
+    /**
+     * @param inputArg number of upcoming images to prefetch, 0 to disable
+     */
+    public static boolean configurePrefetch(@NonNull String inputArg)
+    {
+        try
+        {
+            int prefetchSize = Integer.parseInt(inputArg);
+
+            if((prefetchSize < 0) || (prefetchSize > MAX_PREFETCH_SIZE)) throw new NumberFormatException();
+
+            DatabaseConfig.setPrefetchSize(prefetchSize);
+
+            return true;
+        }
+        catch(NumberFormatException e)
+        {
+            log.info("Invalid prefetch size: " + inputArg + ". Expected number of images between 0 and " + MAX_PREFETCH_SIZE + ".");
+            return false;
+        }
+    }
+
+    /**
+     * @param inputArg byte budget of concurrent image decoding in MB
+     */
+    public static boolean configureDecodeBudget(@NonNull String inputArg)
+    {
+        try
+        {
+            long decodeBudgetInMB = Long.parseLong(inputArg);
+
+            if(decodeBudgetInMB <= 0) throw new NumberFormatException();
+
+            DatabaseConfig.setDecodeMemoryBudget(decodeBudgetInMB * 1024 * 1024);
+
+            return true;
+        }
+        catch(NumberFormatException e)
+        {
+            log.info("Invalid decode memory budget: " + inputArg + ". Expected positive size in MB.");
+            return false;
+        }
+    }
+
+    /**
+     * @param inputArg number of pdf pages rendered at the same time in conversion
+     */
+    public static boolean configureConversionThreads(@NonNull String inputArg)
+    {
+        try
+        {
+            int conversionParallelism = Integer.parseInt(inputArg);
+
+            if(conversionParallelism <= 0) throw new NumberFormatException();
+
+            DatabaseConfig.setConversionParallelism(conversionParallelism);
+
+            return true;
+        }
+        catch(NumberFormatException e)
+        {
+            log.info("Invalid conversion threads: " + inputArg + ". Expected positive number of threads.");
+            return false;
+        }
+    }
+
     public static boolean isDatabaseSetup(boolean unlockDatabase)
     {
         File portfolioLockPath = new File(DatabaseConfig.getPortfolioLockFile());
@@ -15,7 +15,12 @@
  */
 package ai.classifai;
 
+import ai.classifai.data.thumbnail.ThumbnailCache;
+import ai.classifai.data.thumbnail.ThumbnailGenerator;
+import ai.classifai.data.thumbnail.ThumbnailStore;
 import ai.classifai.database.DatabaseConfig;
+import ai.classifai.database.annotation.AnnotationQuery;
+import ai.classifai.database.annotation.AnnotationVerticle;
 import ai.classifai.database.annotation.bndbox.BoundingBoxVerticle;
 import ai.classifai.database.annotation.seg.SegVerticle;
 import ai.classifai.database.portfolio.PortfolioVerticle;
@@ -23,11 +28,21 @@ import ai.classifai.router.EndpointRouter;
 import ai.classifai.ui.launcher.LogoHandler;
 import ai.classifai.ui.launcher.RunningStatus;
 import ai.classifai.ui.launcher.WelcomeLauncher;
+import ai.classifai.util.data.ImageHandler;
+import ai.classifai.util.data.PageRenderer;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main verticle to create multiple verticles
@@ -40,7 +55,10 @@ public class MainVerticle extends AbstractVerticle
     private static BoundingBoxVerticle boundingBoxVerticle;
     private static SegVerticle segVerticle;
     private static EndpointRouter endpointRouter;
+    private static ThumbnailStore thumbnailStore;
 
+    //closed once, either from launcher or from shutdown hook
+    private static final AtomicBoolean isClosed = new AtomicBoolean(false);
 
     static
     {
@@ -68,11 +86,101 @@ public class MainVerticle extends AbstractVerticle
                 log.debug("Root database could not created: ", dataRootPath);
             }
         }
+
+        try
+        {
+            thumbnailStore = new ThumbnailStore(DatabaseConfig.getThumbnailPack());
+            ImageHandler.setThumbnailStore(thumbnailStore);
+        }
+        catch(IOException e)
+        {
+            log.info("Thumbnail store could not be opened. Thumbnails will be generated on every request: ", e);
+        }
+
+        ImageHandler.setThumbnailGenerator(new ThumbnailGenerator(DatabaseConfig.getThumbnailSizeList()));
+
+        if(DatabaseConfig.getThumbnailCacheSize() > 0)
+        {
+            AnnotationVerticle.setThumbnailCache(new ThumbnailCache(DatabaseConfig.getThumbnailCacheSize()));
+        }
+    }
+
+    /**
+     * Drop thumbnails of images no longer referred by any project
+     */
+    private void compactThumbnailStore()
+    {
+        //skip loading every image path of every project unless stale records are worth reclaiming
+        if((thumbnailStore == null) || !thumbnailStore.isCompactionNeeded()) return;
+
+        //thumbnails stored after this are kept, their data points may not be in the loaded paths
+        long livePathsPackSize = thumbnailStore.getPackSize();
+
+        Future<Set<String>> bndBoxPathList = loadImagePathList(BoundingBoxVerticle.getJdbcClient());
+        Future<Set<String>> segPathList = loadImagePathList(SegVerticle.getJdbcClient());
+
+        CompositeFuture.all(bndBoxPathList, segPathList).onComplete(load -> {
+
+            if(load.failed())
+            {
+                log.info("Failed in loading image paths for thumbnail store compaction: ", load.cause());
+                return;
+            }
+
+            Set<String> livePaths = new HashSet<>(bndBoxPathList.result());
+            livePaths.addAll(segPathList.result());
+
+            vertx.executeBlocking(promise -> {
+                try
+                {
+                    thumbnailStore.compact(livePaths, livePathsPackSize);
+                    promise.complete();
+                }
+                catch(IOException e)
+                {
+                    promise.fail(e);
+                }
+            }, false, compact -> {
+                if(compact.failed())
+                {
+                    log.info("Thumbnail store compaction failed: ", compact.cause());
+                }
+            });
+        });
+    }
+
+    private Future<Set<String>> loadImagePathList(JDBCClient jdbcClient)
+    {
+        Promise<Set<String>> promise = Promise.promise();
+
+        jdbcClient.query(AnnotationQuery.loadImagePathList(), fetch -> {
+
+            if(fetch.succeeded())
+            {
+                Set<String> pathList = new HashSet<>();
+
+                for(JsonArray row : fetch.result().getResults())
+                {
+                    pathList.add(new File(row.getString(0)).getAbsolutePath());
+                }
+
+                promise.complete(pathList);
+            }
+            else
+            {
+                promise.fail(fetch.cause());
+            }
+        });
+
+        return promise.future();
     }
 
     @Override
     public void start(Promise<Void> promise) {
 
+        //flush buffered annotation updates on SIGTERM and in headless runs, not only when launcher window closes
+        Runtime.getRuntime().addShutdownHook(new Thread(MainVerticle::closeVerticles, "classifai-shutdown"));
+
         WelcomeLauncher.start();
 
         configureDatabase();
@@ -117,6 +225,8 @@ public class MainVerticle extends AbstractVerticle
                     log.info("Welcome Launcher failed to launch: ", e);
                 }
 
+                compactThumbnailStore();
+
                 promise.complete();
 
             } else {
@@ -127,11 +237,21 @@ public class MainVerticle extends AbstractVerticle
 
     public static void closeVerticles()
     {
+        if(isClosed.getAndSet(true)) return;
+
         try {
 
             boundingBoxVerticle.stop(Promise.promise());
             segVerticle.stop(Promise.promise());
             endpointRouter.stop(Promise.promise());
+
+            ImageHandler.closeLinkedFolders();
+
+            PageRenderer.close();
+
+            ImageHandler.getThumbnailGenerator().close();
+
+            if(thumbnailStore != null) thumbnailStore.close();
         }
         catch(Exception e)
         {
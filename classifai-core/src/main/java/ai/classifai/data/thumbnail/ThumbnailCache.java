@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.thumbnail;
+
+import ai.classifai.data.type.image.DocumentPage;
+import io.vertx.core.json.JsonObject;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of thumbnail and orientation corrected image properties
+ *
+ * Entries are validated against mtime and size of the image, or of the document for a page, on every get.
+ * When the byte budget is exceeded, least frequently used entries are evicted until usage drops below
+ * EVICTION_TARGET of the budget. Access frequencies are halved once accesses since the last aging exceed
+ * AGING_FACTOR times the number of entries, so that entries popular only in the past age out.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class ThumbnailCache
+{
+    private static final double EVICTION_TARGET = 0.9;
+
+    private static final int AGING_FACTOR = 10;
+
+    //approximate fixed cost of map, entry and keys on top of encoded thumbnail
+    private static final long ENTRY_OVERHEAD = 256;
+
+    private final long byteBudget;
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    private final AtomicLong usedBytes = new AtomicLong(0);
+
+    //accesses since frequencies were last halved
+    private final AtomicLong accessCount = new AtomicLong(0);
+
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong evictionCount = new AtomicLong(0);
+
+    private static class CacheEntry
+    {
+        private final Map<String, String> imgData;
+        private final long mtime;
+        private final long fileSize;
+        private final long cost;
+
+        private final AtomicInteger frequency = new AtomicInteger(1);
+
+        private CacheEntry(Map<String, String> imgData, long mtime, long fileSize, long cost)
+        {
+            this.imgData = imgData;
+            this.mtime = mtime;
+            this.fileSize = fileSize;
+            this.cost = cost;
+        }
+    }
+
+    public ThumbnailCache(long byteBudget)
+    {
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * Get cached thumbnail data of image
+     *
+     * @return thumbnail data as returned by ImageHandler.getThumbNail, or null on miss or when image changed
+     */
+    public Map<String, String> get(@NonNull String imagePath, int thumbnailSize)
+    {
+        String key = getKey(imagePath, thumbnailSize);
+
+        CacheEntry entry = cache.get(key);
+
+        accessCount.incrementAndGet();
+
+        if(entry != null)
+        {
+            File file = DocumentPage.getSourceFile(imagePath);
+
+            if((entry.mtime == file.lastModified()) && (entry.fileSize == file.length()))
+            {
+                entry.frequency.incrementAndGet();
+                hitCount.incrementAndGet();
+
+                return entry.imgData;
+            }
+
+            invalidate(key);
+        }
+
+        missCount.incrementAndGet();
+
+        return null;
+    }
+
+    /**
+     * Check for a valid entry without counting an access, for warming the cache
+     */
+    public boolean contains(@NonNull String imagePath, int thumbnailSize)
+    {
+        CacheEntry entry = cache.get(getKey(imagePath, thumbnailSize));
+
+        if(entry == null) return false;
+
+        File file = DocumentPage.getSourceFile(imagePath);
+
+        return (entry.mtime == file.lastModified()) && (entry.fileSize == file.length());
+    }
+
+    public void put(@NonNull String imagePath, int thumbnailSize, @NonNull Map<String, String> imgData)
+    {
+        long cost = ENTRY_OVERHEAD + (long) imagePath.length() * 2;
+
+        for(String value : imgData.values())
+        {
+            cost += (long) value.length() * 2;
+        }
+
+        //never cache an entry larger than the whole budget
+        if(cost > byteBudget) return;
+
+        File file = DocumentPage.getSourceFile(imagePath);
+
+        accessCount.incrementAndGet();
+
+        CacheEntry previous = cache.put(getKey(imagePath, thumbnailSize), new CacheEntry(imgData, file.lastModified(), file.length(), cost));
+
+        usedBytes.addAndGet(previous == null ? cost : cost - previous.cost);
+
+        if(usedBytes.get() > byteBudget) evict();
+    }
+
+    private static String getKey(String imagePath, int thumbnailSize)
+    {
+        return thumbnailSize + File.pathSeparator + imagePath;
+    }
+
+    private void invalidate(String key)
+    {
+        CacheEntry previous = cache.remove(key);
+
+        if(previous != null) usedBytes.addAndGet(-previous.cost);
+    }
+
+    private synchronized void evict()
+    {
+        //another thread might have evicted while waiting for the lock
+        if(usedBytes.get() <= byteBudget) return;
+
+        List<Map.Entry<String, CacheEntry>> entries = new ArrayList<>(cache.entrySet());
+
+        boolean isAging = accessCount.get() > (long) AGING_FACTOR * entries.size();
+
+        if(isAging) accessCount.set(0);
+
+        //snapshot frequency so that ordering is stable while other threads keep accessing
+        Map<String, Integer> frequencies = new HashMap<>();
+
+        for(Map.Entry<String, CacheEntry> entry : entries)
+        {
+            AtomicInteger frequency = entry.getValue().frequency;
+
+            frequencies.put(entry.getKey(), isAging ? frequency.updateAndGet(value -> value >> 1) : frequency.get());
+        }
+
+        entries.sort(Comparator.comparingInt(entry -> frequencies.get(entry.getKey())));
+
+        long target = (long) (byteBudget * EVICTION_TARGET);
+
+        for(Map.Entry<String, CacheEntry> entry : entries)
+        {
+            if(usedBytes.get() <= target) break;
+
+            //only remove entry when it is not replaced in the meantime
+            if(cache.remove(entry.getKey(), entry.getValue()))
+            {
+                usedBytes.addAndGet(-entry.getValue().cost);
+                evictionCount.incrementAndGet();
+            }
+        }
+
+        log.debug("Thumbnail cache evicted to " + usedBytes.get() + " bytes with " + cache.size() + " entries");
+    }
+
+    public JsonObject getStats()
+    {
+        return new JsonObject()
+                .put("hit", hitCount.get())
+                .put("miss", missCount.get())
+                .put("eviction", evictionCount.get())
+                .put("entries", cache.size())
+                .put("used_bytes", usedBytes.get())
+                .put("budget_bytes", byteBudget);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.thumbnail;
+
+import ai.classifai.data.type.image.ImageHeader;
+import ai.classifai.util.data.DecodeScheduler;
+import lombok.NonNull;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Thumbnail generation with memory bounded by thumbnail size
+ *
+ * Image is decoded with source subsampling to at least SUBSAMPLING_MARGIN times the thumbnail size,
+ * then reduced with an area average resize and rotated with its exif orientation.
+ * Decoding waits in DecodeScheduler until its subsampled pixel buffers fit into the decode memory budget.
+ *
+ * @author codenamewei
+ */
+public class ThumbnailDecoder
+{
+    //keep decoded image at least twice the thumbnail so area average still smooths aliasing of subsampling
+    private static final int SUBSAMPLING_MARGIN = 2;
+
+    public static Thumbnail decode(@NonNull File file, int thumbnailSize, @NonNull DecodeScheduler.Priority priority) throws IOException
+    {
+        return decode(file, 0, thumbnailSize, priority);
+    }
+
+    /**
+     * @param imageIndex page of a multi-page tif, 0 for other images
+     */
+    public static Thumbnail decode(@NonNull File file, int imageIndex, int thumbnailSize, @NonNull DecodeScheduler.Priority priority) throws IOException
+    {
+        int orientation = (imageIndex == 0) ? ImageHeader.readExifOrientation(file) : 0;
+        boolean isTransposed = (orientation == 6) || (orientation == 8);
+
+        try(ImageInputStream input = ImageIO.createImageInputStream(file))
+        {
+            if(input == null) throw new IOException("Image could not be opened: " + file.getAbsolutePath());
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if(!readers.hasNext()) throw new IOException("No image reader found for " + file.getAbsolutePath());
+
+            ImageReader reader = readers.next();
+
+            try
+            {
+                reader.setInput(input, true, true);
+
+                int srcWidth = reader.getWidth(imageIndex);
+                int srcHeight = reader.getHeight(imageIndex);
+
+                //original size after orientation correction
+                int oriWidth = isTransposed ? srcHeight : srcWidth;
+                int oriHeight = isTransposed ? srcWidth : srcHeight;
+
+                int[] thumbnailDimension = getThumbnailDimension(oriWidth, oriHeight, thumbnailSize);
+
+                //resize before rotation, so target is in orientation of source
+                int targetWidth = isTransposed ? thumbnailDimension[1] : thumbnailDimension[0];
+                int targetHeight = isTransposed ? thumbnailDimension[0] : thumbnailDimension[1];
+
+                int subsampling = Math.max(1, Math.min(srcWidth / (targetWidth * SUBSAMPLING_MARGIN), srcHeight / (targetHeight * SUBSAMPLING_MARGIN)));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                //decoded image and its pixel array copy in resize
+                long decodeCost = 2 * DecodeScheduler.estimateCost((srcWidth + subsampling - 1) / subsampling, (srcHeight + subsampling - 1) / subsampling);
+
+                DecodeScheduler.Permit permit = DecodeScheduler.acquire(decodeCost, priority);
+
+                try
+                {
+                    BufferedImage decoded = reader.read(imageIndex, param);
+
+                    BufferedImage resized = resizeAreaAverage(decoded, targetWidth, targetHeight);
+
+                    BufferedImage thumbnail = rotateWithOrientation(resized, orientation);
+
+                    return new Thumbnail(getDepth(decoded), oriWidth, oriHeight, encode(thumbnail));
+                }
+                finally
+                {
+                    permit.close();
+                }
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Thumbnail of an image which is already decoded, such as a page of pdf rendered at reduced resolution
+     *
+     * @param oriWidth width of image at full resolution
+     * @param oriHeight height of image at full resolution
+     */
+    public static Thumbnail fromImage(@NonNull BufferedImage image, int oriWidth, int oriHeight, int thumbnailSize) throws IOException
+    {
+        int[] thumbnailDimension = getThumbnailDimension(image.getWidth(), image.getHeight(), thumbnailSize);
+
+        BufferedImage resized = resizeAreaAverage(image, thumbnailDimension[0], thumbnailDimension[1]);
+
+        return new Thumbnail(getDepth(image), oriWidth, oriHeight, encode(resized));
+    }
+
+    /**
+     * @return width and height fitting into thumbnail size with aspect ratio of image
+     */
+    private static int[] getThumbnailDimension(int width, int height, int thumbnailSize)
+    {
+        int thumbnailWidth = thumbnailSize;
+        int thumbnailHeight = thumbnailSize;
+
+        if(height > width)
+        {
+            thumbnailWidth = Math.max(1, thumbnailHeight * width / height);
+        }
+        else
+        {
+            thumbnailHeight = Math.max(1, thumbnailWidth * height / width);
+        }
+
+        return new int[]{thumbnailWidth, thumbnailHeight};
+    }
+
+    private static Integer getDepth(BufferedImage image)
+    {
+        int type = image.getColorModel().getColorSpace().getType();
+        boolean grayscale = (type == ColorSpace.TYPE_GRAY || type == ColorSpace.CS_GRAY);
+
+        return grayscale ? 1 : 3;
+    }
+
+    private static byte[] encode(BufferedImage thumbnail) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(thumbnail, "PNG", out);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Box filter resize, every target pixel is the average of source pixels it covers
+     */
+    private static BufferedImage resizeAreaAverage(BufferedImage src, int targetWidth, int targetHeight)
+    {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+
+        int[] srcPixels = src.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+        int[] targetPixels = new int[targetWidth * targetHeight];
+
+        for(int y = 0; y < targetHeight; ++y)
+        {
+            int y0 = (int) ((long) y * srcHeight / targetHeight);
+            int y1 = Math.max(y0 + 1, (int) ((long) (y + 1) * srcHeight / targetHeight));
+
+            for(int x = 0; x < targetWidth; ++x)
+            {
+                int x0 = (int) ((long) x * srcWidth / targetWidth);
+                int x1 = Math.max(x0 + 1, (int) ((long) (x + 1) * srcWidth / targetWidth));
+
+                long a = 0, r = 0, g = 0, b = 0;
+
+                for(int sy = y0; sy < y1; ++sy)
+                {
+                    int rowOffset = sy * srcWidth;
+
+                    for(int sx = x0; sx < x1; ++sx)
+                    {
+                        int pixel = srcPixels[rowOffset + sx];
+
+                        a += (pixel >>> 24) & 0xff;
+                        r += (pixel >> 16) & 0xff;
+                        g += (pixel >> 8) & 0xff;
+                        b += pixel & 0xff;
+                    }
+                }
+
+                long count = (long) (y1 - y0) * (x1 - x0);
+
+                targetPixels[y * targetWidth + x] = (int) ((a / count) << 24 | (r / count) << 16 | (g / count) << 8 | (b / count));
+            }
+        }
+
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
+        target.setRGB(0, 0, targetWidth, targetHeight, targetPixels, 0, targetWidth);
+
+        return target;
+    }
+
+    private static BufferedImage rotate(BufferedImage image, double angle){
+
+        double sin = Math.abs(Math.sin(angle));
+        double cos = Math.abs(Math.cos(angle));
+
+        int w = image.getWidth();
+        int h = image.getHeight();
+
+        int newW = (int) Math.floor(w * cos + h * sin);
+        int newH = (int) Math.floor(h * cos + w * sin);
+
+        int type = image.getType();
+        BufferedImage result = new BufferedImage(newW, newH, type);
+
+        Graphics2D g = result.createGraphics();
+
+        g.translate((newW - w) / 2, (newH - h) / 2);
+        g.rotate(angle,((double)w) / 2, ((double)h) / 2);
+        g.drawRenderedImage(image, null);
+
+        return result;
+    }
+
+    private static BufferedImage rotateWithOrientation(BufferedImage img, int orientation){
+        double angle = 0;
+        if (orientation == 8) angle = -Math.PI/2;
+        else if (orientation == 3) angle = Math.PI;
+        else if (orientation == 6) angle = Math.PI/2;
+
+        if (angle == 0) return img;
+
+        return rotate(img,angle);
+    }
+}
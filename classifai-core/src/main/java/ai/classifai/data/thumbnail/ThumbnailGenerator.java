@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.thumbnail;
+
+import ai.classifai.loader.ProjectLoader;
+import ai.classifai.util.data.DecodeScheduler;
+import ai.classifai.util.data.ImageHandler;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generate thumbnails on a CPU sized worker pool
+ *
+ * Thumbnails of newly added images are generated in background right after ingestion.
+ * Interactive requests for an image which is not ready yet jump ahead of the background queue.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class ThumbnailGenerator
+{
+    private static final int INTERACTIVE_PRIORITY = 0;
+    private static final int BACKGROUND_PRIORITY = 1;
+
+    private final ThreadPoolExecutor executor;
+
+    //FIFO order within same priority
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    //additional thumbnail sizes generated in background besides the default size
+    @Getter private final List<Integer> extraSizeList;
+
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask>
+    {
+        private final int priority;
+        private final long sequence;
+        private final Runnable task;
+
+        private PrioritizedTask(int priority, long sequence, Runnable task)
+        {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other)
+        {
+            if(priority != other.priority) return Integer.compare(priority, other.priority);
+
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public ThumbnailGenerator(@NonNull List<Integer> extraSizeList)
+    {
+        this.extraSizeList = extraSizeList;
+
+        int poolSize = Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger threadCount = new AtomicInteger(0);
+
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "classifai-thumbnail-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    private void execute(int priority, Runnable task)
+    {
+        //execute() rather than submit() to keep the task comparable in the priority queue
+        executor.execute(new PrioritizedTask(priority, sequence.getAndIncrement(), task));
+    }
+
+    /**
+     * Request thumbnail for display, served ahead of background generation
+     */
+    public CompletableFuture<Thumbnail> request(@NonNull File image, int thumbnailSize)
+    {
+        CompletableFuture<Thumbnail> future = new CompletableFuture<>();
+
+        try
+        {
+            execute(INTERACTIVE_PRIORITY, () -> {
+                try
+                {
+                    future.complete(ImageHandler.loadThumbnail(image, thumbnailSize));
+                }
+                catch(Exception e)
+                {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch(RejectedExecutionException e)
+        {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Generate thumbnails of all sizes for newly added images in background
+     * Progress is updated in project loader per image
+     */
+    public void submit(@NonNull ProjectLoader loader, @NonNull List<File> imageList)
+    {
+        loader.addThumbnailTotal(imageList.size());
+
+        for(File image : imageList)
+        {
+            execute(BACKGROUND_PRIORITY, () -> {
+                try
+                {
+                    ImageHandler.loadThumbnail(image, ImageHandler.getDefaultThumbnailSize(), DecodeScheduler.Priority.BATCH);
+
+                    for(Integer thumbnailSize : extraSizeList)
+                    {
+                        ImageHandler.loadThumbnail(image, thumbnailSize, DecodeScheduler.Priority.BATCH);
+                    }
+                }
+                catch(Exception e)
+                {
+                    log.debug("Failed in generating thumbnail in background for " + image.getAbsolutePath(), e);
+                }
+                finally
+                {
+                    loader.updateThumbnailProgress();
+                }
+            });
+        }
+    }
+
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+}
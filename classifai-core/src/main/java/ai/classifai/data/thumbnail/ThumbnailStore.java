@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.thumbnail;
+
+import ai.classifai.data.type.image.DocumentPage;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent thumbnail store
+ *
+ * Thumbnails are appended to a single pack file and read back through memory mappings of fixed size segments.
+ * A segment is mapped once the pack has grown past its end and stays mapped, records in the tail are read through the channel.
+ * The index is kept in memory, keyed by image path and thumbnail size and validated against mtime and size of the image,
+ * and is rebuilt on open by scanning the pack.
+ *
+ * Record layout: magic, path length, mtime, file size, thumbnail size, depth, original width, original height, data length, path, data
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class ThumbnailStore
+{
+    private static final int RECORD_MAGIC = 0x54484D42;
+
+    //magic, path length, mtime, file size, thumbnail size, depth, original width, original height, data length
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 4;
+
+    private static final int MAX_PATH_LENGTH = 8192;
+
+    //compact only when at least this fraction of the pack is occupied by stale records
+    private static final double COMPACTION_THRESHOLD = 0.25;
+
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final long segmentSize;
+
+    private final File packFile;
+
+    private FileChannel channel;
+
+    //read-only mappings of complete segments by segment index, mapped on first read
+    private final Map<Integer, MappedByteBuffer> segments = new HashMap<>();
+
+    private long packSize = 0;
+    private long liveSize = 0;
+
+    private final Map<String, IndexEntry> index = new HashMap<>();
+
+    @AllArgsConstructor
+    private static class IndexEntry
+    {
+        private String path;
+        private long mtime;
+        private long fileSize;
+        private int depth;
+        private int oriWidth;
+        private int oriHeight;
+
+        //offset of thumbnail data in pack
+        private long dataOffset;
+        private int dataLength;
+
+        private int recordLength;
+    }
+
+    public ThumbnailStore(@NonNull String packPath) throws IOException
+    {
+        this(packPath, SEGMENT_SIZE);
+    }
+
+    ThumbnailStore(@NonNull String packPath, long segmentSize) throws IOException
+    {
+        this.segmentSize = segmentSize;
+        packFile = new File(packPath);
+
+        File parent = packFile.getParentFile();
+
+        if((parent != null) && !parent.exists() && !parent.mkdirs())
+        {
+            throw new IOException("Thumbnail store folder could not be created: " + parent);
+        }
+
+        open();
+    }
+
+    private void open() throws IOException
+    {
+        channel = FileChannel.open(packFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        index.clear();
+        packSize = 0;
+        liveSize = 0;
+        segments.clear();
+
+        scan();
+
+        log.debug("Thumbnail store opened with " + index.size() + " entries from " + packFile);
+    }
+
+    /**
+     * Rebuild index by walking all records. A torn record at the tail (unfinished append) is truncated.
+     */
+    private void scan() throws IOException
+    {
+        long channelSize = channel.size();
+        long position = 0;
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+        while(position + RECORD_HEADER_SIZE <= channelSize)
+        {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+
+            if(header.getInt() != RECORD_MAGIC) break;
+
+            int pathLength = header.getInt();
+            long mtime = header.getLong();
+            long fileSize = header.getLong();
+            int thumbnailSize = header.getInt();
+            int depth = header.getInt();
+            int oriWidth = header.getInt();
+            int oriHeight = header.getInt();
+            int dataLength = header.getInt();
+
+            if((pathLength <= 0) || (pathLength > MAX_PATH_LENGTH) || (dataLength < 0)) break;
+
+            int recordLength = RECORD_HEADER_SIZE + pathLength + dataLength;
+
+            if(position + recordLength > channelSize) break;
+
+            ByteBuffer pathBuffer = ByteBuffer.allocate(pathLength);
+            readFully(pathBuffer, position + RECORD_HEADER_SIZE);
+
+            String path = new String(pathBuffer.array(), StandardCharsets.UTF_8);
+
+            long dataOffset = position + RECORD_HEADER_SIZE + pathLength;
+
+            putIndex(getKey(path, thumbnailSize), new IndexEntry(path, mtime, fileSize, depth, oriWidth, oriHeight, dataOffset, dataLength, recordLength));
+
+            position += recordLength;
+        }
+
+        if(position < channelSize)
+        {
+            log.info("Thumbnail store truncated from " + channelSize + " to " + position + " bytes due to incomplete record");
+            channel.truncate(position);
+        }
+
+        packSize = position;
+    }
+
+    private static String getKey(String path, int thumbnailSize)
+    {
+        return thumbnailSize + File.pathSeparator + path;
+    }
+
+    private void putIndex(String key, IndexEntry entry)
+    {
+        IndexEntry previous = index.put(key, entry);
+
+        if(previous != null) liveSize -= previous.recordLength;
+
+        liveSize += entry.recordLength;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+
+            if(read < 0) throw new IOException("Unexpected end of thumbnail pack at " + position);
+
+            position += read;
+        }
+    }
+
+    /**
+     * Get stored thumbnail of image
+     *
+     * @return thumbnail, or null when absent or when image changed since the thumbnail was stored
+     */
+    public synchronized Thumbnail get(@NonNull File image, int thumbnailSize)
+    {
+        IndexEntry entry = index.get(getKey(image.getAbsolutePath(), thumbnailSize));
+
+        File source = DocumentPage.getSourceFile(image.getPath());
+
+        if((entry == null) || (entry.mtime != source.lastModified()) || (entry.fileSize != source.length())) return null;
+
+        try
+        {
+            return new Thumbnail(entry.depth, entry.oriWidth, entry.oriHeight, readData(entry));
+        }
+        catch(IOException e)
+        {
+            log.debug("Failed in reading thumbnail of " + image.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private byte[] readData(IndexEntry entry) throws IOException
+    {
+        byte[] data = new byte[entry.dataLength];
+
+        int segmentIndex = (int) (entry.dataOffset / segmentSize);
+        long segmentStart = segmentIndex * segmentSize;
+        long segmentEnd = segmentStart + segmentSize;
+
+        //records across a segment boundary or in the tail segment still being appended to are read through the channel
+        if((entry.dataOffset + entry.dataLength <= segmentEnd) && (segmentEnd <= packSize))
+        {
+            MappedByteBuffer segment = segments.get(segmentIndex);
+
+            if(segment == null)
+            {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentSize);
+                segments.put(segmentIndex, segment);
+            }
+
+            ByteBuffer view = segment.duplicate();
+            view.position((int) (entry.dataOffset - segmentStart));
+            view.get(data);
+        }
+        else
+        {
+            readFully(ByteBuffer.wrap(data), entry.dataOffset);
+        }
+
+        return data;
+    }
+
+    /**
+     * Append thumbnail of image to pack. Previous record of the same image and thumbnail size becomes stale.
+     */
+    public synchronized void put(@NonNull File image, int thumbnailSize, @NonNull Thumbnail thumbnail)
+    {
+        String path = image.getAbsolutePath();
+
+        //validated against the document for a page
+        File source = DocumentPage.getSourceFile(image.getPath());
+
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+
+        if(pathBytes.length > MAX_PATH_LENGTH) return;
+
+        byte[] data = thumbnail.getData();
+
+        int recordLength = RECORD_HEADER_SIZE + pathBytes.length + data.length;
+
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(RECORD_MAGIC)
+                .putInt(pathBytes.length)
+                .putLong(source.lastModified())
+                .putLong(source.length())
+                .putInt(thumbnailSize)
+                .putInt(thumbnail.getDepth())
+                .putInt(thumbnail.getOriWidth())
+                .putInt(thumbnail.getOriHeight())
+                .putInt(data.length)
+                .put(pathBytes)
+                .put(data);
+        record.flip();
+
+        try
+        {
+            long position = packSize;
+
+            while(record.hasRemaining())
+            {
+                position += channel.write(record, position);
+            }
+
+            putIndex(getKey(path, thumbnailSize), new IndexEntry(path, source.lastModified(), source.length(), thumbnail.getDepth(), thumbnail.getOriWidth(),
+                    thumbnail.getOriHeight(), packSize + RECORD_HEADER_SIZE + pathBytes.length, data.length, recordLength));
+
+            packSize += recordLength;
+        }
+        catch(IOException e)
+        {
+            log.debug("Failed in storing thumbnail of " + path, e);
+        }
+    }
+
+    /**
+     * Stale records of replaced thumbnails exceed the compaction threshold
+     * Thumbnails of images no longer referred by any project are only found out while compacting
+     */
+    public synchronized boolean isCompactionNeeded()
+    {
+        return (packSize > 0) && ((packSize - liveSize) >= (packSize * COMPACTION_THRESHOLD));
+    }
+
+    /**
+     * Take before loading live paths. A thumbnail is stored only after its data point is committed,
+     * so every record before this position belongs to an image already visible to the live path query.
+     */
+    public synchronized long getPackSize()
+    {
+        return packSize;
+    }
+
+    /**
+     * Rewrite pack with only the latest record of images in livePaths
+     * Records are copied without holding the store lock, get and put are only blocked while records stored
+     * in the meantime are copied and the packs are swapped.
+     *
+     * @param livePaths absolute paths of images still referred by any project
+     * @param livePathsPackSize pack size taken before loading live paths, later records are kept regardless of live paths
+     */
+    public void compact(@NonNull Set<String> livePaths, long livePathsPackSize) throws IOException
+    {
+        Map<String, IndexEntry> snapshot = new HashMap<>();
+
+        synchronized (this)
+        {
+            for(Map.Entry<String, IndexEntry> entry : index.entrySet())
+            {
+                IndexEntry indexEntry = entry.getValue();
+
+                if(livePaths.contains(indexEntry.path) || (getRecordOffset(indexEntry) >= livePathsPackSize))
+                {
+                    snapshot.put(entry.getKey(), indexEntry);
+                }
+            }
+        }
+
+        File compactFile = new File(packFile.getAbsolutePath() + ".compact");
+
+        Map<String, IndexEntry> compactIndex = new HashMap<>();
+
+        FileChannel compactChannel = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        try
+        {
+            long compactSize = 0;
+
+            //positional reads of records already written, appends of put go beyond them
+            for(Map.Entry<String, IndexEntry> entry : snapshot.entrySet())
+            {
+                compactSize = copyRecord(entry.getKey(), entry.getValue(), compactChannel, compactSize, compactIndex);
+            }
+
+            synchronized (this)
+            {
+                //store closed while copying
+                if(!channel.isOpen()) throw new IOException("Thumbnail store closed during compaction");
+
+                //records stored while copying
+                for(Map.Entry<String, IndexEntry> entry : index.entrySet())
+                {
+                    if(snapshot.get(entry.getKey()) == entry.getValue()) continue;
+
+                    if(getRecordOffset(entry.getValue()) >= livePathsPackSize)
+                    {
+                        compactSize = copyRecord(entry.getKey(), entry.getValue(), compactChannel, compactSize, compactIndex);
+                    }
+                }
+
+                compactChannel.force(true);
+                compactChannel.close();
+
+                log.info("Compacting thumbnail store from " + packSize + " to " + compactSize + " bytes");
+
+                //a file still mapped or opened could not be replaced on Windows
+                close();
+
+                try
+                {
+                    Files.move(compactFile.toPath(), packFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch(IOException e)
+                {
+                    //previous pack is rescanned as is
+                    open();
+                    throw e;
+                }
+
+                channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+                index.clear();
+                index.putAll(compactIndex);
+
+                packSize = compactSize;
+                liveSize = 0;
+
+                for(IndexEntry entry : index.values())
+                {
+                    liveSize += entry.recordLength;
+                }
+            }
+        }
+        finally
+        {
+            if(compactChannel.isOpen()) compactChannel.close();
+
+            Files.deleteIfExists(compactFile.toPath());
+        }
+    }
+
+    private static long getRecordOffset(IndexEntry entry)
+    {
+        return entry.dataOffset + entry.dataLength - entry.recordLength;
+    }
+
+    /**
+     * @return size of compacted pack after appending the record
+     */
+    private long copyRecord(String key, IndexEntry entry, FileChannel compactChannel, long compactSize, Map<String, IndexEntry> compactIndex) throws IOException
+    {
+        long recordOffset = getRecordOffset(entry);
+
+        ByteBuffer record = ByteBuffer.allocate(entry.recordLength);
+        readFully(record, recordOffset);
+        record.flip();
+
+        long position = compactSize;
+
+        while(record.hasRemaining())
+        {
+            position += compactChannel.write(record, position);
+        }
+
+        compactIndex.put(key, new IndexEntry(entry.path, entry.mtime, entry.fileSize, entry.depth, entry.oriWidth, entry.oriHeight,
+                compactSize + (entry.dataOffset - recordOffset), entry.dataLength, entry.recordLength));
+
+        return compactSize + entry.recordLength;
+    }
+
+    /**
+     * Release mappings right away instead of on garbage collection, only done under the store lock so no read is in progress
+     */
+    private void unmap()
+    {
+        if(!segments.isEmpty())
+        {
+            try
+            {
+                //sun.misc.Unsafe.invokeCleaner, looked up reflectively as there is no public api to unmap
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                unsafeField.setAccessible(true);
+
+                Object unsafe = unsafeField.get(null);
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+
+                for(MappedByteBuffer segment : segments.values())
+                {
+                    invokeCleaner.invoke(unsafe, segment);
+                }
+            }
+            catch(ReflectiveOperationException | RuntimeException e)
+            {
+                log.debug("Thumbnail pack could not be unmapped, mapping is released on garbage collection", e);
+            }
+        }
+
+        segments.clear();
+    }
+
+    public synchronized void close()
+    {
+        unmap();
+
+        try
+        {
+            if((channel != null) && channel.isOpen())
+            {
+                channel.force(false);
+                channel.close();
+            }
+        }
+        catch(IOException e)
+        {
+            log.debug("Failed in closing thumbnail store: ", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.type.image;
+
+import ai.classifai.util.data.FileHandler;
+import lombok.NonNull;
+
+import java.io.File;
+
+/**
+ * Page of a multi-page pdf or tif document, ingested as a data point without writing an intermediate image
+ *
+ * Image path of a page is the document path with a page fragment, e.g. /data/scan.pdf#page=3 with page number from 1.
+ * Modification time and size of the document validate cached data of all of its pages.
+ *
+ * @author codenamewei
+ */
+public class DocumentPage
+{
+    private static final String PAGE_FRAGMENT = "#page=";
+
+    private static final String[] PDF_FILE_TYPES = new String[]{"pdf", "PDF"};
+
+    private static final String[] DOCUMENT_FILE_TYPES = new String[]{"pdf", "tif", "tiff", "PDF", "TIF", "TIFF"};
+
+    public static String[] getDocumentFileTypes()
+    {
+        return DOCUMENT_FILE_TYPES;
+    }
+
+    public static boolean isDocument(@NonNull File file)
+    {
+        return FileHandler.isfileSupported(file.getName(), DOCUMENT_FILE_TYPES);
+    }
+
+    public static boolean isPdf(@NonNull File document)
+    {
+        return FileHandler.isfileSupported(document.getName(), PDF_FILE_TYPES);
+    }
+
+    /**
+     * @param pageIndex page index from 0
+     */
+    public static String getPagePath(@NonNull File document, int pageIndex)
+    {
+        return document.getAbsolutePath() + PAGE_FRAGMENT + (pageIndex + 1);
+    }
+
+    public static boolean isPagePath(@NonNull String imagePath)
+    {
+        int index = imagePath.lastIndexOf(PAGE_FRAGMENT);
+
+        if((index <= 0) || !FileHandler.isfileSupported(imagePath.substring(0, index), DOCUMENT_FILE_TYPES)) return false;
+
+        try
+        {
+            return Integer.parseInt(imagePath.substring(index + PAGE_FRAGMENT.length())) > 0;
+        }
+        catch(NumberFormatException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @param pagePath image path of page, checked with isPagePath
+     */
+    public static File getDocument(@NonNull String pagePath)
+    {
+        return new File(pagePath.substring(0, pagePath.lastIndexOf(PAGE_FRAGMENT)));
+    }
+
+    /**
+     * @param pagePath image path of page, checked with isPagePath
+     * @return page index from 0
+     */
+    public static int getPageIndex(@NonNull String pagePath)
+    {
+        return Integer.parseInt(pagePath.substring(pagePath.lastIndexOf(PAGE_FRAGMENT) + PAGE_FRAGMENT.length())) - 1;
+    }
+
+    /**
+     * File whose modification time and size validate cached data of image path, the document for a page
+     */
+    public static File getSourceFile(@NonNull String imagePath)
+    {
+        return isPagePath(imagePath) ? getDocument(imagePath) : new File(imagePath);
+    }
+}
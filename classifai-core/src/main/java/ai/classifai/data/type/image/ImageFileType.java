@@ -37,6 +37,8 @@ public class ImageFileType {
 
     private static final Map base64header;
 
+    private static final Map<String, String> MIME_TYPE;
+
     private static final String[] ALLOWED_FILE_TYPES = new String[]{"jpg", "png", "jpeg", "bmp", "JPG", "PNG", "JPEG"}; //{"jpg", "png", "jpeg", "pdf", "bmp", "JPG", "PNG", "JPEG"};
 
     static
@@ -49,6 +51,19 @@ public class ImageFileType {
         base64header.put("png", "data:image/jpeg;base64,");
         base64header.put("PNG", "data:image/png;base64,");
         base64header.put("bmp", "data:image/bmp;base64,");
+
+        MIME_TYPE = new HashMap<>();
+        MIME_TYPE.put("jpg", "image/jpeg");
+        MIME_TYPE.put("jpeg", "image/jpeg");
+        MIME_TYPE.put("png", "image/png");
+        MIME_TYPE.put("bmp", "image/bmp");
+    }
+
+    public static String getMimeType(String imagePath)
+    {
+        String extension = imagePath.substring(imagePath.lastIndexOf('.') + 1).toLowerCase();
+
+        return MIME_TYPE.getOrDefault(extension, "application/octet-stream");
     }
 
     public static String[] getImageFileTypes()
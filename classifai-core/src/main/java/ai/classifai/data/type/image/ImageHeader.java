@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.type.image;
+
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Image properties read from header only, without decoding pixels
+ *
+ * @author codenamewei
+ */
+@Slf4j
+@Getter
+public class ImageHeader
+{
+    //jpeg end of image marker
+    private static final byte[] JPEG_EOI = new byte[]{(byte) 0xFF, (byte) 0xD9};
+
+    //png IEND chunk type and crc
+    private static final byte[] PNG_IEND = new byte[]{0x49, 0x45, 0x4E, 0x44, (byte) 0xAE, 0x42, 0x60, (byte) 0x82};
+
+    //end marker within the last bytes confirms a complete file without decoding
+    private static final int TRAILER_SEARCH_LENGTH = 64;
+
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    //image path of data point, page path for a page of document
+    private final String path;
+
+    private final ImageHeaderStatus status;
+
+    private final String formatName;
+
+    //width and height as stored, before exif orientation correction
+    private final int width;
+    private final int height;
+    private final int depth;
+
+    //exif orientation tag, 0 when absent
+    private final int orientation;
+    private final long fileSize;
+
+    //hex sha-256 of file content, null when not requested
+    private final String contentHash;
+
+    private ImageHeader(File file, String path, ImageHeaderStatus status, String formatName, int width, int height, int depth, int orientation, String contentHash)
+    {
+        this.file = file;
+        this.path = path;
+        this.status = status;
+        this.formatName = formatName;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.orientation = orientation;
+        this.fileSize = file.length();
+        this.contentHash = contentHash;
+    }
+
+    private ImageHeader(File file, ImageHeaderStatus status, String formatName, int width, int height, int depth, int orientation, String contentHash)
+    {
+        this(file, file.getAbsolutePath(), status, formatName, width, height, depth, orientation, contentHash);
+    }
+
+    private ImageHeader(File file, ImageHeaderStatus status, String formatName, int width, int height, int depth, int orientation)
+    {
+        this(file, status, formatName, width, height, depth, orientation, null);
+    }
+
+    private ImageHeader(File file, ImageHeaderStatus status)
+    {
+        this(file, status, null, 0, 0, 0, 0);
+    }
+
+    private boolean isTransposed()
+    {
+        return (orientation == 6) || (orientation == 8);
+    }
+
+    //width after exif orientation correction
+    public int getOriWidth()
+    {
+        return isTransposed() ? height : width;
+    }
+
+    //height after exif orientation correction
+    public int getOriHeight()
+    {
+        return isTransposed() ? width : height;
+    }
+
+    public boolean isValid()
+    {
+        return status.equals(ImageHeaderStatus.VALID);
+    }
+
+    /**
+     * Read format, dimension, depth and exif orientation of image through header parsing
+     * Corrupted and truncated files are classified instead of thrown
+     */
+    public static ImageHeader read(@NonNull File file)
+    {
+        return read(file, false);
+    }
+
+    /**
+     * @param isHashed compute content hash of valid image, in the same sequential read used for the trailer check
+     */
+    public static ImageHeader read(@NonNull File file, boolean isHashed)
+    {
+        if(!file.isFile()) return new ImageHeader(file, ImageHeaderStatus.FILE_NOT_FOUND);
+
+        try(ImageInputStream input = ImageIO.createImageInputStream(file))
+        {
+            if(input == null) return new ImageHeader(file, ImageHeaderStatus.FILE_NOT_FOUND);
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if(!readers.hasNext()) return new ImageHeader(file, ImageHeaderStatus.UNSUPPORTED_FORMAT);
+
+            ImageReader reader = readers.next();
+
+            try
+            {
+                reader.setInput(input, true, true);
+
+                String formatName = reader.getFormatName().toLowerCase();
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int depth = getDepth(reader);
+                int orientation = readExifOrientation(file);
+
+                if((width > ImageFileType.getMaxWidth()) || (height > ImageFileType.getMaxHeight()))
+                {
+                    return new ImageHeader(file, ImageHeaderStatus.EXCEED_MAX_SIZE, formatName, width, height, depth, orientation);
+                }
+
+                MessageDigest digest = isHashed ? MessageDigest.getInstance(CONTENT_HASH_ALGORITHM) : null;
+
+                byte[] trailer = isHashed ? readHashed(file, digest) : readTrailer(file);
+
+                //appended data such as motion photo or vendor trailers moves the end marker, only a failing decode means truncation
+                if(!hasTrailer(trailer, formatName) && !isLastRowDecodable(reader, width, height))
+                {
+                    return new ImageHeader(file, ImageHeaderStatus.TRUNCATED, formatName, width, height, depth, orientation);
+                }
+
+                String contentHash = isHashed ? toHex(digest.digest()) : null;
+
+                return new ImageHeader(file, ImageHeaderStatus.VALID, formatName, width, height, depth, orientation, contentHash);
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(CONTENT_HASH_ALGORITHM + " not supported by runtime", e);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            //image readers throw runtime exceptions on some malformed headers
+            log.debug("Failed in reading image header of " + file.getAbsolutePath(), e);
+            return new ImageHeader(file, ImageHeaderStatus.CORRUPTED);
+        }
+    }
+
+    /**
+     * Header of a page of pdf or tif document, with properties of the page as rendered
+     *
+     * @param file document
+     * @param contentHash content hash of page, null when not requested
+     */
+    public static ImageHeader readPage(@NonNull File file, int pageIndex, int width, int height, int depth, String contentHash)
+    {
+        ImageHeaderStatus status = ((width > ImageFileType.getMaxWidth()) || (height > ImageFileType.getMaxHeight())) ?
+                ImageHeaderStatus.EXCEED_MAX_SIZE : ImageHeaderStatus.VALID;
+
+        return new ImageHeader(file, DocumentPage.getPagePath(file, pageIndex), status, "png", width, height, depth, 0, contentHash);
+    }
+
+    /**
+     * Hex sha-256 of whole file content
+     */
+    public static String hash(@NonNull File file) throws IOException
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+
+            readHashed(file, digest);
+
+            return toHex(digest.digest());
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(CONTENT_HASH_ALGORITHM + " not supported by runtime", e);
+        }
+    }
+
+    /**
+     * Exif orientation of jpeg, read from metadata segments only
+     *
+     * @return orientation tag value, 0 when absent or not a jpeg
+     */
+    public static int readExifOrientation(@NonNull File file)
+    {
+        try
+        {
+            Metadata metadata = JpegMetadataReader.readMetadata(file);
+            Directory dir = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+
+            return (dir != null) && dir.containsTag(ExifIFD0Directory.TAG_ORIENTATION) ? dir.getInt(ExifIFD0Directory.TAG_ORIENTATION) : 0;
+        }
+        catch(Exception e)
+        {
+            return 0;
+        }
+    }
+
+    private static int getDepth(ImageReader reader) throws IOException
+    {
+        return getDepth(reader, 0);
+    }
+
+    /**
+     * @return 1 for grayscale, else 3
+     */
+    public static int getDepth(@NonNull ImageReader reader, int imageIndex) throws IOException
+    {
+        Iterator<ImageTypeSpecifier> imageTypes = reader.getImageTypes(imageIndex);
+
+        if((imageTypes == null) || !imageTypes.hasNext()) return 3;
+
+        int type = imageTypes.next().getColorModel().getColorSpace().getType();
+
+        return (type == ColorSpace.TYPE_GRAY || type == ColorSpace.CS_GRAY) ? 1 : 3;
+    }
+
+    /**
+     * Check end marker of formats which have one
+     *
+     * @param trailer last bytes of file
+     */
+    private static boolean hasTrailer(byte[] trailer, String formatName)
+    {
+        byte[] marker;
+
+        if(formatName.equals("jpeg") || formatName.equals("jpg"))
+        {
+            marker = JPEG_EOI;
+        }
+        else if(formatName.equals("png"))
+        {
+            marker = PNG_IEND;
+        }
+        else
+        {
+            return true;
+        }
+
+        for(int i = trailer.length - marker.length; i >= 0; --i)
+        {
+            if(Arrays.equals(Arrays.copyOfRange(trailer, i, i + marker.length), marker)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Decode the last row of image, which fails or warns of premature end when file is truncated
+     */
+    private static boolean isLastRowDecodable(ImageReader reader, int width, int height)
+    {
+        AtomicBoolean isWarned = new AtomicBoolean(false);
+
+        reader.addIIOReadWarningListener((source, warning) -> isWarned.set(true));
+
+        try
+        {
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, height - 1, width, 1));
+
+            reader.read(0, param);
+
+            return !isWarned.get();
+        }
+        catch(IOException | RuntimeException e)
+        {
+            return false;
+        }
+        finally
+        {
+            reader.removeAllIIOReadWarningListeners();
+        }
+    }
+
+    /**
+     * Cheap read of the last bytes of file
+     */
+    private static byte[] readTrailer(File file) throws IOException
+    {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"))
+        {
+            long fileLength = randomAccessFile.length();
+
+            int trailerLength = (int) Math.min(TRAILER_SEARCH_LENGTH, fileLength);
+
+            byte[] trailer = new byte[trailerLength];
+
+            randomAccessFile.seek(fileLength - trailerLength);
+            randomAccessFile.readFully(trailer);
+
+            return trailer;
+        }
+    }
+
+    /**
+     * Stream whole file through digest, keeping the last bytes for trailer check
+     *
+     * @return last bytes of file
+     */
+    private static byte[] readHashed(File file, MessageDigest digest) throws IOException
+    {
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        byte[] tail = new byte[TRAILER_SEARCH_LENGTH];
+        int tailLength = 0;
+
+        try(InputStream input = new FileInputStream(file))
+        {
+            int read;
+
+            while((read = input.read(buffer)) > 0)
+            {
+                digest.update(buffer, 0, read);
+
+                int keep = Math.min(read, TRAILER_SEARCH_LENGTH);
+
+                System.arraycopy(tail, keep, tail, 0, TRAILER_SEARCH_LENGTH - keep);
+                System.arraycopy(buffer, read - keep, tail, TRAILER_SEARCH_LENGTH - keep, keep);
+
+                tailLength = Math.min(TRAILER_SEARCH_LENGTH, tailLength + read);
+            }
+        }
+
+        return Arrays.copyOfRange(tail, TRAILER_SEARCH_LENGTH - tailLength, TRAILER_SEARCH_LENGTH);
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+
+        for(byte b : bytes)
+        {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.type.image;
+
+/***
+ * Classification of image file after reading its header
+ *
+ * @author codenamewei
+ */
+public enum ImageHeaderStatus
+{
+    VALID,
+    FILE_NOT_FOUND,
+    UNSUPPORTED_FORMAT, //no image reader recognizes the file
+    CORRUPTED, //header could not be parsed
+    TRUNCATED, //header valid but file end marker missing and last row could not be decoded
+    EXCEED_MAX_SIZE, //width or height bigger than ImageFileType maximum
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+import lombok.NonNull;
+
+import java.util.List;
+
+/**
+ * Batch execution of parameterized queries in one transaction
+ *
+ * @author codenamewei
+ */
+public class BatchHandler
+{
+    /**
+     * Run one batch of parameterized statements in a single transaction
+     * Rollback the whole batch when any statement failed
+     */
+    public static void executeBatch(@NonNull JDBCClient jdbcClient, @NonNull String query, @NonNull List<JsonArray> batchParams, @NonNull Handler<AsyncResult<Void>> handler)
+    {
+        if(batchParams.isEmpty())
+        {
+            handler.handle(Future.succeededFuture());
+            return;
+        }
+
+        jdbcClient.getConnection(ar -> {
+
+            if(ar.failed())
+            {
+                handler.handle(Future.failedFuture(ar.cause()));
+                return;
+            }
+
+            SQLConnection connection = ar.result();
+
+            connection.setAutoCommit(false, autoCommit -> {
+
+                if(autoCommit.failed())
+                {
+                    connection.close();
+                    handler.handle(Future.failedFuture(autoCommit.cause()));
+                    return;
+                }
+
+                connection.batchWithParams(query, batchParams, batch -> {
+
+                    if(batch.succeeded())
+                    {
+                        connection.commit(commit -> {
+                            connection.close();
+                            handler.handle(commit.succeeded() ? Future.succeededFuture() : Future.failedFuture(commit.cause()));
+                        });
+                    }
+                    else
+                    {
+                        connection.rollback(rollback -> {
+                            connection.close();
+                            handler.handle(Future.failedFuture(batch.cause()));
+                        });
+                    }
+                });
+            });
+        });
+    }
+}
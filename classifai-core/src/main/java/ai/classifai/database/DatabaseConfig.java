@@ -15,9 +15,19 @@
  */
 package ai.classifai.database;
 
+import ai.classifai.database.engine.H2StorageEngine;
+import ai.classifai.database.engine.HsqlStorageEngine;
+import ai.classifai.database.engine.StorageEngine;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Configurations for files and paths of database
@@ -29,29 +39,54 @@ public class DatabaseConfig
 {
     private final static String DB_ROOT_PATH;
 
-    private final static String LCK_FILE_EXTENSION;
+    private final static Map<String, StorageEngine> STORAGE_ENGINES;
+
+    @Getter private static StorageEngine storageEngine;
+
+    //buffer annotation update in memory and flush in batch
+    @Getter @Setter private static boolean isWriteBehind = false;
+
+    //skip images whose content is already in project on import
+    @Getter @Setter private static boolean isDeduplication = false;
+
+    //byte budget of in-memory thumbnail cache, 0 to disable
+    @Getter @Setter private static long thumbnailCacheSize = 64L * 1024 * 1024;
+
+    //thumbnail sizes pre-generated in background besides the default size
+    @Getter @Setter private static List<Integer> thumbnailSizeList = new ArrayList<>();
+
+    //number of upcoming images in annotation order prefetched on each retrieval, 0 to disable
+    @Getter @Setter private static int prefetchSize = 5;
+
+    //byte budget of pixel buffers decoded at the same time, 0 for a quarter of maximum heap
+    @Getter @Setter private static long decodeMemoryBudget = 0;
+
+    //pages of a pdf rendered at the same time in conversion, 1 to render sequentially
+    @Getter @Setter private static int conversionParallelism = Runtime.getRuntime().availableProcessors();
 
     private final static String PORTFOLIO_DB;
     private final static String BNDBOX_DB;
     private final static String SEGMENTATION_DB;
-
-    private final static String PORTFOLIO_DB_LCKFILE;
-    private final static String BNDBOX_DB_LCKFILE;
-    private final static String SEGMENTATION_DB_LCKFILE;
+    private final static String THUMBNAIL_PACK;
 
     static
     {
-        LCK_FILE_EXTENSION = ".lck";
+        StorageEngine hsqlEngine = new HsqlStorageEngine();
+        StorageEngine h2Engine = new H2StorageEngine();
+
+        STORAGE_ENGINES = new HashMap<>();
+        STORAGE_ENGINES.put(hsqlEngine.getName(), hsqlEngine);
+        STORAGE_ENGINES.put(h2Engine.getName(), h2Engine);
+
+        //default storage engine
+        storageEngine = hsqlEngine;
 
         DB_ROOT_PATH = System.getProperty("user.home") + File.separator + ".classifai";
 
         PORTFOLIO_DB = DB_ROOT_PATH + File.separator +  "portfolio/portfoliodb";
         BNDBOX_DB = DB_ROOT_PATH + File.separator + "bbproject/bbprojectdb";
         SEGMENTATION_DB = DB_ROOT_PATH + File.separator + "segproject/segprojectdb";
-
-        PORTFOLIO_DB_LCKFILE = PORTFOLIO_DB + LCK_FILE_EXTENSION;
-        BNDBOX_DB_LCKFILE = BNDBOX_DB + LCK_FILE_EXTENSION;
-        SEGMENTATION_DB_LCKFILE = SEGMENTATION_DB + LCK_FILE_EXTENSION;
+        THUMBNAIL_PACK = DB_ROOT_PATH + File.separator + "thumbnail/thumbnail.pack";
     }
 
     public static String getDbRootPath() { return DB_ROOT_PATH; }
@@ -62,9 +97,26 @@ public class DatabaseConfig
 
     public static String getSegDb() { return SEGMENTATION_DB; }
 
-    public static String getPortfolioLockFile() { return PORTFOLIO_DB_LCKFILE; }
+    public static String getThumbnailPack() { return THUMBNAIL_PACK; }
+
+    public static String getPortfolioLockFile() { return storageEngine.getLockFile(PORTFOLIO_DB); }
 
-    public static String getBBLockFile() { return BNDBOX_DB_LCKFILE; }
+    public static String getBBLockFile() { return storageEngine.getLockFile(BNDBOX_DB); }
 
-    public static String getSegLockFile() { return SEGMENTATION_DB_LCKFILE; }
+    public static String getSegLockFile() { return storageEngine.getLockFile(SEGMENTATION_DB); }
+
+    public static boolean setStorageEngine(@NonNull String engineName)
+    {
+        StorageEngine engine = STORAGE_ENGINES.get(engineName.toLowerCase());
+
+        if(engine == null)
+        {
+            log.info("Storage engine not supported: " + engineName + ". Supported engines: " + STORAGE_ENGINES.keySet());
+            return false;
+        }
+
+        storageEngine = engine;
+
+        return true;
+    }
 }
@@ -22,23 +22,95 @@ package ai.classifai.database.annotation;
  */
 public abstract class AnnotationQuery
 {
-    protected final static String CREATE_DATA = "insert into Project values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    protected final static String CREATE_DATA = "insert into Project values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
     protected final static String RETRIEVE_DATA_PATH = "select img_path from Project where uuid = ? and project_id = ?";
 
-    protected final static String LOAD_VALID_PROJECT_UUID = "select img_path from Project where project_id = ? and uuid = ?";
+    //distinct statement from RETRIEVE_DATA_PATH as action key for binary image delivery
+    protected final static String RETRIEVE_IMAGE_FILE = "select img_path from Project where project_id = ? and uuid = ?";
+
+    //image path of upcoming data points to prefetch, completed with placeholder of each uuid
+    protected final static String RETRIEVE_DATA_PATH_LIST = "select uuid, img_path from Project where project_id = ? and uuid in ";
+
+    //image metadata captured at ingestion, served without opening the image
+    protected final static String RETRIEVE_METADATA = "select img_path, img_depth, file_size, img_ori_w, img_ori_h, img_orientation from Project where uuid = ? and project_id = ?";
+
+    //backfill metadata of data point ingested by previous version
+    protected final static String UPDATE_METADATA = "update Project set img_depth = ?, file_size = ?, img_ori_w = ?, img_ori_h = ?, img_orientation = ? where uuid = ? and project_id = ?";
+
+    //content hash of data points, for deduplication on import
+    protected final static String LOAD_CONTENT_HASH = "select content_hash from Project where project_id = ? and content_hash is not null";
+
+    //data points imported before deduplication, content hash backfilled before the index is built
+    protected final static String LOAD_UNHASHED_DATA_PATH = "select uuid, img_path from Project where project_id = ? and content_hash is null";
+
+    protected final static String UPDATE_CONTENT_HASH = "update Project set content_hash = ? where uuid = ? and project_id = ?";
+
+    protected final static String LOAD_VALID_PROJECT_UUID = "select uuid, img_path from Project where project_id = ?";
+
+    protected final static String LOAD_IMAGE_PATH_LIST = "select distinct img_path from Project";
 
     protected final static String DELETE_PROJECT_UUID_LIST_WITH_PROJECTID = "delete from Project where project_id = ?";
 
     protected final static String DELETE_PROJECT_UUID_LIST = "delete from Project where project_id = ? and uuid in ";
 
+    //schema upgrade for Project table created by previous version
+    protected final static String COUNT_PRIMARY_KEY = "select count(*) from information_schema.table_constraints where table_schema = 'PUBLIC' and table_name = 'PROJECT' and constraint_type = 'PRIMARY KEY'";
+
+    //primary key columns must be declared not null before adding primary key on H2
+    protected final static String SET_UUID_NOT_NULL = "alter table Project alter column uuid set not null";
+
+    protected final static String SET_PROJECT_ID_NOT_NULL = "alter table Project alter column project_id set not null";
+
+    protected final static String ADD_PRIMARY_KEY = "alter table Project add primary key (uuid, project_id)";
+
+    protected final static String CREATE_PROJECT_ID_INDEX = "create index if not exists project_id_idx on Project (project_id)";
+
+    protected final static String ADD_ORIENTATION_COLUMN = "alter table Project add column if not exists img_orientation integer default 0";
+
+    protected final static String ADD_CONTENT_HASH_COLUMN = "alter table Project add column if not exists content_hash varchar(64)";
+
+    protected final static String CREATE_CONTENT_HASH_INDEX = "create index if not exists content_hash_idx on Project (project_id, content_hash)";
+
     public static String createData() { return CREATE_DATA; }
 
     public static String retrieveDataPath() { return RETRIEVE_DATA_PATH; }
 
+    public static String retrieveImageFile() { return RETRIEVE_IMAGE_FILE; }
+
+    public static String retrieveDataPathList() { return RETRIEVE_DATA_PATH_LIST; }
+
+    public static String retrieveMetadata() { return RETRIEVE_METADATA; }
+
+    public static String updateMetadata() { return UPDATE_METADATA; }
+
+    public static String loadContentHash() { return LOAD_CONTENT_HASH; }
+
+    public static String loadUnhashedDataPath() { return LOAD_UNHASHED_DATA_PATH; }
+
+    public static String updateContentHash() { return UPDATE_CONTENT_HASH; }
+
     public static String loadValidProjectUUID() { return LOAD_VALID_PROJECT_UUID; }
 
+    public static String loadImagePathList() { return LOAD_IMAGE_PATH_LIST; }
+
     public static String deleteProjectUUIDListwithProjectID() { return DELETE_PROJECT_UUID_LIST_WITH_PROJECTID; }
 
     public static String deleteProjectUUIDList(){ return DELETE_PROJECT_UUID_LIST; }
+
+    public static String countPrimaryKey() { return COUNT_PRIMARY_KEY; }
+
+    public static String setUUIDNotNull() { return SET_UUID_NOT_NULL; }
+
+    public static String setProjectIDNotNull() { return SET_PROJECT_ID_NOT_NULL; }
+
+    public static String addPrimaryKey() { return ADD_PRIMARY_KEY; }
+
+    public static String createProjectIDIndex() { return CREATE_PROJECT_ID_INDEX; }
+
+    public static String addOrientationColumn() { return ADD_ORIENTATION_COLUMN; }
+
+    public static String addContentHashColumn() { return ADD_CONTENT_HASH_COLUMN; }
+
+    public static String createContentHashIndex() { return CREATE_CONTENT_HASH_INDEX; }
 }
@@ -15,28 +15,38 @@
  */
 package ai.classifai.database.annotation;
 
+import ai.classifai.data.thumbnail.ThumbnailCache;
+import ai.classifai.data.type.image.ImageHeader;
+import ai.classifai.database.BatchHandler;
+import ai.classifai.database.DatabaseConfig;
 import ai.classifai.database.VerticleServiceable;
 import ai.classifai.database.portfolio.PortfolioVerticle;
+import ai.classifai.loader.LoaderStatus;
 import ai.classifai.loader.ProjectLoader;
 import ai.classifai.util.ParamConfig;
 import ai.classifai.util.ProjectHandler;
 import ai.classifai.util.collection.ConversionHandler;
 import ai.classifai.util.data.ImageHandler;
+import ai.classifai.util.http.HTTPCacheValidator;
 import ai.classifai.util.message.ReplyHandler;
 import ai.classifai.util.type.AnnotationType;
-import io.vertx.core.AbstractVerticle;
+import io.vertx.core.*;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLRowStream;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of Functionalities for each annotation type
@@ -46,6 +56,174 @@ import java.util.Map;
 @Slf4j
 public abstract class AnnotationVerticle extends AbstractVerticle implements VerticleServiceable, AnnotationServiceable
 {
+    //worker pool and backpressure threshold for validating data points when loading project
+    private static final String VALIDATION_POOL_NAME = "classifai-validation-pool";
+    private static final Integer VALIDATION_POOL_SIZE = 16;
+    private static final Integer MAX_PENDING_VALIDATION = 1000;
+
+    //optional write-behind buffer for annotation update, null when disabled
+    protected AnnotationWriteBuffer writeBuffer;
+
+    //in-memory thumbnail cache shared by annotation verticles, null when disabled
+    @Getter @Setter private static ThumbnailCache thumbnailCache;
+
+    /**
+     * Upgrade Project table of existing database in place
+     * Table created by previous version might miss the primary key on (uuid, project_id)
+     * Index on project_id serves the queries scanning through a whole project
+     */
+    protected void upgradeProjectTable(@NonNull SQLConnection connection, @NonNull Handler<AsyncResult<Void>> handler)
+    {
+        connection.query(AnnotationQuery.countPrimaryKey(), count -> {
+
+            if(count.failed())
+            {
+                handler.handle(Future.failedFuture(count.cause()));
+                return;
+            }
+
+            Promise<Void> primaryKeyPromise = Promise.promise();
+
+            if(count.result().getResults().get(0).getInteger(0) > 0)
+            {
+                primaryKeyPromise.complete();
+            }
+            else
+            {
+                log.info("Adding primary key to Project table. This might take a while for large database.");
+
+                connection.execute(AnnotationQuery.setUUIDNotNull(), uuidNotNull -> {
+
+                    if(uuidNotNull.failed())
+                    {
+                        primaryKeyPromise.fail(uuidNotNull.cause());
+                        return;
+                    }
+
+                    connection.execute(AnnotationQuery.setProjectIDNotNull(), projectIDNotNull -> {
+
+                        if(projectIDNotNull.failed())
+                        {
+                            primaryKeyPromise.fail(projectIDNotNull.cause());
+                            return;
+                        }
+
+                        connection.execute(AnnotationQuery.addPrimaryKey(), primaryKeyPromise);
+                    });
+                });
+            }
+
+            primaryKeyPromise.future().onComplete(primaryKey -> {
+
+                if(primaryKey.failed())
+                {
+                    log.error("Failed to add primary key to Project table. Check for duplicated data points.", primaryKey.cause());
+                }
+
+                connection.execute(AnnotationQuery.createProjectIDIndex(), index -> {
+
+                    if(index.failed())
+                    {
+                        handler.handle(index);
+                        return;
+                    }
+
+                    connection.execute(AnnotationQuery.addOrientationColumn(), orientation -> {
+
+                        if(orientation.failed())
+                        {
+                            handler.handle(orientation);
+                            return;
+                        }
+
+                        connection.execute(AnnotationQuery.addContentHashColumn(), contentHash -> {
+
+                            if(contentHash.failed())
+                            {
+                                handler.handle(contentHash);
+                                return;
+                            }
+
+                            connection.execute(AnnotationQuery.createContentHashIndex(), handler);
+                        });
+                    });
+                });
+            });
+        });
+    }
+
+    /**
+     * Image path of each data point in uuid list, data points not found are left out
+     */
+    public void retrieveDataPathList(Message<JsonObject> message, @NonNull JDBCClient jdbcClient, @NonNull String query)
+    {
+        Integer projectID = message.body().getInteger(ParamConfig.getProjectIDParam());
+        JsonArray uuidList = message.body().getJsonArray(ParamConfig.getUUIDListParam());
+
+        if(uuidList.isEmpty())
+        {
+            message.reply(ReplyHandler.getOkReply().put(ParamConfig.getImagePathListParam(), new JsonArray()));
+            return;
+        }
+
+        JsonArray params = new JsonArray().add(projectID).addAll(uuidList);
+
+        String placeholders = "(" + String.join(", ", Collections.nCopies(uuidList.size(), "?")) + ")";
+
+        jdbcClient.queryWithParams(query + placeholders, params, fetch -> {
+            if(fetch.succeeded())
+            {
+                JsonArray imagePathList = new JsonArray();
+
+                for(JsonArray row : fetch.result().getResults())
+                {
+                    imagePathList.add(new JsonObject()
+                            .put(ParamConfig.getUUIDParam(), row.getInteger(0))
+                            .put(ParamConfig.getImagePathParam(), row.getString(1)));
+                }
+
+                message.reply(ReplyHandler.getOkReply().put(ParamConfig.getImagePathListParam(), imagePathList));
+            }
+            else
+            {
+                message.reply(ReplyHandler.reportDatabaseQueryError(fetch.cause()));
+            }
+        });
+    }
+
+    public void retrieveImageFile(Message<JsonObject> message, @NonNull JDBCClient jdbcClient, @NonNull String query)
+    {
+        Integer projectID = message.body().getInteger(ParamConfig.getProjectIDParam());
+        Integer uuid = message.body().getInteger(ParamConfig.getUUIDParam());
+
+        JsonArray params = new JsonArray().add(projectID).add(uuid);
+
+        jdbcClient.queryWithParams(query, params, fetch -> {
+            if(fetch.succeeded())
+            {
+                ResultSet resultSet = fetch.result();
+
+                if (resultSet.getNumRows() == 0)
+                {
+                    String projectName = message.body().getString(ParamConfig.getProjectNameParam());
+                    String userDefinedMessage = "Failure in image file retrieval for project " + projectName + " with uuid " + uuid;
+                    message.reply(ReplyHandler.reportUserDefinedError(userDefinedMessage));
+                }
+                else
+                {
+                    JsonObject response = ReplyHandler.getOkReply();
+
+                    response.put(ParamConfig.getImagePathParam(), resultSet.getResults().get(0).getString(0));
+
+                    message.reply(response);
+                }
+            }
+            else {
+                message.reply(ReplyHandler.reportDatabaseQueryError(fetch.cause()));
+            }
+        });
+    }
+
     public void retrieveDataPath(Message<JsonObject> message, @NonNull JDBCClient jdbcClient, @NonNull String query)
     {
         Integer projectID = message.body().getInteger(ParamConfig.getProjectIDParam());
@@ -72,7 +250,7 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
 
                     String imagePath = row.getString(0);
 
-                    response.put(ParamConfig.getImageSourceParam(), ImageHandler.encodeFileToBase64Binary(new File(imagePath)));
+                    response.put(ParamConfig.getImagePathParam(), imagePath);
 
                     message.reply(response);
 
@@ -86,46 +264,133 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
     }
 
 
+    /**
+     * Check validity of every data point of a project
+     * (uuid, img_path) rows are streamed from one query, file checks are run on a bounded worker pool
+     * Stream is paused when too many checks are pending to keep memory flat for large projects
+     */
     public void loadValidProjectUUID(Message<JsonObject> message, @NonNull JDBCClient jdbcClient, @NonNull String query)
     {
         Integer projectID  = message.body().getInteger(ParamConfig.getProjectIDParam());
 
         ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
 
-        List<Integer> oriUUIDList = loader.getUuidListFromDatabase();
+        Set<Integer> oriUUIDSet = new HashSet<>(loader.getUuidListFromDatabase());
 
         message.reply(ReplyHandler.getOkReply());
 
-        loader.setDbOriUUIDSize(oriUUIDList.size());
+        loader.setDbOriUUIDSize(oriUUIDSet.size());
 
-        for(int i = 0; i < oriUUIDList.size(); ++i)
-        {
-            final Integer currentLength = i + 1;
-            final Integer UUID = oriUUIDList.get(i);
-            JsonArray params = new JsonArray().add(projectID).add(UUID);
+        if(oriUUIDSet.isEmpty()) return;
 
-            jdbcClient.queryWithParams(query, params, fetch -> {
+        jdbcClient.getConnection(ar -> {
 
-                if (fetch.succeeded()) {
-                    ResultSet resultSet = fetch.result();
+            if(ar.failed())
+            {
+                log.error("Could not open a database connection to validate project " + projectID, ar.cause());
+                loader.setLoaderStatus(LoaderStatus.ERROR);
+                return;
+            }
 
-                    JsonArray row = resultSet.getResults().get(0);
+            SQLConnection connection = ar.result();
 
-                    String dataPath = row.getString(0);
+            connection.queryStreamWithParams(query, new JsonArray().add(projectID), stream -> {
+
+                if(stream.failed())
+                {
+                    connection.close();
+                    log.error("Failure in streaming data points of project " + projectID, stream.cause());
+                    loader.setLoaderStatus(LoaderStatus.ERROR);
+                    return;
+                }
+
+                SQLRowStream rowStream = stream.result();
+                WorkerExecutor executor = vertx.createSharedWorkerExecutor(VALIDATION_POOL_NAME, VALIDATION_POOL_SIZE);
+
+                AtomicInteger matchedLength = new AtomicInteger(0);
+                AtomicInteger pendingLength = new AtomicInteger(0);
+                AtomicInteger processedLength = new AtomicInteger(0);
+
+                //checks still pending when streaming failed must not complete the load
+                AtomicBoolean isFailed = new AtomicBoolean(false);
 
-                    if (ImageHandler.isImageReadable(dataPath))
+                Runnable updateProgress = () -> {
+                    if(isFailed.get()) return;
+
+                    loader.updateDBLoadingProgress(processedLength.get());
+
+                    if(processedLength.get() == oriUUIDSet.size())
                     {
-                        loader.pushDBValidUUID(UUID);
+                        executor.close();
                     }
-                    else
+                };
+
+                rowStream.handler(row -> {
+
+                    Integer UUID = row.getInteger(0);
+
+                    if(!oriUUIDSet.contains(UUID)) return;
+
+                    String dataPath = row.getString(1);
+
+                    matchedLength.incrementAndGet();
+
+                    if(pendingLength.incrementAndGet() >= MAX_PENDING_VALIDATION)
                     {
-                        log.info(dataPath + " not found. Check if the data is in the corresponding path. ");
+                        rowStream.pause();
                     }
-                }
 
-                loader.updateDBLoadingProgress(currentLength);
+                    executor.executeBlocking(promise -> promise.complete(ImageHandler.isImageReadable(dataPath)), false, check -> {
+
+                        if(check.succeeded() && check.result().equals(Boolean.TRUE))
+                        {
+                            loader.pushDBValidUUID(UUID);
+                        }
+                        else
+                        {
+                            log.info(dataPath + " not found. Check if the data is in the corresponding path. ");
+                        }
+
+                        if(pendingLength.decrementAndGet() == MAX_PENDING_VALIDATION / 2)
+                        {
+                            rowStream.resume();
+                        }
+
+                        processedLength.incrementAndGet();
+                        updateProgress.run();
+                    });
+                });
+
+                rowStream.exceptionHandler(e -> {
+
+                    log.error("Failure in streaming data points of project " + projectID, e);
+
+                    isFailed.set(true);
+                    loader.setLoaderStatus(LoaderStatus.ERROR);
+
+                    rowStream.close(close -> connection.close());
+                    executor.close();
+                });
+
+                rowStream.endHandler(v -> {
+
+                    if(isFailed.get()) return;
+
+                    connection.close();
+
+                    //uuids listed in portfolio but without any row are counted as processed
+                    Integer missingLength = oriUUIDSet.size() - matchedLength.get();
+
+                    if(missingLength > 0)
+                    {
+                        log.info(missingLength + " data points of project " + projectID + " not found in database.");
+
+                        processedLength.addAndGet(missingLength);
+                        updateProgress.run();
+                    }
+                });
             });
-        }
+        });
     }
 
     public void deleteProjectUUIDListwithProjectID(Message<JsonObject> message, @NonNull JDBCClient jdbcClient, @NonNull String query)
@@ -138,6 +403,8 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
 
             if(fetch.succeeded())
             {
+                HTTPCacheValidator.removeProject(projectID);
+
                 message.reply(ReplyHandler.getOkReply());
             }
             else
@@ -159,11 +426,13 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
         List<Integer> failedUUIDList = new ArrayList<>();
 
         ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
-        List<Integer> dbUUIDList = loader.getUuidListFromDatabase();
+
+        //copy, data points added meanwhile are not deleted
+        Set<Integer> dbUUIDSet = new HashSet<>(loader.getUuidListFromDatabase());
 
         for(Integer UUID : oriUUIDList)
         {
-            if(dbUUIDList.contains(UUID))
+            if(dbUUIDSet.contains(UUID))
             {
                 JsonArray params = new JsonArray().add(projectID).add(UUID);
 
@@ -195,24 +464,23 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
             {
                 log.debug("Failure in deleting uuids in project " + projectID);
             }
+
+            //deleted images can be imported again
+            loader.invalidateContentHashSet();
         });
 
-        if(dbUUIDList.removeAll(successUUIDList))
-        {
-            loader.setUuidListFromDatabase(dbUUIDList);
+        //deleted data points are not answered with 304 any more
+        HTTPCacheValidator.removeImagePath(projectID, successUUIDList);
 
-            List<Integer> sanityUUIDList = loader.getSanityUUIDList();
-            if(sanityUUIDList.removeAll(successUUIDList))
-            {
-                loader.setSanityUUIDList(sanityUUIDList);
-            }
-            else
+        if(loader.removeUuidListFromDatabase(successUUIDList))
+        {
+            if(!loader.removeSanityUUIDList(successUUIDList))
             {
                 log.info("Error in removing uuid list");
             }
 
             //update Portfolio Verticle
-            PortfolioVerticle.updateFileSystemUUIDList(projectID);
+            PortfolioVerticle.removeProjectUUIDList(projectID, successUUIDList);
 
             message.reply(ReplyHandler.getOkReply().put(ParamConfig.getUUIDListParam(), failedUUIDList));
         }
@@ -222,36 +490,47 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
         }
     }
 
-    public static void updateUUID(@NonNull JDBCClient jdbcClient, @NonNull String query, @NonNull Integer projectID, @NonNull File file, @NonNull Integer UUID, @NonNull Integer currentProcessedLength)
+    /**
+     * Insert new data points in one transaction
+     *
+     * @param uuidList uuid of each data point in headerList
+     */
+    public static void insertUUIDBatch(@NonNull JDBCClient jdbcClient, @NonNull String query, @NonNull Integer projectID, @NonNull List<ImageHeader> headerList,
+                                       @NonNull List<Integer> uuidList, @NonNull Handler<AsyncResult<Void>> handler)
     {
-        JsonArray params = new JsonArray()
+        List<JsonArray> batchParams = new ArrayList<>();
+
+        for(int i = 0; i < headerList.size(); ++i)
+        {
+            batchParams.add(getNewDataParams(projectID, headerList.get(i), uuidList.get(i)));
+        }
+
+        BatchHandler.executeBatch(jdbcClient, query, batchParams, handler);
+    }
+
+    private static JsonArray getNewDataParams(Integer projectID, ImageHeader header, Integer UUID)
+    {
+        return new JsonArray()
                 .add(UUID) //uuid
                 .add(projectID) //projectid
-                .add(file.getAbsolutePath()) //imgpath
+                .add(header.getPath()) //imgpath
                 .add(new JsonArray().toString()) //new ArrayList<Integer>()
-                .add(0) //img_depth
+                .add(header.getDepth()) //img_depth
                 .add(0) //imgX
                 .add(0) //imgY
                 .add(0) //imgW
                 .add(0) //imgH
-                .add(0) //file_size
-                .add(0)
-                .add(0);
-
-        jdbcClient.queryWithParams(query, params, fetch ->
-        {
-            ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
-            if(fetch.succeeded())
-            {
-                loader.pushFileSysNewUUIDList(UUID);
-            }
-            else
-            {
-                log.error("Push data point with path " + file.getAbsolutePath() + " failed: " + fetch.cause().getMessage());
-            }
+                .add(getFileSize(header)) //file_size
+                .add(header.getOriWidth()) //img_ori_w
+                .add(header.getOriHeight()) //img_ori_h
+                .add(header.getOrientation()) //img_orientation
+                .add(header.getContentHash()); //content_hash, null when deduplication is disabled
+    }
 
-            loader.updateFileSysLoadingProgress(currentProcessedLength);
-        });
+    //file_size column is an integer
+    private static Integer getFileSize(ImageHeader header)
+    {
+        return (int) Math.min(header.getFileSize(), Integer.MAX_VALUE);
     }
 
     public void updateData(Message<JsonObject> message, @NonNull JDBCClient jdbcClient, @NonNull String query, AnnotationType annotationType)
@@ -277,10 +556,20 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
                     .add(requestBody.getInteger(ParamConfig.getUUIDParam()))
                     .add(projectID);
 
+            Integer uuid = requestBody.getInteger(ParamConfig.getUUIDParam());
+
+            if(writeBuffer != null)
+            {
+                writeBuffer.put(projectID, uuid, params);
+                HTTPCacheValidator.updateAnnotationVersion(annotationType, projectID, uuid);
+                message.reply(ReplyHandler.getOkReply());
+                return;
+            }
 
             jdbcClient.queryWithParams(query, params, fetch -> {
                 if(fetch.succeeded())
                 {
+                    HTTPCacheValidator.updateAnnotationVersion(annotationType, projectID, uuid);
                     message.reply(ReplyHandler.getOkReply());
                 }
                 else {
@@ -302,6 +591,7 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
         String projectName =  message.body().getString(ParamConfig.getProjectNameParam());
         Integer projectID =  message.body().getInteger(ParamConfig.getProjectIDParam());
         Integer uuid = message.body().getInteger(ParamConfig.getUUIDParam());
+        Integer thumbnailSize = message.body().getInteger(ParamConfig.getThumbnailSizeParam(), ImageHandler.getDefaultThumbnailSize());
 
         JsonArray params = new JsonArray().add(uuid).add(projectID);
 
@@ -317,30 +607,55 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
                     message.reply(ReplyHandler.reportUserDefinedError(userDefinedMessage));
                 }
                 else {
-                    JsonArray row = resultSet.getResults().get(0);
+                    JsonArray row = getBufferedRow(resultSet.getResults().get(0), projectID, uuid);
 
-                    Integer counter = 0;
-                    String dataPath = row.getString(counter++);
-
-                    Map<String, String> imgData = ImageHandler.getThumbNail(dataPath);
-
-                    JsonObject response = ReplyHandler.getOkReply();
+                    String dataPath = row.getString(0);
 
-                    response.put(ParamConfig.getUUIDParam(), uuid);
-                    response.put(ParamConfig.getProjectNameParam(), projectName);
-
-                    response.put(ParamConfig.getImagePathParam(), dataPath);
-                    response.put(ParamConfig.getAnnotationParam(annotationType), new JsonArray(row.getString(counter++)));
-                    response.put(ParamConfig.getImageDepth(),  Integer.parseInt(imgData.get(ParamConfig.getImageDepth())));
-                    response.put(ParamConfig.getImageXParam(), row.getInteger(counter++));
-                    response.put(ParamConfig.getImageYParam(), row.getInteger(counter++));
-                    response.put(ParamConfig.getImageWParam(), row.getDouble(counter++));
-                    response.put(ParamConfig.getImageHParam(), row.getDouble(counter++));
-                    response.put(ParamConfig.getFileSizeParam(), row.getInteger(counter));
-                    response.put(ParamConfig.getImageORIWParam(), Integer.parseInt(imgData.get(ParamConfig.getImageORIWParam())));
-                    response.put(ParamConfig.getImageORIHParam(), Integer.parseInt(imgData.get(ParamConfig.getImageORIHParam())));
-                    response.put(ParamConfig.getImageThumbnailParam(), imgData.get(ParamConfig.getBase64Param()));
-                    message.reply(response);
+                    getThumbnail(dataPath, thumbnailSize).onComplete(thumbnail -> {
+
+                        if(thumbnail.failed() || (thumbnail.result() == null))
+                        {
+                            String userDefinedMessage = "Failure in thumbnail generation for project " + projectName + " with uuid " + uuid;
+                            message.reply(ReplyHandler.reportUserDefinedError(userDefinedMessage));
+                            return;
+                        }
+
+                        Map<String, String> imgData = thumbnail.result();
+
+                        Integer counter = 1;
+
+                        JsonObject response = ReplyHandler.getOkReply();
+
+                        response.put(ParamConfig.getUUIDParam(), uuid);
+                        response.put(ParamConfig.getProjectNameParam(), projectName);
+
+                        response.put(ParamConfig.getImagePathParam(), dataPath);
+                        response.put(ParamConfig.getAnnotationParam(annotationType), new JsonArray(row.getString(counter++)));
+                        response.put(ParamConfig.getImageXParam(), row.getInteger(counter++));
+                        response.put(ParamConfig.getImageYParam(), row.getInteger(counter++));
+                        response.put(ParamConfig.getImageWParam(), row.getDouble(counter++));
+                        response.put(ParamConfig.getImageHParam(), row.getDouble(counter++));
+                        response.put(ParamConfig.getFileSizeParam(), row.getInteger(counter++));
+
+                        if(isMetadataCaptured(row.getInteger(counter)))
+                        {
+                            response.put(ParamConfig.getImageORIWParam(), row.getInteger(counter++));
+                            response.put(ParamConfig.getImageORIHParam(), row.getInteger(counter++));
+                            response.put(ParamConfig.getImageDepth(), row.getInteger(counter));
+                        }
+                        else
+                        {
+                            //data point ingested by previous version, metadata is taken from thumbnail and persisted for next retrieval
+                            response.put(ParamConfig.getImageDepth(), Integer.parseInt(imgData.get(ParamConfig.getImageDepth())));
+                            response.put(ParamConfig.getImageORIWParam(), Integer.parseInt(imgData.get(ParamConfig.getImageORIWParam())));
+                            response.put(ParamConfig.getImageORIHParam(), Integer.parseInt(imgData.get(ParamConfig.getImageORIHParam())));
+
+                            backfillMetadata(jdbcClient, projectID, uuid, dataPath);
+                        }
+
+                        response.put(ParamConfig.getImageThumbnailParam(), imgData.get(ParamConfig.getBase64Param()));
+                        message.reply(response);
+                    });
                 }
             }
             else
@@ -351,4 +666,175 @@ public abstract class AnnotationVerticle extends AbstractVerticle implements Ver
         });
     }
 
+    /**
+     * Retrieve image metadata captured at ingestion, without opening the image
+     * Metadata of data point ingested by previous version is read from image header once and persisted
+     */
+    public void retrieveMetadata(Message<JsonObject> message, @NonNull JDBCClient jdbcClient, @NonNull String query)
+    {
+        String projectName = message.body().getString(ParamConfig.getProjectNameParam());
+        Integer projectID = message.body().getInteger(ParamConfig.getProjectIDParam());
+        Integer uuid = message.body().getInteger(ParamConfig.getUUIDParam());
+
+        JsonArray params = new JsonArray().add(uuid).add(projectID);
+
+        jdbcClient.queryWithParams(query, params, fetch -> {
+
+            if(fetch.failed())
+            {
+                message.reply(ReplyHandler.reportDatabaseQueryError(fetch.cause()));
+                return;
+            }
+
+            ResultSet resultSet = fetch.result();
+
+            if(resultSet.getNumRows() == 0)
+            {
+                String userDefinedMessage = "Data not found when retrieving metadata for project " + projectName + " with uuid " + uuid;
+                message.reply(ReplyHandler.reportUserDefinedError(userDefinedMessage));
+                return;
+            }
+
+            JsonArray row = resultSet.getResults().get(0);
+
+            String dataPath = row.getString(0);
+
+            JsonObject response = ReplyHandler.getOkReply()
+                    .put(ParamConfig.getUUIDParam(), uuid)
+                    .put(ParamConfig.getProjectNameParam(), projectName)
+                    .put(ParamConfig.getImagePathParam(), dataPath);
+
+            if(isMetadataCaptured(row.getInteger(3)))
+            {
+                message.reply(response.put(ParamConfig.getImageDepth(), row.getInteger(1))
+                        .put(ParamConfig.getFileSizeParam(), row.getInteger(2))
+                        .put(ParamConfig.getImageORIWParam(), row.getInteger(3))
+                        .put(ParamConfig.getImageORIHParam(), row.getInteger(4))
+                        .put(ParamConfig.getImageOrientationParam(), row.getInteger(5)));
+                return;
+            }
+
+            backfillMetadata(jdbcClient, projectID, uuid, dataPath).onComplete(header -> {
+
+                if(header.failed())
+                {
+                    String userDefinedMessage = "Failure in reading metadata for project " + projectName + " with uuid " + uuid;
+                    message.reply(ReplyHandler.reportUserDefinedError(userDefinedMessage));
+                    return;
+                }
+
+                message.reply(response.put(ParamConfig.getImageDepth(), header.result().getDepth())
+                        .put(ParamConfig.getFileSizeParam(), getFileSize(header.result()))
+                        .put(ParamConfig.getImageORIWParam(), header.result().getOriWidth())
+                        .put(ParamConfig.getImageORIHParam(), header.result().getOriHeight())
+                        .put(ParamConfig.getImageOrientationParam(), header.result().getOrientation()));
+            });
+        });
+    }
+
+    //original width is zero for data point ingested before metadata is captured
+    private static boolean isMetadataCaptured(Integer oriWidth)
+    {
+        return (oriWidth != null) && (oriWidth > 0);
+    }
+
+    /**
+     * Read metadata from image header on a worker thread and persist it to the data point
+     */
+    private Future<ImageHeader> backfillMetadata(JDBCClient jdbcClient, Integer projectID, Integer uuid, String dataPath)
+    {
+        Promise<ImageHeader> promise = Promise.promise();
+
+        vertx.executeBlocking(blocking -> blocking.complete(ImageHandler.readHeader(dataPath)), false, promise);
+
+        return promise.future().compose(header -> {
+
+            if(!header.isValid())
+            {
+                return Future.failedFuture("Image " + header.getStatus().name().toLowerCase().replace('_', ' ') + ": " + dataPath);
+            }
+
+            JsonArray params = new JsonArray()
+                    .add(header.getDepth())
+                    .add(getFileSize(header))
+                    .add(header.getOriWidth())
+                    .add(header.getOriHeight())
+                    .add(header.getOrientation())
+                    .add(uuid)
+                    .add(projectID);
+
+            jdbcClient.queryWithParams(AnnotationQuery.updateMetadata(), params, update -> {
+                if(update.failed())
+                {
+                    log.debug("Failed in persisting metadata of " + dataPath, update.cause());
+                }
+            });
+
+            return Future.succeededFuture(header);
+        });
+    }
+
+    /**
+     * Get thumbnail data from in-memory cache,
+     * else from thumbnail generator ahead of background generation, else generate on a worker thread
+     */
+    private Future<Map<String, String>> getThumbnail(@NonNull String dataPath, Integer thumbnailSize)
+    {
+        Map<String, String> cachedData = (thumbnailCache != null) ? thumbnailCache.get(dataPath, thumbnailSize) : null;
+
+        if(cachedData != null) return Future.succeededFuture(cachedData);
+
+        return ImageHandler.requestThumbnail(vertx, new File(dataPath), thumbnailSize).map(thumbnail -> {
+
+            if(thumbnail == null) return null;
+
+            Map<String, String> imgData = ImageHandler.getThumbnailData(thumbnail);
+
+            if(thumbnailCache != null) thumbnailCache.put(dataPath, thumbnailSize, imgData);
+
+            return imgData;
+        });
+    }
+
+    /**
+     * Overlay row of RETRIEVE_DATA with update still pending in write-behind buffer
+     * row: img_path, annotation, img_x, img_y, img_w, img_h, file_size, img_ori_w, img_ori_h, img_depth
+     * buffered update: annotation, img_depth, img_x, img_y, img_w, img_h, file_size, img_ori_w, img_ori_h, uuid, project_id
+     */
+    private JsonArray getBufferedRow(JsonArray row, Integer projectID, Integer uuid)
+    {
+        JsonArray bufferedParams = (writeBuffer != null) ? writeBuffer.get(projectID, uuid) : null;
+
+        if(bufferedParams == null) return row;
+
+        JsonArray bufferedRow = row.copy();
+
+        bufferedRow.set(1, bufferedParams.getValue(0));
+
+        for(int i = 2; i <= 6; ++i)
+        {
+            bufferedRow.set(i, bufferedParams.getValue(i));
+        }
+
+        return bufferedRow;
+    }
+
+    protected void startWriteBuffer(@NonNull JDBCClient jdbcClient, @NonNull String query)
+    {
+        if(DatabaseConfig.isWriteBehind())
+        {
+            writeBuffer = new AnnotationWriteBuffer(vertx, jdbcClient, query);
+        }
+    }
+
+    protected void stopWriteBuffer(@NonNull Promise<Void> promise)
+    {
+        if(writeBuffer == null)
+        {
+            promise.complete();
+            return;
+        }
+
+        writeBuffer.close(promise);
+    }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database.annotation;
+
+import ai.classifai.database.BatchHandler;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for annotation update
+ * Keep the latest update parameters per (project_id, uuid) in memory and flush dirty entries in one batch
+ * Flush is triggered periodically or when number of dirty entries hit the limit
+ * When a batch fails, entries are updated one by one so a bad row neither blocks nor rolls back the others
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class AnnotationWriteBuffer
+{
+    private static final Long FLUSH_INTERVAL_MS = 2000L;
+    private static final Integer MAX_DIRTY_SIZE = 500;
+    private static final Long CLOSE_TIMEOUT_SECONDS = 30L;
+
+    //flushes an update might fail in before it is dropped
+    private static final Integer MAX_FLUSH_ATTEMPTS = 3;
+
+    private final Vertx vertx;
+    private final JDBCClient jdbcClient;
+    private final String query;
+    private final Long timerID;
+
+    //key: Pair<Integer projectID, Integer uuid>
+    //value: parameters of update query
+    private Map<Pair<Integer, Integer>, JsonArray> dirtyEntries = new LinkedHashMap<>();
+
+    //entries taken out by the ongoing flush, still served for read until committed
+    private Map<Pair<Integer, Integer>, JsonArray> flushingEntries = new HashMap<>();
+
+    //failed flushes of each data point, cleared once its update is committed
+    private final Map<Pair<Integer, Integer>, Integer> failureCounts = new HashMap<>();
+
+    private Future<Void> ongoingFlush = Future.succeededFuture();
+
+    public AnnotationWriteBuffer(@NonNull Vertx vertx, @NonNull JDBCClient jdbcClient, @NonNull String query)
+    {
+        this.vertx = vertx;
+        this.jdbcClient = jdbcClient;
+        this.query = query;
+
+        timerID = vertx.setPeriodic(FLUSH_INTERVAL_MS, id -> flush());
+    }
+
+    public void put(@NonNull Integer projectID, @NonNull Integer uuid, @NonNull JsonArray params)
+    {
+        Integer dirtySize;
+
+        synchronized (this)
+        {
+            dirtyEntries.put(new ImmutablePair<>(projectID, uuid), params);
+            dirtySize = dirtyEntries.size();
+        }
+
+        if(dirtySize >= MAX_DIRTY_SIZE) flush();
+    }
+
+    /**
+     * @return latest update parameters not yet committed to database, null if none
+     */
+    public synchronized JsonArray get(@NonNull Integer projectID, @NonNull Integer uuid)
+    {
+        Pair<Integer, Integer> key = new ImmutablePair<>(projectID, uuid);
+
+        JsonArray params = dirtyEntries.get(key);
+
+        return (params != null) ? params : flushingEntries.get(key);
+    }
+
+    /**
+     * Flush all dirty entries in one transaction
+     * Only one flush runs at a time, a flush requested while another is running is chained after it
+     */
+    public synchronized Future<Void> flush()
+    {
+        ongoingFlush = ongoingFlush.compose(v -> flushDirtyEntries(), e -> flushDirtyEntries());
+
+        return ongoingFlush;
+    }
+
+    private Future<Void> flushDirtyEntries()
+    {
+        Map<Pair<Integer, Integer>, JsonArray> batchEntries;
+
+        synchronized (this)
+        {
+            if(dirtyEntries.isEmpty()) return Future.succeededFuture();
+
+            batchEntries = dirtyEntries;
+            flushingEntries = batchEntries;
+            dirtyEntries = new LinkedHashMap<>();
+        }
+
+        Promise<Void> promise = Promise.promise();
+
+        BatchHandler.executeBatch(jdbcClient, query, new ArrayList<>(batchEntries.values()), batch -> {
+
+            if(batch.succeeded())
+            {
+                completeFlush(batchEntries, new HashMap<>());
+                promise.complete();
+                return;
+            }
+
+            //a single bad row rolls back the whole batch, update one by one so the others still get committed
+            log.info("Failed in flushing " + batchEntries.size() + " annotation updates in one batch. Retry one by one.", batch.cause());
+
+            flushOneByOne(batchEntries).onComplete(promise);
+        });
+
+        return promise.future();
+    }
+
+    private Future<Void> flushOneByOne(Map<Pair<Integer, Integer>, JsonArray> batchEntries)
+    {
+        Map<Pair<Integer, Integer>, JsonArray> failedEntries = new HashMap<>();
+
+        List<Future> updates = new ArrayList<>();
+
+        batchEntries.forEach((key, params) -> {
+
+            Promise<Void> update = Promise.promise();
+
+            jdbcClient.updateWithParams(query, params, ar -> {
+
+                if(ar.failed())
+                {
+                    log.debug("Failed in updating annotation of uuid " + key.getRight() + " in project " + key.getLeft(), ar.cause());
+
+                    synchronized (failedEntries)
+                    {
+                        failedEntries.put(key, params);
+                    }
+                }
+
+                update.complete();
+            });
+
+            updates.add(update.future());
+        });
+
+        return CompositeFuture.join(updates).map(v -> {
+
+            completeFlush(batchEntries, failedEntries);
+
+            return null;
+        });
+    }
+
+    /**
+     * Requeue failed updates for next flush, until an update failed MAX_FLUSH_ATTEMPTS times
+     */
+    private synchronized void completeFlush(Map<Pair<Integer, Integer>, JsonArray> batchEntries, Map<Pair<Integer, Integer>, JsonArray> failedEntries)
+    {
+        for(Pair<Integer, Integer> key : batchEntries.keySet())
+        {
+            JsonArray failedParams = failedEntries.get(key);
+
+            if(failedParams == null)
+            {
+                failureCounts.remove(key);
+                continue;
+            }
+
+            Integer failureCount = failureCounts.merge(key, 1, Integer::sum);
+
+            if(failureCount >= MAX_FLUSH_ATTEMPTS)
+            {
+                log.error("Annotation update of uuid " + key.getRight() + " in project " + key.getLeft() + " dropped after failing " + failureCount + " flushes");
+                failureCounts.remove(key);
+            }
+            else
+            {
+                //keep newer update if the same data point was updated during the flush
+                dirtyEntries.putIfAbsent(key, failedParams);
+            }
+        }
+
+        flushingEntries = new HashMap<>();
+    }
+
+    /**
+     * Stop periodic flush and flush every dirty entry
+     * Block till flushed when called outside of vert.x thread, such as closing from the launcher before exit
+     */
+    public void close(@NonNull Promise<Void> promise)
+    {
+        vertx.cancelTimer(timerID);
+
+        Future<Void> finalFlush = flush();
+
+        if(!Context.isOnVertxThread())
+        {
+            CountDownLatch latch = new CountDownLatch(1);
+
+            finalFlush.onComplete(ar -> latch.countDown());
+
+            try
+            {
+                if(!latch.await(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                {
+                    log.error("Timeout in flushing annotation updates before closing");
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        finalFlush.onComplete(promise);
+    }
+}
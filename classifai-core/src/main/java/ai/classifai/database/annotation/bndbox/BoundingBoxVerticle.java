@@ -62,6 +62,18 @@ public class BoundingBoxVerticle extends AnnotationVerticle
         {
             this.retrieveDataPath(message, jdbcClient, BoundingBoxDbQuery.retrieveDataPath());
         }
+        else if(action.equals(BoundingBoxDbQuery.retrieveImageFile()))
+        {
+            this.retrieveImageFile(message, jdbcClient, BoundingBoxDbQuery.retrieveImageFile());
+        }
+        else if(action.equals(BoundingBoxDbQuery.retrieveDataPathList()))
+        {
+            this.retrieveDataPathList(message, jdbcClient, BoundingBoxDbQuery.retrieveDataPathList());
+        }
+        else if(action.equals(BoundingBoxDbQuery.retrieveMetadata()))
+        {
+            this.retrieveMetadata(message, jdbcClient, BoundingBoxDbQuery.retrieveMetadata());
+        }
         else if (action.equals(BoundingBoxDbQuery.loadValidProjectUUID()))
         {
             this.loadValidProjectUUID(message, jdbcClient, BoundingBoxDbQuery.loadValidProjectUUID());
@@ -85,8 +97,8 @@ public class BoundingBoxVerticle extends AnnotationVerticle
     {
         log.debug("Bounding Box Verticle stopping...");
 
-        //add action before stopped if necessary
-
+        //flush annotation updates pending in write-behind buffer
+        stopWriteBuffer(promise);
     }
 
     //obtain a JDBC client connection,
@@ -94,11 +106,7 @@ public class BoundingBoxVerticle extends AnnotationVerticle
     @Override
     public void start(Promise<Void> promise)
     {
-        jdbcClient = JDBCClient.create(vertx, new JsonObject()
-                .put("url", "jdbc:hsqldb:file:" + DatabaseConfig.getBndboxDb())
-                .put("driver_class", "org.hsqldb.jdbcDriver")
-                //.put("user", "admin")
-                .put("max_pool_size", 30));
+        jdbcClient = JDBCClient.create(vertx, DatabaseConfig.getStorageEngine().getJdbcConfig(DatabaseConfig.getBndboxDb()));
 
 
         jdbcClient.getConnection(ar -> {
@@ -109,16 +117,29 @@ public class BoundingBoxVerticle extends AnnotationVerticle
             } else {
                 SQLConnection connection = ar.result();
                 connection.execute(BoundingBoxDbQuery.createProject(), create -> {
-                    connection.close();
                     if (create.failed()) {
+                        connection.close();
                         log.error("BoundingBoxVerticle database preparation error", create.cause());
                         promise.fail(create.cause());
 
                     } else
                     {
-                        //the consumer methods registers an event bus destination handler
-                        vertx.eventBus().consumer(BoundingBoxDbQuery.getQueue(), this::onMessage);
-                        promise.complete();
+                        upgradeProjectTable(connection, upgrade -> {
+                            connection.close();
+
+                            if (upgrade.failed())
+                            {
+                                log.error("BoundingBoxVerticle database upgrade error", upgrade.cause());
+                                promise.fail(upgrade.cause());
+                                return;
+                            }
+
+                            startWriteBuffer(jdbcClient, BoundingBoxDbQuery.updateData());
+
+                            //the consumer methods registers an event bus destination handler
+                            vertx.eventBus().consumer(BoundingBoxDbQuery.getQueue(), this::onMessage);
+                            promise.complete();
+                        });
                     }
                 });
             }
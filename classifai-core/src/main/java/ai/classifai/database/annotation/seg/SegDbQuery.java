@@ -27,9 +27,9 @@ public class SegDbQuery extends AnnotationQuery
     private static final String QUEUE = "segmentation.queue";
 
     private static final String CREATE_PROJECT = "create table if not exists Project (uuid integer, project_id integer, img_path varchar(2000), polygons clob, img_depth integer, " +
-                "img_x integer, img_y integer, img_w double, img_h double, file_size integer, img_ori_w integer, img_ori_h integer, primary key(uuid, project_id))";
+                "img_x integer, img_y integer, img_w double, img_h double, file_size integer, img_ori_w integer, img_ori_h integer, img_orientation integer, content_hash varchar(64), primary key(uuid, project_id))";
 
-    private static final String RETRIEVE_DATA = "select img_path, polygons, img_x, img_y, img_w, img_h, file_size, img_ori_w, img_ori_h from Project where uuid = ? and project_id = ?";
+    private static final String RETRIEVE_DATA = "select img_path, polygons, img_x, img_y, img_w, img_h, file_size, img_ori_w, img_ori_h, img_depth from Project where uuid = ? and project_id = ?";
 
     private static final String UPDATE_DATA = "update Project set polygons = ?, img_depth = ?, img_x = ?, img_y = ?, img_w = ?, img_h = ?, file_size = ?, img_ori_w = ?, img_ori_h = ? where uuid = ? and project_id = ?";
 
@@ -62,6 +62,18 @@ public class SegVerticle extends AnnotationVerticle
         {
             this.retrieveDataPath(message, jdbcClient, SegDbQuery.retrieveDataPath());
         }
+        else if(action.equals(SegDbQuery.retrieveImageFile()))
+        {
+            this.retrieveImageFile(message, jdbcClient, SegDbQuery.retrieveImageFile());
+        }
+        else if(action.equals(SegDbQuery.retrieveDataPathList()))
+        {
+            this.retrieveDataPathList(message, jdbcClient, SegDbQuery.retrieveDataPathList());
+        }
+        else if(action.equals(SegDbQuery.retrieveMetadata()))
+        {
+            this.retrieveMetadata(message, jdbcClient, SegDbQuery.retrieveMetadata());
+        }
         else if (action.equals(SegDbQuery.loadValidProjectUUID()))
         {
             this.loadValidProjectUUID(message, jdbcClient, SegDbQuery.loadValidProjectUUID());
@@ -86,7 +98,8 @@ public class SegVerticle extends AnnotationVerticle
     {
         log.debug("Seg Verticle stopping...");
 
-        //add action before stopped if necessary
+        //flush annotation updates pending in write-behind buffer
+        stopWriteBuffer(promise);
     }
 
     //obtain a JDBC client connection,
@@ -94,11 +107,7 @@ public class SegVerticle extends AnnotationVerticle
     @Override
     public void start(Promise<Void> promise)
     {
-        jdbcClient = JDBCClient.create(vertx, new JsonObject()
-                .put("url", "jdbc:hsqldb:file:" + DatabaseConfig.getSegDb())
-                .put("driver_class", "org.hsqldb.jdbcDriver")
-                //.put("user", "admin")
-                .put("max_pool_size", 30));
+        jdbcClient = JDBCClient.create(vertx, DatabaseConfig.getStorageEngine().getJdbcConfig(DatabaseConfig.getSegDb()));
 
 
         jdbcClient.getConnection(ar -> {
@@ -110,16 +119,29 @@ public class SegVerticle extends AnnotationVerticle
             } else {
                 SQLConnection connection = ar.result();
                 connection.execute(SegDbQuery.createProject(), create -> {
-                    connection.close();
                     if (create.failed()) {
+                        connection.close();
                         log.error("SegVerticle database preparation error", create.cause());
                         promise.fail(create.cause());
 
                     } else
                     {
-                        //the consumer methods registers an event bus destination handler
-                        vertx.eventBus().consumer(SegDbQuery.getQueue(), this::onMessage);
-                        promise.complete();
+                        upgradeProjectTable(connection, upgrade -> {
+                            connection.close();
+
+                            if (upgrade.failed())
+                            {
+                                log.error("SegVerticle database upgrade error", upgrade.cause());
+                                promise.fail(upgrade.cause());
+                                return;
+                            }
+
+                            startWriteBuffer(jdbcClient, SegDbQuery.updateData());
+
+                            //the consumer methods registers an event bus destination handler
+                            vertx.eventBus().consumer(SegDbQuery.getQueue(), this::onMessage);
+                            promise.complete();
+                        });
                     }
                 });
             }
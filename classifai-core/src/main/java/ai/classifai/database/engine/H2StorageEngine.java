@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database.engine;
+
+import io.vertx.core.json.JsonObject;
+import lombok.NonNull;
+
+/**
+ * H2 file database on MVStore, a log structured store suited for write heavy annotation updates
+ * Database files are separated from HSQLDB files, data is not migrated between engines
+ *
+ * @author codenamewei
+ */
+public class H2StorageEngine implements StorageEngine
+{
+    private static final String NAME = "h2";
+
+    //FILE_LOCK=FILE keeps a lock file while database is opened, same as HSQLDB
+    private static final String LCK_FILE_EXTENSION = ".lock.db";
+
+    private static final Integer MAX_POOL_SIZE = 30;
+
+    public String getName() { return NAME; }
+
+    public JsonObject getJdbcConfig(@NonNull String databasePath)
+    {
+        return new JsonObject()
+                .put("url", "jdbc:h2:file:" + databasePath + ";FILE_LOCK=FILE")
+                .put("driver_class", "org.h2.Driver")
+                .put("max_pool_size", MAX_POOL_SIZE);
+    }
+
+    public String getLockFile(@NonNull String databasePath)
+    {
+        return databasePath + LCK_FILE_EXTENSION;
+    }
+}
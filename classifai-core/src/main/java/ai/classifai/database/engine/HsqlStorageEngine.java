@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database.engine;
+
+import io.vertx.core.json.JsonObject;
+import lombok.NonNull;
+
+/**
+ * HSQLDB file database. Default storage engine
+ *
+ * @author codenamewei
+ */
+public class HsqlStorageEngine implements StorageEngine
+{
+    private static final String NAME = "hsqldb";
+
+    private static final String LCK_FILE_EXTENSION = ".lck";
+
+    private static final Integer MAX_POOL_SIZE = 30;
+
+    public String getName() { return NAME; }
+
+    public JsonObject getJdbcConfig(@NonNull String databasePath)
+    {
+        return new JsonObject()
+                .put("url", "jdbc:hsqldb:file:" + databasePath)
+                .put("driver_class", "org.hsqldb.jdbcDriver")
+                .put("max_pool_size", MAX_POOL_SIZE);
+    }
+
+    public String getLockFile(@NonNull String databasePath)
+    {
+        return databasePath + LCK_FILE_EXTENSION;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database.engine;
+
+import io.vertx.core.json.JsonObject;
+import lombok.NonNull;
+
+/**
+ * Embedded database engine backing the verticles
+ * Queries in *DbQuery are kept to standard SQL so every engine runs the same statements
+ *
+ * @author codenamewei
+ */
+public interface StorageEngine
+{
+    String getName();
+
+    JsonObject getJdbcConfig(@NonNull String databasePath);
+
+    String getLockFile(@NonNull String databasePath);
+}
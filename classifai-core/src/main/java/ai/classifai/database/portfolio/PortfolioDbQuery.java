@@ -24,11 +24,37 @@ public class PortfolioDbQuery
 {
     private final static String QUEUE = "portfolio.queue";
 
-    private final static String CREATE_PORTFOLIO_TABLE = "create table if not exists Portfolio (project_id integer identity primary key, project_name varchar(255), annotation_type integer, label_list varchar(8000), uuid_generator_seed integer, uuid_list clob)";
+    private final static String CREATE_PORTFOLIO_TABLE = "create table if not exists Portfolio (project_id integer generated by default as identity primary key, project_name varchar(255), annotation_type integer, label_list varchar(8000), uuid_generator_seed integer, uuid_list clob)";
+
+    //uuid_list is kept for migration of existing database. Membership of data points is in ProjectUUID
+    private final static String CREATE_PROJECT_UUID_TABLE = "create table if not exists ProjectUUID (project_id integer, uuid integer, primary key(project_id, uuid))";
+
+    //folder kept synchronized with a project, linked again when the project is loaded after restart
+    private final static String CREATE_LINKED_FOLDER_TABLE = "create table if not exists LinkedFolder (project_id integer primary key, folder_path varchar(8000))";
 
     private final static String CREATE_NEW_PROJECT = "insert into Portfolio values (?, ?, ?, ?, ?, ?)";
 
-    private final static String UPDATE_PROJECT = "update Portfolio set uuid_list = ? where project_id = ?";
+    private final static String CREATE_PROJECT_UUID = "insert into ProjectUUID values (?, ?)";
+
+    private final static String DELETE_PROJECT_UUID = "delete from ProjectUUID where project_id = ? and uuid = ?";
+
+    private final static String DELETE_PROJECT_UUID_LIST = "delete from ProjectUUID where project_id = ?";
+
+    private final static String LOAD_PROJECT_UUID_LIST = "select project_id, uuid from ProjectUUID order by project_id, uuid";
+
+    private final static String LOAD_LEGACY_UUID_LIST = "select project_id, uuid_list from Portfolio where uuid_list is not null";
+
+    private final static String MIGRATE_PROJECT_UUID = "merge into ProjectUUID using (values(?, ?)) as v(project_id, uuid) " +
+                "on ProjectUUID.project_id = v.project_id and ProjectUUID.uuid = v.uuid when not matched then insert values (v.project_id, v.uuid)";
+
+    private final static String CLEAR_LEGACY_UUID_LIST = "update Portfolio set uuid_list = null where uuid_list is not null";
+
+    private final static String UPDATE_LINKED_FOLDER = "merge into LinkedFolder using (values(?, ?)) as v(project_id, folder_path) " +
+                "on LinkedFolder.project_id = v.project_id when matched then update set folder_path = v.folder_path when not matched then insert values (v.project_id, v.folder_path)";
+
+    private final static String DELETE_LINKED_FOLDER = "delete from LinkedFolder where project_id = ?";
+
+    private final static String GET_LINKED_FOLDER = "select folder_path from LinkedFolder where project_id = ?";
 
     private final static String DELETE_PROJECT = "delete from Portfolio where project_id = ?";
 
@@ -38,11 +64,11 @@ public class PortfolioDbQuery
 
     private final static String GET_PROJECT_LABEL_LIST = "select label_list from Portfolio where project_id = ?";
 
-    private final static String LOAD_DB_PROJECT = "select project_id, project_name, annotation_type, label_list, uuid_generator_seed, uuid_list from Portfolio";
+    private final static String LOAD_DB_PROJECT = "select project_id, project_name, annotation_type, label_list, uuid_generator_seed from Portfolio";
 
     private final static String GET_PROJECT_NAME = "select project_name, annotation_type from Portfolio where project_id = ?";
 
-    private final static String GET_PROJECT_UUID_LIST = "select uuid_list, uuid_generator_seed from Portfolio where project_id = ?";
+    private final static String GET_PROJECT_UUID_LIST = "select p.uuid_generator_seed, u.uuid from Portfolio p left join ProjectUUID u on p.project_id = u.project_id where p.project_id = ? order by u.uuid";
 
     private final static String GET_ALL_PROJECTS_FOR_ANNOTATION_TYPE = "select project_name from Portfolio where annotation_type = ?";
 
@@ -50,9 +76,31 @@ public class PortfolioDbQuery
 
     public static String createPortfolioTable() { return CREATE_PORTFOLIO_TABLE; }
 
+    public static String createProjectUUIDTable() { return CREATE_PROJECT_UUID_TABLE; }
+
+    public static String createLinkedFolderTable() { return CREATE_LINKED_FOLDER_TABLE; }
+
     public static String createNewProject() { return CREATE_NEW_PROJECT; }
 
-    public static String updateProject() { return UPDATE_PROJECT; }
+    public static String createProjectUUID() { return CREATE_PROJECT_UUID; }
+
+    public static String deleteProjectUUID() { return DELETE_PROJECT_UUID; }
+
+    public static String deleteProjectUUIDList() { return DELETE_PROJECT_UUID_LIST; }
+
+    public static String loadProjectUUIDList() { return LOAD_PROJECT_UUID_LIST; }
+
+    public static String loadLegacyUUIDList() { return LOAD_LEGACY_UUID_LIST; }
+
+    public static String migrateProjectUUID() { return MIGRATE_PROJECT_UUID; }
+
+    public static String clearLegacyUUIDList() { return CLEAR_LEGACY_UUID_LIST; }
+
+    public static String updateLinkedFolder() { return UPDATE_LINKED_FOLDER; }
+
+    public static String deleteLinkedFolder() { return DELETE_LINKED_FOLDER; }
+
+    public static String getLinkedFolder() { return GET_LINKED_FOLDER; }
 
     public static String deleteProject() { return DELETE_PROJECT; }
 
@@ -15,6 +15,8 @@
  */
 package ai.classifai.database.portfolio;
 
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 
@@ -35,5 +37,5 @@ public interface PortfolioServiceable
 
     void getAllProjectsForAnnotationType(Message<JsonObject> message);
 
-    void configurePortfolioVerticle();
+    void configurePortfolioVerticle(Handler<AsyncResult<Void>> handler);
 }
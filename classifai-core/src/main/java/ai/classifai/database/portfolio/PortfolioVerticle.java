@@ -16,6 +16,7 @@
 
 package ai.classifai.database.portfolio;
 
+import ai.classifai.database.BatchHandler;
 import ai.classifai.database.DatabaseConfig;
 import ai.classifai.database.VerticleServiceable;
 import ai.classifai.loader.LoaderStatus;
@@ -23,23 +24,23 @@ import ai.classifai.loader.ProjectLoader;
 import ai.classifai.util.ParamConfig;
 import ai.classifai.util.ProjectHandler;
 import ai.classifai.util.collection.ConversionHandler;
+import ai.classifai.util.http.HTTPCacheValidator;
 import ai.classifai.util.message.ErrorCodes;
 import ai.classifai.util.message.ReplyHandler;
 import ai.classifai.util.type.AnnotationType;
-import io.vertx.core.AbstractVerticle;
-import io.vertx.core.Promise;
+import io.vertx.core.*;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.SQLRowStream;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -126,7 +127,7 @@ public class PortfolioVerticle extends AbstractVerticle implements VerticleServi
                     .add(annotationType)               //annotation_type
                     .add(ParamConfig.getEmptyArray())  //label_list
                     .add(0)                            //uuid_generator_seed
-                    .add(ParamConfig.getEmptyArray()); //uuid_list
+                    .addNull();                        //uuid_list, replaced by ProjectUUID
 
             portfolioDbClient.queryWithParams(PortfolioDbQuery.createNewProject(), params, fetch -> {
 
@@ -182,6 +183,18 @@ public class PortfolioVerticle extends AbstractVerticle implements VerticleServi
 
             if (fetch.succeeded()) {
 
+                portfolioDbClient.queryWithParams(PortfolioDbQuery.deleteProjectUUIDList(), params, reply -> {
+
+                    if(!reply.succeeded())
+                    {
+                        log.info("Delete list of uuids of project " + projectID + " from Portfolio Database failed");
+                    }
+                });
+
+                deleteLinkedFolder(projectID);
+
+                HTTPCacheValidator.removeProject(projectID);
+
                 message.reply(ReplyHandler.getOkReply());
 
             } else
@@ -237,15 +250,19 @@ public class PortfolioVerticle extends AbstractVerticle implements VerticleServi
                 try {
                     ResultSet resultSet = fetch.result();
 
-                    JsonArray row = resultSet.getResults().get(0);
                     JsonObject response = ReplyHandler.getOkReply();
 
-                    String strList = row.getString(0);
-                    Integer uuidGeneratorSeed = row.getInteger(1);
+                    Integer uuidGeneratorSeed = resultSet.getResults().get(0).getInteger(0);
+
+                    //left join gives one row with null uuid for project without data point
+                    List<Integer> uuidList = resultSet.getResults()
+                            .stream()
+                            .map(json -> json.getInteger(1))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList());
 
-                    List<Integer> uuidList = ConversionHandler.string2IntegerList(strList);
                     //FIX ME: GET THE MAXIMUM AND set the generator if needed
-                    response.put(ParamConfig.getUUIDListParam(), uuidList);//row.getString(0)));
+                    response.put(ParamConfig.getUUIDListParam(), uuidList);
                     response.put(ParamConfig.getUuidGeneratorParam(), uuidGeneratorSeed);
 
                     message.reply(response);
@@ -300,89 +317,248 @@ public class PortfolioVerticle extends AbstractVerticle implements VerticleServi
         });
     }
 
-    public static void updateFileSystemUUIDList(@NonNull Integer projectID)
+    public static void addProjectUUIDList(@NonNull Integer projectID, @NonNull List<Integer> uuidList)
     {
-        ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
+        updateProjectUUIDList(PortfolioDbQuery.createProjectUUID(), projectID, uuidList);
+    }
+
+    public static void removeProjectUUIDList(@NonNull Integer projectID, @NonNull List<Integer> uuidList)
+    {
+        updateProjectUUIDList(PortfolioDbQuery.deleteProjectUUID(), projectID, uuidList);
+    }
+
+    public static void updateLinkedFolder(@NonNull Integer projectID, @NonNull File rootFolder)
+    {
+        JsonArray params = new JsonArray().add(projectID).add(rootFolder.getAbsolutePath());
+
+        portfolioDbClient.queryWithParams(PortfolioDbQuery.updateLinkedFolder(), params, fetch -> {
+
+            if(!fetch.succeeded())
+            {
+                log.info("Update linked folder of project " + projectID + " in Portfolio Database failed. Folder is not linked again after restart", fetch.cause());
+            }
+        });
+    }
+
+    public static void deleteLinkedFolder(@NonNull Integer projectID)
+    {
+        portfolioDbClient.queryWithParams(PortfolioDbQuery.deleteLinkedFolder(), new JsonArray().add(projectID), fetch -> {
+
+            if(!fetch.succeeded())
+            {
+                log.info("Delete linked folder of project " + projectID + " from Portfolio Database failed", fetch.cause());
+            }
+        });
+    }
+
+    /**
+     * @param handler completed with linked folder of project, null when no folder is linked
+     */
+    public static void getLinkedFolder(@NonNull Integer projectID, @NonNull Handler<AsyncResult<File>> handler)
+    {
+        portfolioDbClient.queryWithParams(PortfolioDbQuery.getLinkedFolder(), new JsonArray().add(projectID), fetch -> {
+
+            if(fetch.succeeded())
+            {
+                List<JsonArray> rows = fetch.result().getResults();
 
-        List<Integer> uuidList = loader.getUuidListFromDatabase();
+                handler.handle(Future.succeededFuture(rows.isEmpty() ? null : new File(rows.get(0).getString(0))));
+            }
+            else
+            {
+                handler.handle(Future.failedFuture(fetch.cause()));
+            }
+        });
+    }
 
-        JsonArray jsonUpdateBody = new JsonArray().add(uuidList.toString()).add(projectID);
+    private static void updateProjectUUIDList(String query, Integer projectID, List<Integer> uuidList)
+    {
+        List<JsonArray> batchParams = uuidList.stream()
+                .map(uuid -> new JsonArray().add(projectID).add(uuid))
+                .collect(Collectors.toList());
 
-        portfolioDbClient.queryWithParams(PortfolioDbQuery.updateProject(), jsonUpdateBody, reply -> {
+        BatchHandler.executeBatch(portfolioDbClient, query, batchParams, reply -> {
 
             if(!reply.succeeded())
             {
-                log.info("Update list of uuids to Portfolio Database failed");
+                log.info("Update list of uuids to Portfolio Database failed", reply.cause());
             }
         });
     }
 
-    public void configurePortfolioVerticle()
+    /**
+     * One time migration of uuid_list clob of Portfolio into ProjectUUID
+     * uuid_list is cleared after migrated so the migration will not rerun
+     * Rows are merged so rerun after an interrupted migration is safe
+     */
+    private void migrateLegacyUUIDList(Handler<AsyncResult<Void>> handler)
     {
-        portfolioDbClient.query(PortfolioDbQuery.loadDbProject(), fetch -> {
+        portfolioDbClient.query(PortfolioDbQuery.loadLegacyUUIDList(), fetch -> {
 
-            if (fetch.succeeded()) {
+            if(fetch.failed())
+            {
+                handler.handle(Future.failedFuture(fetch.cause()));
+                return;
+            }
 
-                ResultSet resultSet = fetch.result();
+            if(fetch.result().getNumRows() == 0)
+            {
+                handler.handle(Future.succeededFuture());
+                return;
+            }
 
+            List<JsonArray> batchParams = new ArrayList<>();
 
-                if(resultSet.getNumRows() == 0)
+            for(JsonArray row : fetch.result().getResults())
+            {
+                Integer projectID = row.getInteger(0);
+
+                //uuid list might carry duplicated uuid
+                Set<Integer> uuidSet = new LinkedHashSet<>(ConversionHandler.string2IntegerList(row.getString(1)));
+
+                uuidSet.forEach(uuid -> batchParams.add(new JsonArray().add(projectID).add(uuid)));
+            }
+
+            log.info("Migrating " + batchParams.size() + " uuids of " + fetch.result().getNumRows() + " projects into ProjectUUID table");
+
+            BatchHandler.executeBatch(portfolioDbClient, PortfolioDbQuery.migrateProjectUUID(), batchParams, batch -> {
+
+                if(batch.failed())
                 {
-                    log.debug("Project ID List is empty. Initiate generator id from 0");
-                    ProjectHandler.setProjectIDGenerator(0);
+                    handler.handle(Future.failedFuture(batch.cause()));
+                    return;
                 }
-                else
-                {
-                    List<Integer> projectIDList = resultSet
-                            .getResults()
-                            .stream()
-                            .map(json -> json.getInteger(0))
-                            .collect(Collectors.toList());
 
-                    List<String> projectNameList = resultSet
-                            .getResults()
-                            .stream()
-                            .map(json -> json.getString(1))
-                            .collect(Collectors.toList());
+                portfolioDbClient.query(PortfolioDbQuery.clearLegacyUUIDList(), clear -> {
+                    handler.handle(clear.succeeded() ? Future.succeededFuture() : Future.failedFuture(clear.cause()));
+                });
+            });
+        });
+    }
 
-                    List<Integer> annotationTypeList = resultSet
-                            .getResults()
-                            .stream()
-                            .map(json -> json.getInteger(2))
-                            .collect(Collectors.toList());
+    /**
+     * Build loaders of all projects with their data points, handler is called once membership of every project is loaded
+     */
+    public void configurePortfolioVerticle(Handler<AsyncResult<Void>> handler)
+    {
+        portfolioDbClient.query(PortfolioDbQuery.loadDbProject(), fetch -> {
 
-                    List<String> labelList = resultSet
-                            .getResults()
-                            .stream()
-                            .map(json -> json.getString(3))
-                            .collect(Collectors.toList());
+            if (fetch.failed())
+            {
+                handler.handle(Future.failedFuture(fetch.cause()));
+                return;
+            }
 
-                    List<Integer> uuidGeneratorList = resultSet
-                            .getResults()
-                            .stream()
-                            .map(json -> json.getInteger(4))
-                            .collect(Collectors.toList());
+            ResultSet resultSet = fetch.result();
 
-                    List<String> uuidsFromDatabaseList = resultSet
-                            .getResults()
-                            .stream()
-                            .map(json -> json.getString(5))
-                            .collect(Collectors.toList());
+            if(resultSet.getNumRows() == 0)
+            {
+                log.debug("Project ID List is empty. Initiate generator id from 0");
+                ProjectHandler.setProjectIDGenerator(0);
 
-                    //set the seed generator when creating new project
-                    ProjectHandler.setProjectIDGenerator(Collections.max(projectIDList) + 1);
+                handler.handle(Future.succeededFuture());
+            }
+            else
+            {
+                List<Integer> projectIDList = resultSet
+                        .getResults()
+                        .stream()
+                        .map(json -> json.getInteger(0))
+                        .collect(Collectors.toList());
 
-                    for(int i = 0; i < projectIDList.size(); ++i)
-                    {
-                        ProjectLoader loader = ProjectHandler.buildProjectLoader(projectNameList.get(i), projectIDList.get(i), annotationTypeList.get(i), LoaderStatus.DID_NOT_INITIATED);
+                List<String> projectNameList = resultSet
+                        .getResults()
+                        .stream()
+                        .map(json -> json.getString(1))
+                        .collect(Collectors.toList());
 
-                        loader.setUuidGeneratorSeed(uuidGeneratorList.get(i));
-                        loader.setUuidListFromDatabase(ConversionHandler.string2IntegerList(uuidsFromDatabaseList.get(i)));
-                        loader.setLabelList(ConversionHandler.string2StringList(labelList.get(i)));
-                    }
+                List<Integer> annotationTypeList = resultSet
+                        .getResults()
+                        .stream()
+                        .map(json -> json.getInteger(2))
+                        .collect(Collectors.toList());
+
+                List<String> labelList = resultSet
+                        .getResults()
+                        .stream()
+                        .map(json -> json.getString(3))
+                        .collect(Collectors.toList());
+
+                List<Integer> uuidGeneratorList = resultSet
+                        .getResults()
+                        .stream()
+                        .map(json -> json.getInteger(4))
+                        .collect(Collectors.toList());
+
+                //set the seed generator when creating new project
+                ProjectHandler.setProjectIDGenerator(Collections.max(projectIDList) + 1);
+
+                for(int i = 0; i < projectIDList.size(); ++i)
+                {
+                    ProjectLoader loader = ProjectHandler.buildProjectLoader(projectNameList.get(i), projectIDList.get(i), annotationTypeList.get(i), LoaderStatus.DID_NOT_INITIATED);
+
+                    loader.setUuidGeneratorSeed(uuidGeneratorList.get(i));
+                    loader.setLabelList(ConversionHandler.string2StringList(labelList.get(i)));
                 }
 
+                configureProjectUUIDList(handler);
+            }
+
+        });
+    }
+
+    /**
+     * Stream membership of all projects in one indexed scan instead of parsing a clob per project
+     * Loaders get their data points once the scan completes, so no project is loaded with part of its data points
+     */
+    private void configureProjectUUIDList(Handler<AsyncResult<Void>> handler)
+    {
+        portfolioDbClient.getConnection(ar -> {
+
+            if(ar.failed())
+            {
+                handler.handle(Future.failedFuture(ar.cause()));
+                return;
             }
+
+            SQLConnection connection = ar.result();
+
+            connection.queryStream(PortfolioDbQuery.loadProjectUUIDList(), stream -> {
+
+                if(stream.failed())
+                {
+                    connection.close();
+                    handler.handle(Future.failedFuture(stream.cause()));
+                    return;
+                }
+
+                SQLRowStream rowStream = stream.result();
+
+                Map<Integer, List<Integer>> uuidListDict = new HashMap<>();
+
+                //either end or exception completes loading
+                Promise<Void> promise = Promise.promise();
+
+                promise.future().onComplete(load -> {
+                    connection.close();
+                    handler.handle(load);
+                });
+
+                rowStream.handler(row -> uuidListDict.computeIfAbsent(row.getInteger(0), projectID -> new ArrayList<>()).add(row.getInteger(1)));
+
+                rowStream.exceptionHandler(promise::tryFail);
+
+                rowStream.endHandler(v -> {
+
+                    uuidListDict.forEach((projectID, uuidList) -> {
+                        ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
+
+                        if(loader != null) loader.setUuidListFromDatabase(uuidList);
+                    });
+
+                    promise.tryComplete();
+                });
+            });
         });
     }
 
@@ -402,33 +578,68 @@ public class PortfolioVerticle extends AbstractVerticle implements VerticleServi
     public void start(Promise<Void> promise)
     {
 
-        portfolioDbClient = JDBCClient.create(vertx, new JsonObject()
-                .put("url", "jdbc:hsqldb:file:" + DatabaseConfig.getPortfolioDb())
-                .put("driver_class", "org.hsqldb.jdbcDriver")
-                //.put("user", "admin")
-                .put("max_pool_size", 30));
+        portfolioDbClient = JDBCClient.create(vertx, DatabaseConfig.getStorageEngine().getJdbcConfig(DatabaseConfig.getPortfolioDb()));
 
         portfolioDbClient.getConnection(ar -> {
                 if (ar.succeeded()) {
 
                     SQLConnection connection = ar.result();
                     connection.execute(PortfolioDbQuery.createPortfolioTable(), create -> {
-                        connection.close();
-
-                        if (create.succeeded()) {
 
-                            //the consumer methods registers an event bus destination handler
-                            vertx.eventBus().consumer(PortfolioDbQuery.getQueue(), this::onMessage);
-
-                            configurePortfolioVerticle();
-
-                            promise.complete();
-
-                        } else
+                        if (create.failed())
                         {
+                            connection.close();
                             log.error("Portfolio database preparation error", create.cause());
                             promise.fail(create.cause());
+                            return;
                         }
+
+                        connection.execute(PortfolioDbQuery.createProjectUUIDTable(), createUUID -> {
+
+                            if (createUUID.failed())
+                            {
+                                connection.close();
+                                log.error("Portfolio database preparation error", createUUID.cause());
+                                promise.fail(createUUID.cause());
+                                return;
+                            }
+
+                            connection.execute(PortfolioDbQuery.createLinkedFolderTable(), createLinkedFolder -> {
+                                connection.close();
+
+                                if (createLinkedFolder.failed())
+                                {
+                                    log.error("Portfolio database preparation error", createLinkedFolder.cause());
+                                    promise.fail(createLinkedFolder.cause());
+                                    return;
+                                }
+
+                                migrateLegacyUUIDList(migrate -> {
+
+                                    if(migrate.failed())
+                                    {
+                                        log.error("Migration of uuid list into ProjectUUID failed", migrate.cause());
+                                        promise.fail(migrate.cause());
+                                        return;
+                                    }
+
+                                    configurePortfolioVerticle(configure -> {
+
+                                        if(configure.failed())
+                                        {
+                                            log.error("Failed in loading projects", configure.cause());
+                                            promise.fail(configure.cause());
+                                            return;
+                                        }
+
+                                        //the consumer methods registers an event bus destination handler
+                                        vertx.eventBus().consumer(PortfolioDbQuery.getQueue(), this::onMessage);
+
+                                        promise.complete();
+                                    });
+                                });
+                            });
+                        });
                     });
 
                 } else {
@@ -22,6 +22,8 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class per project for managing the loading of project
@@ -46,17 +48,19 @@ public class ProjectLoader
     @Getter private FileSystemStatus fileSystemStatus;
 
     //list to send the new added datapoints as thumbnails to front end
-    @Getter private List<Integer> fileSysNewUUIDList;
+    private List<Integer> fileSysNewUUIDList;
 
     //a list of unique uuid representing number of data points in one project
-    @Setter @Getter private List<Integer> sanityUUIDList;
+    //guarded by this, linked folder watcher updates it from its own thread
+    private List<Integer> sanityUUIDList;
 
-    @Getter private List<Integer> progressUpdate;
+    private List<Integer> progressUpdate;
 
     //Set to push in unique uuid to prevent recurrence
     //this will eventually port into List<Integer>
     private Set<Integer> uuidUniqueSet;
-    @Getter @Setter private List<Integer> uuidListFromDatabase;
+    //guarded by this, ingestion threads add data points while event loop reads it
+    private List<Integer> uuidListFromDatabase;
 
     //used when checking for progress in
     //(1) validity of database data point
@@ -64,6 +68,16 @@ public class ProjectLoader
     private Integer currentUUIDMarker;
     private Integer totalUUIDMaxLen;
 
+    //background thumbnail generation of new data points
+    private AtomicInteger thumbnailProgress = new AtomicInteger(0);
+    private AtomicInteger thumbnailTotal = new AtomicInteger(0);
+
+    //content hash of data points, loaded from database on first deduplicated import, null when not loaded
+    private CompletableFuture<Set<String>> contentHashSet;
+
+    //duplicates skipped in current file system import
+    private AtomicInteger fileSysDuplicateCount = new AtomicInteger(0);
+
     public ProjectLoader(Integer currentProjectID, String currentProjectName, Integer annotationTypeInt, LoaderStatus currentLoaderStatus)
     {
         projectID = currentProjectID;
@@ -91,6 +105,8 @@ public class ProjectLoader
 
         progressUpdate = new ArrayList<>(Arrays.asList(currentUUIDMarker, totalUUIDMaxLen));
 
+        fileSysDuplicateCount.set(0);
+
         fileSystemStatus = currentFileSystemStatus;
     }
 
@@ -121,7 +137,7 @@ public class ProjectLoader
 
     }
 
-    public void updateDBLoadingProgress(Integer currentSize)
+    public synchronized void updateDBLoadingProgress(Integer currentSize)
     {
         currentUUIDMarker = currentSize;
 
@@ -141,45 +157,102 @@ public class ProjectLoader
         uuidUniqueSet.add(uuid);
     }
 
-    public void pushFileSysNewUUIDList(Integer uuid)
+    /**
+     * Make committed data points visible to project while the rest are still being ingested
+     */
+    public synchronized void pushFileSysNewUUIDList(List<Integer> uuidList)
     {
-        fileSysNewUUIDList.add(uuid);
+        fileSysNewUUIDList.addAll(uuidList);
+
+        addUUIDList(uuidList);
     }
 
-    //updating project from file system
-    public void updateFileSysLoadingProgress(Integer currentSize)
+    /**
+     * Add data points inserted into database without going through file system selection
+     */
+    public synchronized void addUUIDList(List<Integer> uuidList)
     {
-        currentUUIDMarker = currentSize;
-        progressUpdate.set(0, currentUUIDMarker);
+        sanityUUIDList.addAll(uuidList);
+        uuidListFromDatabase.addAll(uuidList);
 
-        //if done, offload set to list
-        if (currentUUIDMarker.equals(totalUUIDMaxLen))
-        {
-            offloadFileSysNewList2List();
-        }
+        PortfolioVerticle.addProjectUUIDList(projectID, uuidList);
+    }
 
+    /**
+     * @return copy of data points in database, which stays unchanged while data points are added or removed
+     */
+    public synchronized List<Integer> getUuidListFromDatabase()
+    {
+        return new ArrayList<>(uuidListFromDatabase);
     }
 
-    private void offloadFileSysNewList2List()
+    public synchronized void setUuidListFromDatabase(List<Integer> uuidList)
     {
+        uuidListFromDatabase = new ArrayList<>(uuidList);
+    }
 
+    /**
+     * @return true when any of the data points was in database
+     */
+    public synchronized boolean removeUuidListFromDatabase(List<Integer> uuidList)
+    {
+        return uuidListFromDatabase.removeAll(new HashSet<>(uuidList));
+    }
 
-        if(fileSysNewUUIDList.isEmpty())
-        {
-            fileSystemStatus = FileSystemStatus.WINDOW_CLOSE_DATABASE_NOT_UPDATED;
-        }
-        else
+    /**
+     * @return copy of valid data points, which stays unchanged while data points are added or removed
+     */
+    public synchronized List<Integer> getSanityUUIDList()
+    {
+        return new ArrayList<>(sanityUUIDList);
+    }
+
+    public synchronized void setSanityUUIDList(List<Integer> uuidList)
+    {
+        sanityUUIDList = new ArrayList<>(uuidList);
+    }
+
+    /**
+     * Mark data points invalid, e.g. when image is deleted, without reloading project
+     *
+     * @return true when any of the data points was valid
+     */
+    public synchronized boolean removeSanityUUIDList(List<Integer> uuidList)
+    {
+        return sanityUUIDList.removeAll(new HashSet<>(uuidList));
+    }
+
+    /**
+     * Mark data points valid again, e.g. when deleted image is restored
+     */
+    public synchronized void restoreSanityUUIDList(List<Integer> uuidList)
+    {
+        Set<Integer> sanityUUIDSet = new HashSet<>(sanityUUIDList);
+
+        for(Integer uuid : uuidList)
         {
-            sanityUUIDList.addAll(fileSysNewUUIDList);
-            uuidListFromDatabase.addAll(fileSysNewUUIDList);
-            PortfolioVerticle.updateFileSystemUUIDList(projectID);
-            fileSystemStatus = FileSystemStatus.WINDOW_CLOSE_DATABASE_UPDATED;
+            if(sanityUUIDSet.add(uuid)) sanityUUIDList.add(uuid);
         }
+    }
 
+    public synchronized List<Integer> getFileSysNewUUIDList()
+    {
+        return new ArrayList<>(fileSysNewUUIDList);
+    }
 
+    //updating project from file system
+    public synchronized void updateFileSysLoadingProgress(Integer currentSize)
+    {
+        currentUUIDMarker = currentSize;
+        progressUpdate.set(0, currentUUIDMarker);
+    }
+
+    public synchronized void completeFileSysLoading()
+    {
+        fileSystemStatus = fileSysNewUUIDList.isEmpty() ? FileSystemStatus.WINDOW_CLOSE_DATABASE_NOT_UPDATED : FileSystemStatus.WINDOW_CLOSE_DATABASE_UPDATED;
     }
 
-    public void setFileSysTotalUUIDSize(Integer totalUUIDSizeBuffer)
+    public synchronized void setFileSysTotalUUIDSize(Integer totalUUIDSizeBuffer)
     {
 
         totalUUIDMaxLen = totalUUIDSizeBuffer;
@@ -187,6 +260,63 @@ public class ProjectLoader
 
     }
 
+    //total grows while folder is still being walked
+    public synchronized void addFileSysTotalUUIDSize(Integer size)
+    {
+        totalUUIDMaxLen += size;
+        progressUpdate.set(1, totalUUIDMaxLen);
+    }
+
+    public synchronized List<Integer> getProgressUpdate()
+    {
+        return new ArrayList<>(progressUpdate);
+    }
+
+    public void addThumbnailTotal(Integer thumbnailSize)
+    {
+        thumbnailTotal.addAndGet(thumbnailSize);
+    }
+
+    public void updateThumbnailProgress()
+    {
+        thumbnailProgress.incrementAndGet();
+    }
+
+    public List<Integer> getThumbnailProgress()
+    {
+        return new ArrayList<>(Arrays.asList(thumbnailProgress.get(), thumbnailTotal.get()));
+    }
+
+    /**
+     * Index is loaded once by the import which installed it, outside of this lock as loading takes long on large project
+     *
+     * @return index installed by an earlier import, null when given index is installed and is to be completed by caller
+     */
+    public synchronized CompletableFuture<Set<String>> putContentHashSetIfAbsent(CompletableFuture<Set<String>> hashSet)
+    {
+        if(contentHashSet != null) return contentHashSet;
+
+        contentHashSet = hashSet;
+
+        return null;
+    }
+
+    //reload from database on next deduplicated import
+    public synchronized void invalidateContentHashSet()
+    {
+        contentHashSet = null;
+    }
+
+    public void addFileSysDuplicate()
+    {
+        fileSysDuplicateCount.incrementAndGet();
+    }
+
+    public Integer getFileSysDuplicateCount()
+    {
+        return fileSysDuplicateCount.get();
+    }
+
     public void setFileSystemStatus(FileSystemStatus status)
     {
         fileSystemStatus = status;
@@ -15,6 +15,11 @@
  */
 package ai.classifai.router;
 
+import ai.classifai.data.thumbnail.ThumbnailCache;
+import ai.classifai.data.type.image.DocumentPage;
+import ai.classifai.data.type.image.ImageFileType;
+import ai.classifai.database.DatabaseConfig;
+import ai.classifai.database.annotation.AnnotationVerticle;
 import ai.classifai.database.annotation.bndbox.BoundingBoxDbQuery;
 import ai.classifai.database.annotation.seg.SegDbQuery;
 import ai.classifai.database.portfolio.PortfolioDbQuery;
@@ -26,14 +31,24 @@ import ai.classifai.selector.filesystem.FileSystemStatus;
 import ai.classifai.util.ParamConfig;
 import ai.classifai.util.ProjectHandler;
 import ai.classifai.util.collection.ConversionHandler;
+import ai.classifai.util.data.ConversionJob;
+import ai.classifai.util.data.ConversionJobQueue;
+import ai.classifai.util.data.ImageHandler;
+import ai.classifai.util.data.ImagePrefetcher;
+import ai.classifai.util.data.PageRenderer;
+import ai.classifai.util.http.Base64FileStreamer;
+import ai.classifai.util.http.HTTPCacheValidator;
 import ai.classifai.util.http.HTTPResponseHandler;
 import ai.classifai.util.message.ErrorCodes;
 import ai.classifai.util.message.ReplyHandler;
 import ai.classifai.util.type.AnnotationType;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
@@ -42,6 +57,8 @@ import io.vertx.ext.web.handler.StaticHandler;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.util.Base64;
 import java.util.List;
 
 /**
@@ -52,9 +69,22 @@ import java.util.List;
 @Slf4j
 public class EndpointRouter extends AbstractVerticle
 {
+    private static final String IMAGE_SOURCE_VARIANT = "imgsrc";
+    private static final String IMAGE_FILE_VARIANT = "imgfile";
+    private static final String METADATA_VARIANT = "metadata";
+    private static final String THUMBNAIL_FILE_VARIANT = "thumbnailfile";
+
     private ToolFileSelector fileSelector;
     private ToolFolderSelector folderSelector;
 
+    //null when prefetch is disabled
+    private ImagePrefetcher imagePrefetcher;
+
+    private ConversionJobQueue conversionJobQueue;
+
+    //interval of progress events of a conversion job
+    private static final long CONVERSION_EVENT_INTERVAL = 500;
+
     public EndpointRouter()
     {
         Thread threadFile = new Thread(() -> fileSelector = new ToolFileSelector());
@@ -226,6 +256,7 @@ public class EndpointRouter extends AbstractVerticle
                             JsonObject replyResponse = (JsonObject) fetch.result().body();
 
                             //delete in Project Handler
+                            ImageHandler.unlinkFolder(projectID);
                             ProjectHandler.deleteProjectWithID(projectID);
                             HTTPResponseHandler.configureOK(context, replyResponse);
                         }
@@ -362,6 +393,8 @@ public class EndpointRouter extends AbstractVerticle
 
                 if (ReplyHandler.isReplyOk(removalResponse))
                 {
+                    ImageHandler.restoreLinkedFolder(loader.getProjectID());
+
                     HTTPResponseHandler.configureOK(context);
 
                 } else
@@ -575,9 +608,16 @@ public class EndpointRouter extends AbstractVerticle
 
         JsonObject res = new JsonObject().put(ReplyHandler.getMessageKey(), fileSysStatus.ordinal());
 
+        res.put(ParamConfig.getThumbnailProgressParam(), loader.getThumbnailProgress());
+
+        res.put(ParamConfig.getDuplicateCountParam(), loader.getFileSysDuplicateCount());
+
         if(fileSysStatus.equals(FileSystemStatus.WINDOW_CLOSE_DATABASE_UPDATING))
         {
             res.put(ParamConfig.getProgressMetadata(), loader.getProgressUpdate());
+
+            //data points committed so far, the rest are still being ingested
+            res.put(ParamConfig.getUUIDListParam(), loader.getFileSysNewUUIDList());
         }
         else if(fileSysStatus.equals(FileSystemStatus.WINDOW_CLOSE_DATABASE_UPDATED) | (fileSysStatus.equals(FileSystemStatus.WINDOW_CLOSE_DATABASE_NOT_UPDATED)))
         {
@@ -611,7 +651,7 @@ public class EndpointRouter extends AbstractVerticle
                 .put(ParamConfig.getProjectIDParam(), projectID)
                 .put(ParamConfig.getProjectNameParam(), projectName);
 
-        getThumbnail(context, BoundingBoxDbQuery.getQueue(), BoundingBoxDbQuery.retrieveData(), request);
+        getThumbnail(context, BoundingBoxDbQuery.getQueue(), BoundingBoxDbQuery.retrieveData(), request, AnnotationType.BOUNDINGBOX);
     }
 
     /**
@@ -630,11 +670,23 @@ public class EndpointRouter extends AbstractVerticle
                 .put(ParamConfig.getProjectIDParam(), projectID)
                 .put(ParamConfig.getProjectNameParam(), projectName);
 
-        getThumbnail(context, SegDbQuery.getQueue(), SegDbQuery.retrieveData(), request);
+        getThumbnail(context, SegDbQuery.getQueue(), SegDbQuery.retrieveData(), request, AnnotationType.SEGMENTATION);
     }
 
-    public void getThumbnail(RoutingContext context, String queue, String query, JsonObject request)
+    public void getThumbnail(RoutingContext context, String queue, String query, JsonObject request, AnnotationType annotationType)
     {
+        Integer thumbnailSize = getThumbnailSize(context);
+
+        if(thumbnailSize == null) return;
+
+        request.put(ParamConfig.getThumbnailSizeParam(), thumbnailSize);
+
+        //thumbnail response carries annotation
+        Long annotationVersion = getAnnotationVersion(request, annotationType);
+        String variant = "thumbnail" + thumbnailSize;
+
+        if(configureNotModified(context, request, annotationType, annotationVersion, variant)) return;
+
         DeliveryOptions thumbnailOptions = new DeliveryOptions().addHeader(ParamConfig.getActionKeyword(), query);
 
         vertx.eventBus().request(queue, request, thumbnailOptions, fetch -> {
@@ -643,6 +695,8 @@ public class EndpointRouter extends AbstractVerticle
             {
                 JsonObject result = (JsonObject) fetch.result().body();
 
+                putValidators(context, request, result, annotationType, annotationVersion, variant);
+
                 HTTPResponseHandler.configureOK(context, result);
 
             }
@@ -653,6 +707,163 @@ public class EndpointRouter extends AbstractVerticle
         });
     }
 
+    /**
+     * @return requested thumbnail size or default size, null when size is not supported and response is ended
+     */
+    private Integer getThumbnailSize(RoutingContext context)
+    {
+        String thumbnailSizeParam = context.request().getParam(ParamConfig.getThumbnailSizeParam());
+
+        if(thumbnailSizeParam == null) return ImageHandler.getDefaultThumbnailSize();
+
+        Integer thumbnailSize = ImageHandler.getSupportedThumbnailSize(thumbnailSizeParam);
+
+        if(thumbnailSize == null)
+        {
+            HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Thumbnail size not supported: " + thumbnailSizeParam));
+        }
+
+        return thumbnailSize;
+    }
+
+    /**
+     * Retrieve image metadata captured at ingestion, without thumbnail and annotation
+     *
+     * GET http://localhost:{port}/bndbox/projects/:project_name/uuid/:uuid/metadata
+     *
+     */
+    public void getBndBoxMetadata(RoutingContext context)
+    {
+        getMetadata(context, BoundingBoxDbQuery.getQueue(), BoundingBoxDbQuery.retrieveMetadata(), AnnotationType.BOUNDINGBOX);
+    }
+
+    /**
+     * Retrieve image metadata captured at ingestion, without thumbnail and annotation
+     *
+     * GET http://localhost:{port}/seg/projects/:project_name/uuid/:uuid/metadata
+     *
+     */
+    public void getSegMetadata(RoutingContext context)
+    {
+        getMetadata(context, SegDbQuery.getQueue(), SegDbQuery.retrieveMetadata(), AnnotationType.SEGMENTATION);
+    }
+
+    public void getMetadata(RoutingContext context, String queue, String query, AnnotationType annotationType)
+    {
+        JsonObject request = getDataRequest(context, annotationType);
+
+        if(request == null) return;
+
+        if(configureNotModified(context, request, annotationType, null, METADATA_VARIANT)) return;
+
+        DeliveryOptions metadataOptions = new DeliveryOptions().addHeader(ParamConfig.getActionKeyword(), query);
+
+        vertx.eventBus().request(queue, request, metadataOptions, fetch -> {
+
+            if (fetch.succeeded())
+            {
+                JsonObject result = (JsonObject) fetch.result().body();
+
+                putValidators(context, request, result, annotationType, null, METADATA_VARIANT);
+
+                HTTPResponseHandler.configureOK(context, result);
+            }
+            else
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in retrieving metadata: " + fetch.cause().getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Retrieve thumbnail as png binary, to be cached by client separately from metadata and annotation
+     *
+     * GET http://localhost:{port}/bndbox/projects/:project_name/uuid/:uuid/thumbnailfile
+     *
+     */
+    public void getBndBoxThumbnailFile(RoutingContext context)
+    {
+        getThumbnailFile(context, BoundingBoxDbQuery.getQueue(), BoundingBoxDbQuery.retrieveImageFile(), AnnotationType.BOUNDINGBOX);
+    }
+
+    /**
+     * Retrieve thumbnail as png binary, to be cached by client separately from metadata and annotation
+     *
+     * GET http://localhost:{port}/seg/projects/:project_name/uuid/:uuid/thumbnailfile
+     *
+     */
+    public void getSegThumbnailFile(RoutingContext context)
+    {
+        getThumbnailFile(context, SegDbQuery.getQueue(), SegDbQuery.retrieveImageFile(), AnnotationType.SEGMENTATION);
+    }
+
+    public void getThumbnailFile(RoutingContext context, String queue, String query, AnnotationType annotationType)
+    {
+        JsonObject request = getDataRequest(context, annotationType);
+
+        if(request == null) return;
+
+        Integer thumbnailSize = getThumbnailSize(context);
+
+        if(thumbnailSize == null) return;
+
+        String variant = THUMBNAIL_FILE_VARIANT + thumbnailSize;
+
+        if(configureNotModified(context, request, annotationType, null, variant)) return;
+
+        DeliveryOptions thumbnailOptions = new DeliveryOptions().addHeader(ParamConfig.getActionKeyword(), query);
+
+        vertx.eventBus().request(queue, request, thumbnailOptions, fetch -> {
+
+            if (fetch.failed())
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in retrieving thumbnail: " + fetch.cause().getMessage()));
+                return;
+            }
+
+            JsonObject result = (JsonObject) fetch.result().body();
+
+            if(!ReplyHandler.isReplyOk(result))
+            {
+                HTTPResponseHandler.configureOK(context, result);
+                return;
+            }
+
+            String imagePath = result.getString(ParamConfig.getImagePathParam());
+
+            ImageHandler.requestThumbnail(vertx, new File(imagePath), thumbnailSize).onComplete(thumbnail -> {
+
+                if(thumbnail.failed() || (thumbnail.result() == null))
+                {
+                    HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in thumbnail generation of " + imagePath));
+                    return;
+                }
+
+                putValidators(context, request, result, annotationType, null, variant);
+
+                HTTPResponseHandler.configureBytes(context, thumbnail.result().getData(), "image/png");
+            });
+        });
+    }
+
+    /**
+     * @return request with uuid and project of path parameters, null when project is not found and response is ended
+     */
+    private JsonObject getDataRequest(RoutingContext context, AnnotationType annotationType)
+    {
+        String projectName = context.request().getParam(ParamConfig.getProjectNameParam());
+        Integer projectID = ProjectHandler.getProjectID(projectName, annotationType.ordinal());
+
+        if(checkIfProjectNull(context, projectID, projectName)) return null;
+
+        Integer uuid = Integer.parseInt(context.request().getParam(ParamConfig.getUUIDParam()));
+
+        return new JsonObject()
+                .put(ParamConfig.getUUIDParam(), uuid)
+                .put(ParamConfig.getProjectIDParam(), projectID)
+                .put(ParamConfig.getProjectNameParam(), projectName);
+    }
+
     /***
      *
      * Get Image Source
@@ -670,7 +881,7 @@ public class EndpointRouter extends AbstractVerticle
                 .put(ParamConfig.getProjectIDParam(), projectID)
                 .put(ParamConfig.getProjectNameParam(), projectName);
 
-        getImageSource(context, BoundingBoxDbQuery.getQueue(), BoundingBoxDbQuery.retrieveDataPath(), request);
+        getImageSource(context, BoundingBoxDbQuery.getQueue(), BoundingBoxDbQuery.retrieveDataPath(), request, AnnotationType.BOUNDINGBOX);
     }
 
     /***
@@ -688,11 +899,15 @@ public class EndpointRouter extends AbstractVerticle
         JsonObject request = new JsonObject().put(ParamConfig.getUUIDParam(), uuid)
                 .put(ParamConfig.getProjectIDParam(), projectID);
 
-        getImageSource(context, SegDbQuery.getQueue(), SegDbQuery.retrieveDataPath(), request);
+        getImageSource(context, SegDbQuery.getQueue(), SegDbQuery.retrieveDataPath(), request, AnnotationType.SEGMENTATION);
     }
 
-    public void getImageSource(RoutingContext context, String queue, String query, JsonObject request)
+    public void getImageSource(RoutingContext context, String queue, String query, JsonObject request, AnnotationType annotationType)
     {
+        prefetch(queue, request, annotationType);
+
+        if(configureNotModified(context, request, annotationType, null, IMAGE_SOURCE_VARIANT)) return;
+
         DeliveryOptions imgSrcOptions = new DeliveryOptions().addHeader(ParamConfig.getActionKeyword(), query);
 
         vertx.eventBus().request(queue, request, imgSrcOptions, fetch -> {
@@ -701,7 +916,45 @@ public class EndpointRouter extends AbstractVerticle
 
                 JsonObject result = (JsonObject) fetch.result().body();
 
-                HTTPResponseHandler.configureOK(context, result);
+                if(!ReplyHandler.isReplyOk(result))
+                {
+                    HTTPResponseHandler.configureOK(context, result);
+                    return;
+                }
+
+                String imagePath = result.getString(ParamConfig.getImagePathParam());
+
+                if(DocumentPage.isPagePath(imagePath))
+                {
+                    getPageData(imagePath, page -> {
+
+                        if(page.failed())
+                        {
+                            HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in rendering page of " + imagePath));
+                            return;
+                        }
+
+                        result.put(ParamConfig.getImageSourceParam(), "data:image/png;base64," + Base64.getEncoder().encodeToString(page.result()));
+
+                        putValidators(context, request, result, annotationType, null, IMAGE_SOURCE_VARIANT);
+
+                        HTTPResponseHandler.configureOK(context, result);
+                    });
+                    return;
+                }
+
+                String dataURIHeader = ImageHandler.getImageHeader(imagePath);
+
+                if(dataURIHeader == null)
+                {
+                    HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Image format not supported for image source."));
+                    return;
+                }
+
+                putValidators(context, request, result, annotationType, null, IMAGE_SOURCE_VARIANT);
+
+                //encoded from file straight into response, image is never buffered whole
+                new Base64FileStreamer(context, new File(imagePath)).stream(result, ParamConfig.getImageSourceParam(), dataURIHeader);
 
             }
             else {
@@ -711,6 +964,181 @@ public class EndpointRouter extends AbstractVerticle
     }
 
 
+    /**
+     * Page of a pdf or tif document is rendered on a worker thread, there is no image file to stream
+     */
+    private void getPageData(String pagePath, Handler<AsyncResult<byte[]>> handler)
+    {
+        vertx.<byte[]>executeBlocking(promise -> {
+            try
+            {
+                promise.complete(PageRenderer.getPageData(pagePath));
+            }
+            catch(Exception e)
+            {
+                log.debug("Failure in rendering " + pagePath, e);
+                promise.fail(e);
+            }
+        }, false, handler);
+    }
+
+    /**
+     * Warm upcoming images in annotation order, before answering retrieval of current image
+     * Only retrieval of full image moves annotation order, thumbnails are requested for the whole project list
+     */
+    private void prefetch(String queue, JsonObject request, AnnotationType annotationType)
+    {
+        Integer projectID = request.getInteger(ParamConfig.getProjectIDParam());
+        Integer uuid = request.getInteger(ParamConfig.getUUIDParam());
+
+        if((imagePrefetcher == null) || (projectID == null) || (uuid == null)) return;
+
+        imagePrefetcher.prefetch(queue, annotationType, projectID, uuid, ImageHandler.getDefaultThumbnailSize());
+    }
+
+    /**
+     * Snapshot annotation version before reading annotation, so a concurrent update never gets cached under a newer validator
+     */
+    private Long getAnnotationVersion(JsonObject request, AnnotationType annotationType)
+    {
+        Integer projectID = request.getInteger(ParamConfig.getProjectIDParam());
+        Integer uuid = request.getInteger(ParamConfig.getUUIDParam());
+
+        if((projectID == null) || (uuid == null)) return null;
+
+        return HTTPCacheValidator.getAnnotationVersion(annotationType, projectID, uuid);
+    }
+
+    /**
+     * Answer conditional request with 304 from remembered image path, without database query or image decoding
+     *
+     * @return true when response is ended
+     */
+    private boolean configureNotModified(RoutingContext context, JsonObject request, AnnotationType annotationType, Long annotationVersion, String variant)
+    {
+        Integer projectID = request.getInteger(ParamConfig.getProjectIDParam());
+        Integer uuid = request.getInteger(ParamConfig.getUUIDParam());
+
+        if((projectID == null) || (uuid == null)) return false;
+
+        String imagePath = HTTPCacheValidator.getImagePath(annotationType, projectID, uuid);
+
+        if(imagePath == null) return false;
+
+        File image = DocumentPage.getSourceFile(imagePath);
+
+        if(!image.isFile()) return false;
+
+        String entityTag = HTTPCacheValidator.getEntityTag(image, annotationVersion, variant);
+
+        return HTTPCacheValidator.configureNotModified(context, entityTag, HTTPCacheValidator.getLastModified(image, annotationVersion));
+    }
+
+    private void putValidators(RoutingContext context, JsonObject request, JsonObject result, AnnotationType annotationType, Long annotationVersion, String variant)
+    {
+        Integer projectID = request.getInteger(ParamConfig.getProjectIDParam());
+        Integer uuid = request.getInteger(ParamConfig.getUUIDParam());
+        String imagePath = result.getString(ParamConfig.getImagePathParam());
+
+        if(!ReplyHandler.isReplyOk(result) || (projectID == null) || (uuid == null) || (imagePath == null)) return;
+
+        File image = DocumentPage.getSourceFile(imagePath);
+
+        if(!image.isFile()) return;
+
+        HTTPCacheValidator.registerImagePath(annotationType, projectID, uuid, imagePath);
+
+        HTTPCacheValidator.putValidators(context, HTTPCacheValidator.getEntityTag(image, annotationVersion, variant),
+                HTTPCacheValidator.getLastModified(image, annotationVersion));
+    }
+
+    /***
+     *
+     * Get original image file as binary, supports byte range requests
+     *
+     * GET http://localhost:{port}/bndbox/projects/:project_name/uuid/:uuid/imgfile
+     *
+     */
+    public void getBndBoxImageFile(RoutingContext context)
+    {
+        getImageFile(context, BoundingBoxDbQuery.getQueue(), BoundingBoxDbQuery.retrieveImageFile(), AnnotationType.BOUNDINGBOX);
+    }
+
+    /***
+     *
+     * Get original image file as binary, supports byte range requests
+     *
+     * GET http://localhost:{port}/seg/projects/:project_name/uuid/:uuid/imgfile
+     *
+     */
+    public void getSegImageFile(RoutingContext context)
+    {
+        getImageFile(context, SegDbQuery.getQueue(), SegDbQuery.retrieveImageFile(), AnnotationType.SEGMENTATION);
+    }
+
+    public void getImageFile(RoutingContext context, String queue, String query, AnnotationType annotationType)
+    {
+        String projectName = context.request().getParam(ParamConfig.getProjectNameParam());
+        Integer projectID = ProjectHandler.getProjectID(projectName, annotationType.ordinal());
+
+        if(checkIfProjectNull(context, projectID, projectName)) return;
+
+        Integer uuid = Integer.parseInt(context.request().getParam(ParamConfig.getUUIDParam()));
+
+        JsonObject request = new JsonObject()
+                .put(ParamConfig.getUUIDParam(), uuid)
+                .put(ParamConfig.getProjectIDParam(), projectID)
+                .put(ParamConfig.getProjectNameParam(), projectName);
+
+        prefetch(queue, request, annotationType);
+
+        if(configureNotModified(context, request, annotationType, null, IMAGE_FILE_VARIANT)) return;
+
+        DeliveryOptions imgFileOptions = new DeliveryOptions().addHeader(ParamConfig.getActionKeyword(), query);
+
+        vertx.eventBus().request(queue, request, imgFileOptions, fetch -> {
+
+            if (fetch.succeeded())
+            {
+                JsonObject result = (JsonObject) fetch.result().body();
+
+                if(ReplyHandler.isReplyOk(result))
+                {
+                    String imagePath = result.getString(ParamConfig.getImagePathParam());
+
+                    if(DocumentPage.isPagePath(imagePath))
+                    {
+                        getPageData(imagePath, page -> {
+
+                            if(page.failed())
+                            {
+                                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in rendering page of " + imagePath));
+                                return;
+                            }
+
+                            putValidators(context, request, result, annotationType, null, IMAGE_FILE_VARIANT);
+
+                            HTTPResponseHandler.configureBytes(context, page.result(), "image/png");
+                        });
+                        return;
+                    }
+
+                    putValidators(context, request, result, annotationType, null, IMAGE_FILE_VARIANT);
+
+                    HTTPResponseHandler.configureFile(context, new File(imagePath), ImageFileType.getMimeType(imagePath));
+                }
+                else
+                {
+                    HTTPResponseHandler.configureOK(context, result);
+                }
+            }
+            else
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in getting image file."));
+            }
+        });
+    }
+
     /***
      *
      * Update bounding box labelling information
@@ -862,6 +1290,113 @@ public class EndpointRouter extends AbstractVerticle
         });
     }
 
+    /**
+     * Link folder to project, new images in folder are ingested and deleted ones marked invalid while the folder stays linked
+     *
+     * PUT http://localhost:{port}/bndbox/projects/:project_name/linkfolder
+     *
+     * Example:
+     * PUT http://localhost:{port}/bndbox/projects/helloworld/linkfolder
+     * {"folder_path": "/data/frames"}
+     *
+     */
+    private void linkBndBoxFolder(RoutingContext context)
+    {
+        linkFolder(context, AnnotationType.BOUNDINGBOX);
+    }
+
+    /**
+     * Link folder to project, new images in folder are ingested and deleted ones marked invalid while the folder stays linked
+     *
+     * PUT http://localhost:{port}/seg/projects/:project_name/linkfolder
+     *
+     */
+    private void linkSegFolder(RoutingContext context)
+    {
+        linkFolder(context, AnnotationType.SEGMENTATION);
+    }
+
+    private void linkFolder(RoutingContext context, AnnotationType annotationType)
+    {
+        String projectName = context.request().getParam(ParamConfig.getProjectNameParam());
+
+        Integer projectID = ProjectHandler.getProjectID(projectName, annotationType.ordinal());
+
+        if(checkIfProjectNull(context, projectID, projectName)) return;
+
+        context.request().bodyHandler(h ->
+        {
+            String folderPath;
+
+            try
+            {
+                folderPath = h.toJsonObject().getString(ParamConfig.getFolderPathParam());
+            }
+            catch(Exception e)
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Request payload failed to parse: " + projectName + ". " + e));
+                return;
+            }
+
+            File rootFolder = (folderPath != null) ? new File(folderPath) : null;
+
+            if((rootFolder == null) || !rootFolder.isDirectory())
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Folder not found: " + folderPath));
+                return;
+            }
+
+            if(ImageHandler.linkFolder(projectID, rootFolder))
+            {
+                HTTPResponseHandler.configureOK(context);
+            }
+            else
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in linking folder to project " + projectName));
+            }
+        });
+    }
+
+    /**
+     * Stop synchronizing linked folder. Data points already ingested stay in project.
+     *
+     * DELETE http://localhost:{port}/bndbox/projects/:project_name/linkfolder
+     *
+     */
+    private void unlinkBndBoxFolder(RoutingContext context)
+    {
+        unlinkFolder(context, AnnotationType.BOUNDINGBOX);
+    }
+
+    /**
+     * Stop synchronizing linked folder. Data points already ingested stay in project.
+     *
+     * DELETE http://localhost:{port}/seg/projects/:project_name/linkfolder
+     *
+     */
+    private void unlinkSegFolder(RoutingContext context)
+    {
+        unlinkFolder(context, AnnotationType.SEGMENTATION);
+    }
+
+    private void unlinkFolder(RoutingContext context, AnnotationType annotationType)
+    {
+        String projectName = context.request().getParam(ParamConfig.getProjectNameParam());
+
+        Integer projectID = ProjectHandler.getProjectID(projectName, annotationType.ordinal());
+
+        if(checkIfProjectNull(context, projectID, projectName)) return;
+
+        if(ImageHandler.unlinkFolder(projectID))
+        {
+            HTTPResponseHandler.configureOK(context);
+        }
+        else
+        {
+            HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("No folder linked to project " + projectName));
+        }
+    }
+
     private boolean checkIfProjectNull(RoutingContext context, Object project, @NonNull String projectName)
     {
         if(project == null)
@@ -874,10 +1409,255 @@ public class EndpointRouter extends AbstractVerticle
         return false;
     }
 
+    /**
+     * Get hit, miss and eviction statistics of in-memory thumbnail cache
+     * GET http://localhost:{port}/thumbnailcache
+     *
+     */
+    private void getThumbnailCacheStats(RoutingContext context)
+    {
+        ThumbnailCache thumbnailCache = AnnotationVerticle.getThumbnailCache();
+
+        if(thumbnailCache == null)
+        {
+            HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Thumbnail cache is disabled"));
+            return;
+        }
+
+        JsonObject response = ReplyHandler.getOkReply();
+        response.put("thumbnail_cache", thumbnailCache.getStats());
+
+        HTTPResponseHandler.configureOK(context, response);
+    }
+
+    /**
+     * Get hit rate of image prefetch
+     * GET http://localhost:{port}/prefetch
+     *
+     */
+    private void getPrefetchStats(RoutingContext context)
+    {
+        if(imagePrefetcher == null)
+        {
+            HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Image prefetch is disabled"));
+            return;
+        }
+
+        JsonObject response = ReplyHandler.getOkReply();
+        response.put("prefetch", imagePrefetcher.getStats());
+
+        HTTPResponseHandler.configureOK(context, response);
+    }
+
+    /**
+     * Submit pdf or tif conversion of a folder, run headless in a bounded job queue
+     * PUT http://localhost:{port}/conversion/newjob
+     *
+     * Example payload:
+     * {"input_folder": "/home/user/pdf", "output_folder": "/home/user/png", "input_format": "pdf", "output_format": "png", "max_page": 20}
+     *
+     * output_folder is optional, images are saved next to input files when absent
+     * max_page is optional, all pages are converted when absent or 0
+     */
+    private void submitConversionJob(RoutingContext context)
+    {
+        context.request().bodyHandler(h ->
+        {
+            JsonObject request;
+
+            try
+            {
+                request = h.toJsonObject();
+            }
+            catch(Exception e)
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Request payload failed to parse. " + e));
+                return;
+            }
+
+            String inputFolderPath = request.getString(ParamConfig.getInputFolderParam());
+            String outputFolderPath = request.getString(ParamConfig.getOutputFolderParam());
+            String inputFormat = request.getString(ParamConfig.getInputFormatParam(), "").trim().toLowerCase();
+            String outputFormat = request.getString(ParamConfig.getOutputFormatParam(), "").trim().toLowerCase();
+
+            File inputFolder = (inputFolderPath != null) ? new File(inputFolderPath) : null;
+
+            if((inputFolder == null) || !inputFolder.isDirectory())
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Input folder not found: " + inputFolderPath));
+                return;
+            }
+
+            if((outputFolderPath != null) && !new File(outputFolderPath).isDirectory())
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Output folder not found: " + outputFolderPath));
+                return;
+            }
+
+            if(!ConversionJob.isInputFormatSupported(inputFormat) || !ConversionJob.isOutputFormatSupported(outputFormat))
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Conversion from " + inputFormat + " to " + outputFormat + " is not supported"));
+                return;
+            }
+
+            int maxPage;
+
+            try
+            {
+                maxPage = request.getInteger(ParamConfig.getMaxPageParam(), 0);
+            }
+            catch(ClassCastException e)
+            {
+                maxPage = -1;
+            }
+
+            if(maxPage < 0)
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Max page should be 0 for all pages, or a positive integer"));
+                return;
+            }
+
+            ConversionJob job = conversionJobQueue.submit(inputFolder, outputFolderPath, inputFormat, outputFormat, maxPage);
+
+            if(job == null)
+            {
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Conversion job queue is full"));
+                return;
+            }
+
+            JsonObject response = ReplyHandler.getOkReply();
+            response.put(ParamConfig.getJobIDParam(), job.getJobID());
+
+            HTTPResponseHandler.configureOK(context, response);
+        });
+    }
+
+    /**
+     * Get status of all queued, running and recently finished conversion jobs
+     * GET http://localhost:{port}/conversion/jobs
+     *
+     */
+    private void getConversionJobs(RoutingContext context)
+    {
+        JsonObject response = ReplyHandler.getOkReply();
+        response.put("jobs", conversionJobQueue.getJobList());
+
+        HTTPResponseHandler.configureOK(context, response);
+    }
+
+    /**
+     * Get progress and throughput of conversion job
+     * GET http://localhost:{port}/conversion/jobs/:job_id
+     *
+     */
+    private void getConversionJob(RoutingContext context)
+    {
+        ConversionJob job = getConversionJobOrReport(context);
+
+        if(job == null) return;
+
+        JsonObject response = ReplyHandler.getOkReply();
+        response.put("job", job.getJsonObject());
+
+        HTTPResponseHandler.configureOK(context, response);
+    }
+
+    /**
+     * Stream progress of conversion job as server-sent events, stream ends once job is finished
+     * GET http://localhost:{port}/conversion/jobs/:job_id/events
+     *
+     */
+    private void streamConversionJob(RoutingContext context)
+    {
+        ConversionJob job = getConversionJobOrReport(context);
+
+        if(job == null) return;
+
+        HttpServerResponse response = context.response();
+
+        response.setChunked(true)
+                .putHeader("Content-Type", "text/event-stream")
+                .putHeader("Cache-Control", "no-cache");
+
+        Runnable sendEvent = () -> response.write("event: progress\ndata: " + job.getJsonObject().encode() + "\n\n");
+
+        sendEvent.run();
+
+        if(job.getStatus().isFinished())
+        {
+            response.end();
+            return;
+        }
+
+        long timerID = vertx.setPeriodic(CONVERSION_EVENT_INTERVAL, id -> {
+            if(response.closed()) return;
+
+            //status read before the event, so the last event carries the final counts
+            boolean isFinished = job.getStatus().isFinished();
+
+            sendEvent.run();
+
+            if(isFinished)
+            {
+                vertx.cancelTimer(id);
+                response.end();
+            }
+        });
+
+        response.closeHandler(v -> vertx.cancelTimer(timerID));
+    }
+
+    /**
+     * Cancel queued or running conversion job, pages already converted are kept
+     * DELETE http://localhost:{port}/conversion/jobs/:job_id
+     *
+     */
+    private void cancelConversionJob(RoutingContext context)
+    {
+        ConversionJob job = getConversionJobOrReport(context);
+
+        if(job == null) return;
+
+        if(!conversionJobQueue.cancel(job.getJobID()))
+        {
+            HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Conversion job " + job.getJobID() + " is already " + job.getStatus().name().toLowerCase()));
+            return;
+        }
+
+        HTTPResponseHandler.configureOK(context);
+    }
+
+    private ConversionJob getConversionJobOrReport(RoutingContext context)
+    {
+        String jobIDParam = context.request().getParam(ParamConfig.getJobIDParam());
+
+        ConversionJob job = null;
+
+        try
+        {
+            job = conversionJobQueue.getJob(Integer.parseInt(jobIDParam));
+        }
+        catch(NumberFormatException e)
+        {
+            log.debug("Invalid conversion job id: " + jobIDParam);
+        }
+
+        if(job == null)
+        {
+            HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Conversion job not found: " + jobIDParam));
+        }
+
+        return job;
+    }
+
     @Override
     public void stop(Promise<Void> promise) {
         log.debug("Endpoint Router Verticle stopping...");
 
+        if(imagePrefetcher != null) imagePrefetcher.close();
+
+        if(conversionJobQueue != null) conversionJobQueue.close();
+
         //add action before stopped if necessary
     }
 
@@ -886,6 +1666,13 @@ public class EndpointRouter extends AbstractVerticle
     {
         Router router = Router.router(vertx);
 
+        if(DatabaseConfig.getPrefetchSize() > 0)
+        {
+            imagePrefetcher = new ImagePrefetcher(vertx, DatabaseConfig.getPrefetchSize());
+        }
+
+        conversionJobQueue = new ConversionJobQueue(DatabaseConfig.getConversionParallelism());
+
         //display for content in webroot
         //uses no-cache header for cache busting, perform revalidation when fetching static assets
         router.route().handler(ctx -> {
@@ -915,12 +1702,22 @@ public class EndpointRouter extends AbstractVerticle
 
         router.get("/bndbox/projects/:project_name/uuid/:uuid/thumbnail").handler(this::getBndBoxThumbnail);
 
+        router.get("/bndbox/projects/:project_name/uuid/:uuid/thumbnailfile").handler(this::getBndBoxThumbnailFile);
+
+        router.get("/bndbox/projects/:project_name/uuid/:uuid/metadata").handler(this::getBndBoxMetadata);
+
         router.get("/bndbox/projects/:project_name/uuid/:uuid/imgsrc").handler(this::getBndBoxImageSource);
 
+        router.get("/bndbox/projects/:project_name/uuid/:uuid/imgfile").handler(this::getBndBoxImageFile);
+
         router.put("/bndbox/projects/:project_name/uuid/:uuid/update").handler(this::updateBndBoxData);
 
         router.put("/bndbox/projects/:project_name/newlabels").handler(this::updateBndBoxLabels);
 
+        router.put("/bndbox/projects/:project_name/linkfolder").handler(this::linkBndBoxFolder);
+
+        router.delete("/bndbox/projects/:project_name/linkfolder").handler(this::unlinkBndBoxFolder);
+
         //*******************************Segmentation*******************************
 
         router.get("/seg/projects").handler(this::getAllSegProjects);
@@ -941,12 +1738,38 @@ public class EndpointRouter extends AbstractVerticle
 
         router.get("/seg/projects/:project_name/uuid/:uuid/thumbnail").handler(this::getSegThumbnail);
 
+        router.get("/seg/projects/:project_name/uuid/:uuid/thumbnailfile").handler(this::getSegThumbnailFile);
+
+        router.get("/seg/projects/:project_name/uuid/:uuid/metadata").handler(this::getSegMetadata);
+
         router.get("/seg/projects/:project_name/uuid/:uuid/imgsrc").handler(this::getSegImageSource);
 
+        router.get("/seg/projects/:project_name/uuid/:uuid/imgfile").handler(this::getSegImageFile);
+
         router.put("/seg/projects/:project_name/uuid/:uuid/update").handler(this::updateSegData);
 
         router.put("/seg/projects/:project_name/newlabels").handler(this::updateSegLabels);
 
+        router.put("/seg/projects/:project_name/linkfolder").handler(this::linkSegFolder);
+
+        router.delete("/seg/projects/:project_name/linkfolder").handler(this::unlinkSegFolder);
+
+        router.get("/thumbnailcache").handler(this::getThumbnailCacheStats);
+
+        router.get("/prefetch").handler(this::getPrefetchStats);
+
+        //*******************************Conversion*******************************
+
+        router.put("/conversion/newjob").handler(this::submitConversionJob);
+
+        router.get("/conversion/jobs").handler(this::getConversionJobs);
+
+        router.get("/conversion/jobs/:job_id").handler(this::getConversionJob);
+
+        router.get("/conversion/jobs/:job_id/events").handler(this::streamConversionJob);
+
+        router.delete("/conversion/jobs/:job_id").handler(this::cancelConversionJob);
+
         vertx.createHttpServer()
                 .requestHandler(router)
                 .exceptionHandler(Throwable::printStackTrace)
@@ -16,7 +16,6 @@
 
 package ai.classifai.selector.annotation;
 
-import ai.classifai.data.type.image.ImageFileType;
 import ai.classifai.loader.ProjectLoader;
 import ai.classifai.selector.filesystem.FileSystemStatus;
 import ai.classifai.ui.component.LookFeelSetter;
@@ -25,6 +24,7 @@ import ai.classifai.ui.launcher.WelcomeLauncher;
 import ai.classifai.util.ParamConfig;
 import ai.classifai.util.ProjectHandler;
 import ai.classifai.util.data.ImageHandler;
+import ai.classifai.util.data.IngestionPipeline;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
@@ -42,7 +42,7 @@ import java.util.ArrayList;
 @Slf4j
 public class ToolFileSelector
 {
-    private static FileNameExtensionFilter imgfilter = new FileNameExtensionFilter("Image Files", ImageFileType.getImageFileTypes());
+    private static FileNameExtensionFilter imgfilter = new FileNameExtensionFilter("Image and Document Files", IngestionPipeline.getIngestionFileTypes());
 
     public void run(@NonNull Integer projectID)
     {
@@ -48,8 +48,6 @@ public class ConverterLauncher extends JPanel
 
     @Getter private static boolean isOpened;
 
-    private static final int MAX_PAGE = 20;
-
     private final String FONT_TYPE = "Serif";//Serif, SansSerif, Monospaced, Dialog, and DialogInput.
 
     private static final int ELEMENT_HEIGHT = 40;
@@ -74,6 +72,7 @@ public class ConverterLauncher extends JPanel
     private static OutputFolderListener outputFolderListener;
 
     private JLabel maxPage = new JLabel("Maximum Page: ");
+    //empty for all pages, only read on event dispatch thread
     private JTextField maxPageTextField = new JTextField();
 
     @Getter private static JTextArea taskOutput;
@@ -129,9 +128,26 @@ public class ConverterLauncher extends JPanel
         return DEFAULT_OUTPUT_PATH;
     }
 
-    public static int getMaxPage()
+    /**
+     * Read on event dispatch thread when conversion starts
+     *
+     * @return 0 for all pages
+     */
+    private int getMaxPage()
     {
-        return MAX_PAGE;
+        String buffer = maxPageTextField.getText().trim();
+
+        if(buffer.isEmpty()) return 0;
+
+        try
+        {
+            return Math.max(Integer.parseInt(buffer), 0);
+        }
+        catch(NumberFormatException e)
+        {
+            log.info("Maximum page is not a number: " + buffer + ". Converting all pages.");
+            return 0;
+        }
     }
 
     public static String getInputFormat()
@@ -276,7 +292,7 @@ public class ConverterLauncher extends JPanel
 
         design(maxPage);
         design(maxPageTextField);
-        maxPageTextField.setText("  " + MAX_PAGE);
+        maxPageTextField.setToolTipText("Leave empty to convert all pages");
         maxPageTextField.setMinimumSize(new Dimension(60, ELEMENT_HEIGHT - 10));
 
         design(taskOutput);
@@ -415,7 +431,8 @@ public class ConverterLauncher extends JPanel
         {
             if(!isConvertButtonClicked) //prevent multiple clicks
             {
-                task = new Task();
+                //snapshot of form, task runs off the event dispatch thread
+                task = new Task(getMaxPage());
                 task.addPropertyChangeListener(this::propertyChange);
                 task.execute();
 
@@ -15,23 +15,25 @@
  */
 package ai.classifai.ui.launcher.conversion;
 
+import ai.classifai.database.DatabaseConfig;
+import ai.classifai.util.data.ConversionScheduler;
 import ai.classifai.util.data.FileHandler;
-import ai.classifai.util.data.PdfHandler;
-import ai.classifai.util.data.TifHandler;
 import ai.classifai.util.type.FileFormat;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.swing.*;
 import java.io.File;
+import java.util.List;
 
 /**
  * Task running in background to do the conversion
+ * Files are converted in parallel by ConversionScheduler, each file is reported as it completes
  *
  * @author codenamewei
  */
 @Slf4j
-public class Task extends SwingWorker<Void, Void> {
+public class Task extends SwingWorker<Void, String> {
     /*
      * Main task. Executed in background thread.
      */
@@ -43,8 +45,13 @@ public class Task extends SwingWorker<Void, Void> {
         isStop = true;
     }
 
-    public Task()
+    //pages converted from each document at most, 0 for all pages
+    private final int maxPage;
+
+    public Task(int maxPage)
     {
+        this.maxPage = maxPage;
+
         isStop = false;
     }
 
@@ -80,47 +87,25 @@ public class Task extends SwingWorker<Void, Void> {
             //Initialize progress property.
             setProgress(progress);
 
-            int fileProcessed = 0;
-
-            if(inputFormat.equals(FileFormat.PDF.getText()))
+            if(inputFormat.equals(FileFormat.PDF.getText()) || inputFormat.equals(FileFormat.TIF.getText()))
             {
-                PdfHandler pdfHandler = new PdfHandler();
-
-                for(File file: inputFiles)
-                {
-                    if(isStop) break;
-
-                    ConverterLauncher.appendTaskOutput(file.getName());
-
-                    String message = pdfHandler.savePdf2Image(file, outputFolderPath, outputFormat);
-
-                    if(message != null) ConverterLauncher.appendTaskOutput(message);
-
-                    progress = (int) ((++fileProcessed / (double) inputFiles.size()) * 100);
-
-                    setProgress(Math.min(progress, 100));
-
-                }
-            }
-            else if(inputFormat.equals(FileFormat.TIF.getText()))
-            {
-                TifHandler tifHandler = new TifHandler();
-
-                for(File file: inputFiles)
-                {
-                    if(isStop) break;
-
-                    ConverterLauncher.appendTaskOutput(file.getName());
-
-                    String message = tifHandler.saveTif2Image(file, outputFolderPath, outputFormat);
-
-                    if(message != null) ConverterLauncher.appendTaskOutput(message);
-
-                    progress = (int) ((++fileProcessed / (double) inputFiles.size()) * 100);
-
-                    setProgress(Math.min(progress, 100));
-
-                }
+                ConversionScheduler scheduler = new ConversionScheduler(DatabaseConfig.getConversionParallelism(), maxPage, Task::isStop);
+
+                scheduler.convert(inputFiles, inputFormat, outputFolderPath, outputFormat, new ConversionScheduler.ConversionListener() {
+                    @Override
+                    public void onFileConverted(File file, String message, int pageCount)
+                    {
+                        publish(file.getName());
+
+                        if(message != null) publish(message);
+                    }
+
+                    @Override
+                    public void onProgress(int progress)
+                    {
+                        setProgress(progress);
+                    }
+                });
             }
             else
             {
@@ -132,6 +117,18 @@ public class Task extends SwingWorker<Void, Void> {
 
         return null;
     }
+    /*
+     * Output of completed files, executed in event dispatch thread
+     */
+    @Override
+    protected void process(List<String> messageList)
+    {
+        for(String message : messageList)
+        {
+            ConverterLauncher.appendTaskOutput(message);
+        }
+    }
+
     /*
      * Executed in event dispatch thread
      */
@@ -67,6 +67,7 @@ public class ParamConfig
 
     private final static String UUID_PARAM = "uuid";
     private final static String IMAGE_PATH_PARAM = "img_path";
+    private final static String IMAGE_PATH_LIST_PARAM = "img_path_list";
 
     private final static String EMPTY_ARRAY = "[]";
 
@@ -83,6 +84,9 @@ public class ParamConfig
     private final static String IMAGEH_PARAM = "img_h";
     private final static String IMAGEORIW_PARAM = "img_ori_w";
     private final static String IMAGEORIH_PARAM = "img_ori_h";
+    private final static String IMAGE_ORIENTATION_PARAM = "img_orientation";
+
+    private final static String DUPLICATE_COUNT_PARAM = "duplicate_count";
 
     private final static String IMAGE_DEPTH = "img_depth";
 
@@ -91,10 +95,20 @@ public class ParamConfig
 
     private static final String FILE_PARAM = "file";
     private static final String FOLDER_PARAM = "folder";
+    private static final String FOLDER_PATH_PARAM = "folder_path";
+
+    private static final String JOB_ID_PARAM = "job_id";
+    private static final String INPUT_FOLDER_PARAM = "input_folder";
+    private static final String OUTPUT_FOLDER_PARAM = "output_folder";
+    private static final String INPUT_FORMAT_PARAM = "input_format";
+    private static final String OUTPUT_FORMAT_PARAM = "output_format";
+    private static final String MAX_PAGE_PARAM = "max_page";
 
     private final static String ACTION_KEYWORD = "action";
     private final static String CONTENT = "content";
     private final static String PROGRESS_METADATA = "progress";
+    private final static String THUMBNAIL_PROGRESS_PARAM = "thumbnail_progress";
+    private final static String THUMBNAIL_SIZE_PARAM = "size";
 
     public static OSManager getOSManager() { return OS_MANAGER; }
 
@@ -114,6 +128,7 @@ public class ParamConfig
     public static String getLabelListParam() { return LABEL_LIST_PARAM;}
 
     public static String getUUIDParam(){ return UUID_PARAM; }
+    public static String getImagePathListParam(){ return IMAGE_PATH_LIST_PARAM; }
     public static String getImagePathParam(){ return IMAGE_PATH_PARAM; }
 
     public static String getEmptyArray(){ return EMPTY_ARRAY; }
@@ -132,6 +147,9 @@ public class ParamConfig
 
     public static String getImageORIWParam() { return IMAGEORIW_PARAM; }
     public static String getImageORIHParam() { return IMAGEORIH_PARAM; }
+    public static String getImageOrientationParam() { return IMAGE_ORIENTATION_PARAM; }
+
+    public static String getDuplicateCountParam() { return DUPLICATE_COUNT_PARAM; }
 
     public static String getImageDepth() { return IMAGE_DEPTH; }
 
@@ -141,10 +159,20 @@ public class ParamConfig
 
     public static String getFileParam(){ return FILE_PARAM; }
     public static String getFolderParam(){ return FOLDER_PARAM; }
+    public static String getFolderPathParam(){ return FOLDER_PATH_PARAM; }
+
+    public static String getJobIDParam(){ return JOB_ID_PARAM; }
+    public static String getInputFolderParam(){ return INPUT_FOLDER_PARAM; }
+    public static String getOutputFolderParam(){ return OUTPUT_FOLDER_PARAM; }
+    public static String getInputFormatParam(){ return INPUT_FORMAT_PARAM; }
+    public static String getOutputFormatParam(){ return OUTPUT_FORMAT_PARAM; }
+    public static String getMaxPageParam(){ return MAX_PAGE_PARAM; }
 
     public static String getActionKeyword() { return ACTION_KEYWORD; }
     public static String getContent() { return CONTENT; }
     public static String getProgressMetadata() { return PROGRESS_METADATA; }
+    public static String getThumbnailProgressParam() { return THUMBNAIL_PROGRESS_PARAM; }
+    public static String getThumbnailSizeParam() { return THUMBNAIL_SIZE_PARAM; }
 
     public static String getAnnotationParam(AnnotationType type)
     {
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.util.type.FileFormat;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pdf or tif conversion of a folder, run headless on ConversionJobQueue
+ *
+ * Keeps progress and throughput of the conversion, pages and megabytes of input per second over elapsed time.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class ConversionJob implements Runnable
+{
+    //failure messages kept for status of job
+    private static final int MAX_MESSAGES = 100;
+
+    public enum Status
+    {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED;
+
+        public boolean isFinished()
+        {
+            return (this == COMPLETED) || (this == CANCELLED) || (this == FAILED);
+        }
+    }
+
+    @Getter private final Integer jobID;
+
+    private final File inputFolder;
+
+    //null to save next to input file
+    private final String outputFolderPath;
+
+    private final String inputFormat;
+    private final String outputFormat;
+
+    //0 for all pages
+    private final int maxPage;
+
+    private final int parallelism;
+
+    @Getter private volatile Status status = Status.QUEUED;
+
+    private volatile boolean isStopped = false;
+
+    private final AtomicInteger progress = new AtomicInteger(0);
+
+    private volatile int totalFiles = 0;
+
+    private final AtomicInteger convertedFiles = new AtomicInteger(0);
+    private final AtomicInteger failedFiles = new AtomicInteger(0);
+
+    private final AtomicInteger convertedPages = new AtomicInteger(0);
+    private final AtomicLong convertedBytes = new AtomicLong(0);
+
+    private final List<String> messageList = new ArrayList<>();
+
+    private final long submitTime = System.currentTimeMillis();
+    private volatile long startTime = 0;
+    private volatile long endTime = 0;
+
+    /**
+     * @param inputFormat pdf or tif
+     * @param outputFormat png or jpg
+     */
+    public ConversionJob(@NonNull Integer jobID, @NonNull File inputFolder, String outputFolderPath, @NonNull String inputFormat, @NonNull String outputFormat,
+                         int maxPage, int parallelism)
+    {
+        this.jobID = jobID;
+        this.inputFolder = inputFolder;
+        this.outputFolderPath = outputFolderPath;
+        this.inputFormat = inputFormat;
+        this.outputFormat = outputFormat;
+        this.maxPage = maxPage;
+        this.parallelism = parallelism;
+    }
+
+    public static boolean isInputFormatSupported(String inputFormat)
+    {
+        return FileFormat.PDF.getText().equals(inputFormat) || FileFormat.TIF.getText().equals(inputFormat);
+    }
+
+    public static boolean isOutputFormatSupported(String outputFormat)
+    {
+        return FileFormat.png.getText().equals(outputFormat) || FileFormat.jpg.getText().equals(outputFormat);
+    }
+
+    private String[] getInputExtension()
+    {
+        return inputFormat.equals(FileFormat.PDF.getText()) ? new String[]{"pdf"} : new String[]{"tif", "tiff"};
+    }
+
+    @Override
+    public void run()
+    {
+        if(isStopped)
+        {
+            finish(Status.CANCELLED);
+            return;
+        }
+
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+
+        try
+        {
+            List<File> inputFiles = FileHandler.processFolder(inputFolder, getInputExtension());
+
+            totalFiles = inputFiles.size();
+
+            log.info("Conversion job " + jobID + " started with " + totalFiles + " files from " + inputFolder.getAbsolutePath());
+
+            ConversionScheduler scheduler = new ConversionScheduler(parallelism, maxPage, () -> isStopped);
+
+            scheduler.convert(inputFiles, inputFormat, outputFolderPath, outputFormat, new ConversionScheduler.ConversionListener() {
+                @Override
+                public void onFileConverted(File file, String message, int pageCount)
+                {
+                    if(message != null)
+                    {
+                        failedFiles.incrementAndGet();
+                        addMessage(message);
+                        return;
+                    }
+
+                    convertedFiles.incrementAndGet();
+                    convertedPages.addAndGet(pageCount);
+                    convertedBytes.addAndGet(file.length());
+                }
+
+                @Override
+                public void onProgress(int value)
+                {
+                    progress.set(value);
+                }
+            });
+
+            if(inputFiles.isEmpty()) progress.set(100);
+
+            finish(isStopped ? Status.CANCELLED : Status.COMPLETED);
+        }
+        catch(Exception e)
+        {
+            log.info("Conversion job " + jobID + " failed", e);
+
+            addMessage("Conversion failed: " + e.getMessage());
+
+            finish(Status.FAILED);
+        }
+    }
+
+    /**
+     * Stop the job, a queued job is cancelled once it is dequeued
+     */
+    public void cancel()
+    {
+        isStopped = true;
+    }
+
+    void finish(Status finalStatus)
+    {
+        endTime = System.currentTimeMillis();
+        status = finalStatus;
+
+        if(startTime != 0)
+        {
+            log.info("Conversion job " + jobID + " " + finalStatus.name().toLowerCase() + ". " + getJsonObject().encode());
+        }
+    }
+
+    private void addMessage(String message)
+    {
+        synchronized(messageList)
+        {
+            if(messageList.size() < MAX_MESSAGES) messageList.add(message);
+        }
+    }
+
+    private double getElapsedSeconds()
+    {
+        if(startTime == 0) return 0;
+
+        return ((endTime != 0 ? endTime : System.currentTimeMillis()) - startTime) / 1000.0;
+    }
+
+    public JsonObject getJsonObject()
+    {
+        double elapsedSeconds = getElapsedSeconds();
+        double megabytes = convertedBytes.get() / (1024.0 * 1024.0);
+
+        JsonArray messages;
+
+        synchronized(messageList)
+        {
+            messages = new JsonArray(new ArrayList<>(messageList));
+        }
+
+        return new JsonObject()
+                .put("job_id", jobID)
+                .put("status", status.name().toLowerCase())
+                .put("input_folder", inputFolder.getAbsolutePath())
+                .put("output_folder", outputFolderPath)
+                .put("input_format", inputFormat)
+                .put("output_format", outputFormat)
+                .put("max_page", maxPage)
+                .put("progress", progress.get())
+                .put("total_files", totalFiles)
+                .put("converted_files", convertedFiles.get())
+                .put("failed_files", failedFiles.get())
+                .put("converted_pages", convertedPages.get())
+                .put("converted_megabytes", megabytes)
+                .put("submit_time", submitTime)
+                .put("elapsed_seconds", elapsedSeconds)
+                .put("pages_per_second", (elapsedSeconds > 0) ? convertedPages.get() / elapsedSeconds : 0.0)
+                .put("megabytes_per_second", (elapsedSeconds > 0) ? megabytes / elapsedSeconds : 0.0)
+                .put("messages", messages);
+    }
+}
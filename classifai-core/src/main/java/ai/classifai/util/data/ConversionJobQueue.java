@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import io.vertx.core.json.JsonArray;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded queue of headless conversion jobs
+ *
+ * Jobs run one at a time on a single worker, each with the full conversion parallelism.
+ * Submission is rejected once QUEUE_CAPACITY jobs are waiting. Status of the latest MAX_FINISHED_JOBS finished jobs is kept.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class ConversionJobQueue
+{
+    static final int QUEUE_CAPACITY = 16;
+
+    static final int MAX_FINISHED_JOBS = 50;
+
+    private final int parallelism;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger jobCount = new AtomicInteger(0);
+
+    private final Map<Integer, ConversionJob> jobs = new ConcurrentSkipListMap<>();
+
+    public ConversionJobQueue(int parallelism)
+    {
+        this.parallelism = Math.max(parallelism, 1);
+
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "classifai-conversion-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param outputFolderPath null to save next to input file
+     * @return queued job, or null when queue is full
+     */
+    public ConversionJob submit(@NonNull File inputFolder, String outputFolderPath, @NonNull String inputFormat, @NonNull String outputFormat, int maxPage)
+    {
+        ConversionJob job = new ConversionJob(jobCount.incrementAndGet(), inputFolder, outputFolderPath, inputFormat, outputFormat, maxPage, parallelism);
+
+        try
+        {
+            //execute() rather than submit() so a queued job can be removed on cancel
+            executor.execute(job);
+        }
+        catch(RejectedExecutionException e)
+        {
+            log.info("Conversion job queue is full, job rejected for " + inputFolder.getAbsolutePath());
+            return null;
+        }
+
+        jobs.put(job.getJobID(), job);
+
+        removeFinishedJobs();
+
+        return job;
+    }
+
+    public ConversionJob getJob(Integer jobID)
+    {
+        return (jobID != null) ? jobs.get(jobID) : null;
+    }
+
+    public JsonArray getJobList()
+    {
+        JsonArray jobList = new JsonArray();
+
+        for(ConversionJob job : jobs.values())
+        {
+            jobList.add(job.getJsonObject());
+        }
+
+        return jobList;
+    }
+
+    /**
+     * Queued job is removed from queue, running job stops after the pages in progress
+     *
+     * @return false when job is not found or already finished
+     */
+    public boolean cancel(Integer jobID)
+    {
+        ConversionJob job = getJob(jobID);
+
+        if((job == null) || job.getStatus().isFinished()) return false;
+
+        job.cancel();
+
+        if(executor.remove(job)) job.finish(ConversionJob.Status.CANCELLED);
+
+        return true;
+    }
+
+    private void removeFinishedJobs()
+    {
+        //ascending job id, oldest first
+        long finishedCount = jobs.values().stream().filter(job -> job.getStatus().isFinished()).count();
+
+        for(ConversionJob job : jobs.values())
+        {
+            if(finishedCount <= MAX_FINISHED_JOBS) break;
+
+            if(job.getStatus().isFinished())
+            {
+                jobs.remove(job.getJobID());
+                --finishedCount;
+            }
+        }
+    }
+
+    public void close()
+    {
+        for(ConversionJob job : jobs.values())
+        {
+            job.cancel();
+        }
+
+        executor.shutdownNow();
+    }
+}
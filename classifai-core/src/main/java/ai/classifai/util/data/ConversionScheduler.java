@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.util.type.FileFormat;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Convert many pdf or tif files at once on a work stealing pool
+ *
+ * Files are queued by estimated conversion cost, cheapest first, so a huge document does not hold back the small ones.
+ * A pdf is converted by up to parallelism page workers forked on the pool. Each worker loads the document once
+ * and takes pages from a shared counter, so idle workers steal pages of a large pdf without reloading it per page.
+ * Pool parallelism bounds rendering, memory of decoded pages is bounded by DecodeScheduler.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class ConversionScheduler
+{
+    private final int parallelism;
+
+    private final int maxPage;
+
+    private final BooleanSupplier isStopped;
+
+    public interface ConversionListener
+    {
+        /**
+         * @param message failure message, null when file is converted
+         * @param pageCount pages converted from file
+         */
+        void onFileConverted(File file, String message, int pageCount);
+
+        /**
+         * @param progress percent of estimated conversion cost completed
+         */
+        void onProgress(int progress);
+    }
+
+    private static class ConversionFile
+    {
+        private final File file;
+
+        //pages left to convert with decode cost
+        private Map<Integer, Long> pageCostMap = new LinkedHashMap<>();
+
+        private long cost = 0;
+
+        private Exception failure;
+
+        private ConversionFile(File file)
+        {
+            this.file = file;
+        }
+    }
+
+    /**
+     * @param maxPage pages converted from each document at most, 0 for all pages
+     * @param isStopped checked before each file and page, conversion stops once true
+     */
+    public ConversionScheduler(int parallelism, int maxPage, @NonNull BooleanSupplier isStopped)
+    {
+        this.parallelism = Math.max(parallelism, 1);
+        this.maxPage = maxPage;
+        this.isStopped = isStopped;
+    }
+
+    /**
+     * Convert all input files, returns when every file is converted or conversion is stopped
+     */
+    public void convert(@NonNull List<File> inputFiles, @NonNull String inputFormat, String outputPath, @NonNull String outputFormat,
+                        @NonNull ConversionListener listener)
+    {
+        boolean isPdf = inputFormat.equals(FileFormat.PDF.getText());
+
+        PdfHandler pdfHandler = new PdfHandler(maxPage, isStopped);
+        TifHandler tifHandler = new TifHandler(maxPage, isStopped);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ExecutorService encodeExecutor = createEncodeExecutor(parallelism);
+
+        try
+        {
+            //cost is estimated from page count and dimension, on the pool to read headers of many files in parallel
+            List<Callable<ConversionFile>> estimationList = new ArrayList<>();
+
+            for(File file : inputFiles)
+            {
+                estimationList.add(() -> estimate(file, isPdf, pdfHandler, tifHandler, outputPath, outputFormat));
+            }
+
+            List<ConversionFile> conversionList = new ArrayList<>();
+
+            for(Future<ConversionFile> estimation : pool.invokeAll(estimationList))
+            {
+                conversionList.add(estimation.get());
+            }
+
+            conversionList.sort(Comparator.comparingLong(conversion -> conversion.cost));
+
+            //file without page left to convert still counts, so progress reaches 100
+            long totalCost = conversionList.stream().mapToLong(conversion -> conversion.cost + 1).sum();
+
+            AtomicLong completedCost = new AtomicLong(0);
+            AtomicInteger lastProgress = new AtomicInteger(-1);
+
+            List<ForkJoinTask<?>> taskList = new ArrayList<>();
+
+            for(ConversionFile conversion : conversionList)
+            {
+                taskList.add(pool.submit(new FileConversion(conversion, isPdf, pdfHandler, tifHandler, outputPath, outputFormat, encodeExecutor, isStopped, listener,
+                        cost -> {
+                            int progress = (int) (completedCost.addAndGet(cost) * 100 / totalCost);
+
+                            if(lastProgress.getAndSet(progress) != progress) listener.onProgress(Math.min(progress, 100));
+                        })));
+            }
+
+            for(int i = 0; i < taskList.size(); ++i)
+            {
+                ForkJoinTask<?> task = taskList.get(i);
+
+                task.quietlyJoin();
+
+                //errors such as running out of memory end the task without reaching the listener
+                if(task.isCompletedAbnormally() && !isStopped.getAsBoolean())
+                {
+                    File file = conversionList.get(i).file;
+
+                    log.info("Failure in converting " + file.getAbsolutePath(), task.getException());
+
+                    listener.onFileConverted(file, "Conversion failed: " + file.getName(), 0);
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e)
+        {
+            log.info("Failure in estimating conversion cost", e);
+        }
+        finally
+        {
+            pool.shutdownNow();
+            encodeExecutor.shutdown();
+        }
+    }
+
+    private static ConversionFile estimate(File file, boolean isPdf, PdfHandler pdfHandler, TifHandler tifHandler, String outputPath, String outputFormat)
+    {
+        ConversionFile conversion = new ConversionFile(file);
+
+        try
+        {
+            conversion.pageCostMap = isPdf ? pdfHandler.getPageCostMap(file, outputPath, outputFormat) : tifHandler.getPageCostMap(file, outputPath, outputFormat);
+            conversion.cost = conversion.pageCostMap.values().stream().mapToLong(Long::longValue).sum();
+        }
+        catch(Exception e)
+        {
+            conversion.failure = e;
+        }
+
+        return conversion;
+    }
+
+    private interface ProgressUpdater
+    {
+        void add(long cost);
+    }
+
+    private static class FileConversion extends RecursiveAction
+    {
+        private final ConversionFile conversion;
+        private final boolean isPdf;
+        private final PdfHandler pdfHandler;
+        private final TifHandler tifHandler;
+        private final String outputPath;
+        private final String outputFormat;
+        private final ExecutorService encodeExecutor;
+        private final BooleanSupplier isStopped;
+        private final ConversionListener listener;
+        private final ProgressUpdater progressUpdater;
+
+        private FileConversion(ConversionFile conversion, boolean isPdf, PdfHandler pdfHandler, TifHandler tifHandler, String outputPath, String outputFormat,
+                               ExecutorService encodeExecutor, BooleanSupplier isStopped, ConversionListener listener, ProgressUpdater progressUpdater)
+        {
+            this.conversion = conversion;
+            this.isPdf = isPdf;
+            this.pdfHandler = pdfHandler;
+            this.tifHandler = tifHandler;
+            this.outputPath = outputPath;
+            this.outputFormat = outputFormat;
+            this.encodeExecutor = encodeExecutor;
+            this.isStopped = isStopped;
+            this.listener = listener;
+            this.progressUpdater = progressUpdater;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(isStopped.getAsBoolean()) return;
+
+            File file = conversion.file;
+
+            if(!isPdf)
+            {
+                String message = tifHandler.saveTif2Image(file, outputPath, outputFormat);
+
+                progressUpdater.add(conversion.cost + 1);
+                listener.onFileConverted(file, message, (message == null) ? conversion.pageCostMap.size() : 0);
+                return;
+            }
+
+            AtomicReference<Exception> failure = new AtomicReference<>(conversion.failure);
+
+            if(failure.get() == null)
+            {
+                List<Integer> pageList = new ArrayList<>(conversion.pageCostMap.keySet());
+
+                AtomicInteger nextIndex = new AtomicInteger(0);
+                AtomicLong takenCost = new AtomicLong(0);
+
+                List<RecursiveAction> workerList = new ArrayList<>();
+
+                for(int i = 0; i < Math.min(getPool().getParallelism(), pageList.size()); ++i)
+                {
+                    workerList.add(new RecursiveAction() {
+                        @Override
+                        protected void compute()
+                        {
+                            if(isStopped.getAsBoolean()) return;
+
+                            try
+                            {
+                                pdfHandler.savePdfPages(file, pageList, nextIndex, outputPath, outputFormat, encodeExecutor, page -> {
+                                    long cost = conversion.pageCostMap.get(page);
+
+                                    takenCost.addAndGet(cost);
+                                    progressUpdater.add(cost);
+                                });
+                            }
+                            catch(Exception e)
+                            {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    });
+                }
+
+                //forked workers are stolen by idle pool threads
+                invokeAll(workerList);
+
+                //pages left untaken after a failure
+                progressUpdater.add(conversion.cost - takenCost.get());
+            }
+
+            if(isStopped.getAsBoolean()) return;
+
+            progressUpdater.add(1);
+
+            if(failure.get() != null)
+            {
+                listener.onFileConverted(file, PdfHandler.getSkippedMessage(file, failure.get()), 0);
+            }
+            else
+            {
+                listener.onFileConverted(file, null, conversion.pageCostMap.size());
+            }
+        }
+    }
+
+    private static ExecutorService createEncodeExecutor(int poolSize)
+    {
+        AtomicInteger threadCount = new AtomicInteger(0);
+
+        return Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "classifai-conversion-encode-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.database.DatabaseConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InterruptedIOException;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control of image decoding by memory budget
+ *
+ * Every decode acquires a permit for the estimated size of its pixel buffers before allocating them.
+ * Decodes wait while the permits held exceed the budget. Waiters are admitted strictly in order,
+ * interactive decodes ahead of batch decodes and first come first served within the same priority,
+ * so a large decode is never starved by smaller ones behind it.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class DecodeScheduler
+{
+    public enum Priority
+    {
+        INTERACTIVE,
+        BATCH
+    }
+
+    //pixel buffers are held as int rgb or argb
+    private static final int BYTES_PER_PIXEL = 4;
+
+    //budget when not configured, share of maximum heap
+    private static final int DEFAULT_BUDGET_DIVISOR = 4;
+
+    private static final ReentrantLock lock = new ReentrantLock();
+
+    private static final Condition released = lock.newCondition();
+
+    private static final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+
+    private static long sequence = 0;
+
+    private static long usedBytes = 0;
+
+    private static class Waiter implements Comparable<Waiter>
+    {
+        private final Priority priority;
+        private final long sequence;
+
+        private Waiter(Priority priority, long sequence)
+        {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other)
+        {
+            if(priority != other.priority) return priority.compareTo(other.priority);
+
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Memory held by an admitted decode, released on close
+     */
+    public static class Permit implements AutoCloseable
+    {
+        private final long cost;
+
+        private boolean isReleased = false;
+
+        private Permit(long cost)
+        {
+            this.cost = cost;
+        }
+
+        @Override
+        public void close()
+        {
+            if(isReleased) return;
+
+            isReleased = true;
+
+            release(cost);
+        }
+    }
+
+    /**
+     * @return bytes of pixel buffer of image with dimension
+     */
+    public static long estimateCost(long width, long height)
+    {
+        return Math.max(width, 0) * Math.max(height, 0) * BYTES_PER_PIXEL;
+    }
+
+    public static long getMemoryBudget()
+    {
+        long memoryBudget = DatabaseConfig.getDecodeMemoryBudget();
+
+        return (memoryBudget > 0) ? memoryBudget : Runtime.getRuntime().maxMemory() / DEFAULT_BUDGET_DIVISOR;
+    }
+
+    /**
+     * Wait until decode with estimated cost fits into memory budget
+     * A decode larger than the whole budget is admitted when no other decode is running
+     *
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    public static Permit acquire(long cost, Priority priority) throws InterruptedIOException
+    {
+        long budget = getMemoryBudget();
+        long admittedCost = Math.min(Math.max(cost, 0), budget);
+
+        lock.lock();
+
+        try
+        {
+            Waiter waiter = new Waiter(priority, sequence++);
+
+            waiters.add(waiter);
+
+            if((waiters.peek() != waiter) || (usedBytes + admittedCost > budget))
+            {
+                log.debug("Decode of " + admittedCost + " bytes waiting with " + usedBytes + " of " + budget + " bytes in use");
+            }
+
+            try
+            {
+                while((waiters.peek() != waiter) || (usedBytes + admittedCost > budget))
+                {
+                    released.await();
+                }
+            }
+            catch(InterruptedException e)
+            {
+                waiters.remove(waiter);
+                released.signalAll();
+
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while waiting for decode memory");
+            }
+
+            waiters.poll();
+            usedBytes += admittedCost;
+
+            //next in line might fit into remaining budget
+            released.signalAll();
+
+            return new Permit(admittedCost);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of decodes waiting for admission
+     */
+    static int getWaitingCount()
+    {
+        lock.lock();
+
+        try
+        {
+            return waiters.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private static void release(long cost)
+    {
+        lock.lock();
+
+        try
+        {
+            usedBytes -= cost;
+
+            released.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
@@ -15,35 +15,36 @@
  */
 package ai.classifai.util.data;
 
+import ai.classifai.data.thumbnail.Thumbnail;
+import ai.classifai.data.thumbnail.ThumbnailDecoder;
+import ai.classifai.data.thumbnail.ThumbnailGenerator;
+import ai.classifai.data.thumbnail.ThumbnailStore;
+import ai.classifai.data.type.image.DocumentPage;
 import ai.classifai.data.type.image.ImageFileType;
-import ai.classifai.database.annotation.bndbox.BoundingBoxDbQuery;
+import ai.classifai.data.type.image.ImageHeader;
+import ai.classifai.database.DatabaseConfig;
+import ai.classifai.database.annotation.AnnotationQuery;
 import ai.classifai.database.annotation.bndbox.BoundingBoxVerticle;
-import ai.classifai.database.annotation.seg.SegDbQuery;
 import ai.classifai.database.annotation.seg.SegVerticle;
 import ai.classifai.database.portfolio.PortfolioVerticle;
-import ai.classifai.loader.ProjectLoader;
-import ai.classifai.selector.filesystem.FileSystemStatus;
 import ai.classifai.util.ParamConfig;
 import ai.classifai.util.ProjectHandler;
 import ai.classifai.util.type.AnnotationType;
-import com.drew.imaging.jpeg.JpegMetadataReader;
-import com.drew.metadata.Directory;
-import com.drew.metadata.Metadata;
-import com.drew.metadata.exif.ExifIFD0Directory;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.ext.jdbc.JDBCClient;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.color.ColorSpace;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Image Handler
@@ -53,7 +54,19 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 public class ImageHandler {
 
-    private static String getImageHeader(String input)
+    //persistent thumbnail store, thumbnails are generated on every request when not configured
+    @Setter private static ThumbnailStore thumbnailStore;
+
+    //background thumbnail generation of newly added images, null when not configured
+    @Getter @Setter private static ThumbnailGenerator thumbnailGenerator;
+
+    //folders kept synchronized into project, keyed by project id
+    private static final Map<Integer, LinkedFolderWatcher> linkedFolders = new ConcurrentHashMap<>();
+
+    /**
+     * @return data uri header of image format, null when format not supported
+     */
+    public static String getImageHeader(String input)
     {
         Integer lastIndex = input.length();
 
@@ -75,25 +88,14 @@ public class ImageHandler {
         return null;
     }
 
-    private static String base64FromBufferedImage(BufferedImage img) {
-        try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            ImageIO.write(img, "PNG", out);
-            byte[] bytes = out.toByteArray();
-            String base64bytes = Base64.getEncoder().encodeToString(bytes);
-            String src = "data:image/png;base64," + base64bytes;
-
-            return src;
-        } catch (Exception e) {
-            log.debug("Error in converting BufferedImage into base64: ", e);
-            return "";
-        }
-
+    private static String base64FromPngBytes(byte[] bytes)
+    {
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(bytes);
     }
 
     public static boolean isImageReadable(String imagePath)
     {
-        File file = new File(imagePath);
+        File file = DocumentPage.getSourceFile(imagePath);
 
         if((file.exists() == false) && (file.length() < 5)) //length() stands for file size
         {
@@ -106,276 +108,328 @@ public class ImageHandler {
 
     }
 
-    private static int getExifOrientation(File file){
+    public static Integer getDefaultThumbnailSize()
+    {
+        return ImageFileType.getFixedThumbnailWidth();
+    }
+
+    /**
+     * @return thumbnail size when it is the default size or one of the configured extra sizes, else null
+     */
+    public static Integer getSupportedThumbnailSize(@NonNull String thumbnailSizeParam)
+    {
         try
         {
-            Metadata metadata = JpegMetadataReader.readMetadata(file);
-            Directory dir= metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+            Integer thumbnailSize = Integer.parseInt(thumbnailSizeParam);
 
-            return dir.getInt(274);
+            if(thumbnailSize.equals(getDefaultThumbnailSize()) || DatabaseConfig.getThumbnailSizeList().contains(thumbnailSize))
+            {
+                return thumbnailSize;
+            }
         }
-        catch(Exception e)
+        catch(NumberFormatException e)
         {
-            return 0;
+            log.debug("Invalid thumbnail size: " + thumbnailSizeParam);
         }
-    }
 
-    private static BufferedImage rotate(BufferedImage image, double angle){
+        return null;
+    }
 
-        double sin = Math.abs(Math.sin(angle));
-        double cos = Math.abs(Math.cos(angle));
+    public static Map<String, String> getThumbNail(String imageAbsPath)
+    {
+        Thumbnail thumbnail = loadThumbnail(new File(imageAbsPath), getDefaultThumbnailSize());
 
-        int w = image.getWidth();
-        int h = image.getHeight();
+        return (thumbnail != null) ? getThumbnailData(thumbnail) : null;
+    }
 
-        int newW = (int) Math.floor(w * cos + h * sin);
-        int newH = (int) Math.floor(h * cos + w * sin);
+    /**
+     * Get thumbnail from thumbnail store, generate and store it when absent
+     *
+     * @param thumbnailSize maximum of thumbnail width and height
+     * @return thumbnail, or null when image could not be read
+     */
+    public static Thumbnail loadThumbnail(@NonNull File file, int thumbnailSize)
+    {
+        return loadThumbnail(file, thumbnailSize, DecodeScheduler.Priority.INTERACTIVE);
+    }
 
-        int type = image.getType();
-        BufferedImage result = new BufferedImage(newW, newH, type);
+    /**
+     * @param priority admission priority of decoding when thumbnail is not stored
+     */
+    public static Thumbnail loadThumbnail(@NonNull File file, int thumbnailSize, @NonNull DecodeScheduler.Priority priority)
+    {
+        Thumbnail thumbnail = (thumbnailStore != null) ? thumbnailStore.get(file, thumbnailSize) : null;
 
-        Graphics2D g = result.createGraphics();
+        if(thumbnail == null)
+        {
+            thumbnail = generateThumbnail(file, thumbnailSize, priority);
 
-        g.translate((newW - w) / 2, (newH - h) / 2);
-        g.rotate(angle,((double)w) / 2, ((double)h) / 2);
-        g.drawRenderedImage(image, null);
+            if((thumbnail != null) && (thumbnailStore != null)) thumbnailStore.put(file, thumbnailSize, thumbnail);
+        }
 
-        return result;
+        return thumbnail;
     }
 
-    private static BufferedImage rotateWithOrientation(BufferedImage img, int orientation){
-        double angle = 0;
-        if (orientation == 8) angle = -Math.PI/2;
-        else if (orientation == 3) angle = Math.PI;
-        else if (orientation == 6) angle = Math.PI/2;
+    /**
+     * Request thumbnail for display, ahead of background generation when thumbnail generator is configured
+     * Result is delivered on the context of caller
+     */
+    public static Future<Thumbnail> requestThumbnail(@NonNull Vertx vertx, @NonNull File file, int thumbnailSize)
+    {
+        Promise<Thumbnail> promise = Promise.promise();
 
-        return rotate(img,angle);
-    }
+        if(thumbnailGenerator != null)
+        {
+            Context context = vertx.getOrCreateContext();
 
-    private static int getHeight(BufferedImage img, int orientation){
-        if (orientation == 8 || orientation == 6){
-            return img.getWidth();
+            thumbnailGenerator.request(file, thumbnailSize).whenComplete((thumbnail, error) ->
+                    context.runOnContext(v -> {
+                        if(error != null) promise.fail(error);
+                        else promise.complete(thumbnail);
+                    }));
         }
-        return img.getHeight();
-    }
-
-    private static int getWidth(BufferedImage img, int orientation){
-        if (orientation == 8 || orientation == 6){
-            return img.getHeight();
+        else
+        {
+            vertx.executeBlocking(blocking -> blocking.complete(loadThumbnail(file, thumbnailSize)), false, promise);
         }
-        return img.getWidth();
+
+        return promise.future();
     }
 
+    public static Map<String, String> getThumbnailData(@NonNull Thumbnail thumbnail)
+    {
+        Map<String, String> imageData = new HashMap<>();
+        imageData.put(ParamConfig.getImageDepth(), Integer.toString(thumbnail.getDepth()));
+        imageData.put(ParamConfig.getImageORIHParam(), Integer.toString(thumbnail.getOriHeight()));
+        imageData.put(ParamConfig.getImageORIWParam(), Integer.toString(thumbnail.getOriWidth()));
+        imageData.put(ParamConfig.getBase64Param(), base64FromPngBytes(thumbnail.getData()));
+
+        return imageData;
+    }
 
-    public static Map<String, String> getThumbNail(String imageAbsPath)
+    private static Thumbnail generateThumbnail(File file, int thumbnailSize, DecodeScheduler.Priority priority)
     {
         try
         {
-            File file = new File(imageAbsPath);
+            if(DocumentPage.isPagePath(file.getPath())) return PageRenderer.loadThumbnail(file.getPath(), thumbnailSize, priority);
+
+            return ThumbnailDecoder.decode(file, thumbnailSize, priority);
+        }
+        catch (IOException e) {
+            log.debug("Failed in getting thumbnail for path " + file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Read header of image, or of page for page path of document
+     */
+    public static ImageHeader readHeader(@NonNull String imagePath)
+    {
+        if(DocumentPage.isPagePath(imagePath))
+        {
+            int pageIndex = DocumentPage.getPageIndex(imagePath);
 
-            BufferedImage img  = ImageIO.read(file);
-            int orientation = getExifOrientation(file);
+            List<ImageHeader> headerList = PageRenderer.readHeaders(DocumentPage.getDocument(imagePath), false);
 
-            Integer oriHeight = getHeight(img, orientation);
-            Integer oriWidth = getWidth(img, orientation);
+            if(pageIndex < headerList.size()) return headerList.get(pageIndex);
+        }
 
-            //rotate for thumbnail generation
-            img = rotateWithOrientation(img, orientation);
+        //not found for a page which is gone
+        return ImageHeader.read(new File(imagePath));
+    }
 
-            int type = img.getColorModel().getColorSpace().getType();
-            boolean grayscale = (type == ColorSpace.TYPE_GRAY || type == ColorSpace.CS_GRAY);
+    /**
+     * Validate image from its header
+     * Header is kept for its dimension, depth, orientation and file size to be persisted with the data point
+     * A pdf or tif document gives a header for each of its pages
+     */
+    public static List<ImageHeader> checkFile(@NonNull File file)
+    {
+        return checkFile(file, false);
+    }
 
-            Integer depth = grayscale ? 1 : 3;
+    /**
+     * @param isHashed compute content hash of valid image for deduplication
+     */
+    public static List<ImageHeader> checkFile(@NonNull File file, boolean isHashed)
+    {
+        List<ImageHeader> verifiedFilesList = new ArrayList<>();
 
-            Integer thumbnailWidth = ImageFileType.getFixedThumbnailWidth();
-            Integer thumbnailHeight = ImageFileType.getFixedThumbnailHeight();
+        String currentFileFullPath = file.getAbsolutePath();
 
-            if(oriHeight > oriWidth)
+        if(DocumentPage.isDocument(file))
+        {
+            for(ImageHeader header : PageRenderer.readHeaders(file, isHashed))
             {
-                thumbnailWidth =  thumbnailHeight * oriWidth / oriHeight;
+                if(header.isValid())
+                {
+                    verifiedFilesList.add(header);
+                }
+                else
+                {
+                    log.info("Page " + header.getStatus().name().toLowerCase().replace('_', ' ') + ". Skipped " + header.getPath());
+                }
+            }
+        }
+        else if(FileHandler.isfileSupported(currentFileFullPath, ImageFileType.getImageFileTypes()))
+        {
+            ImageHeader header = ImageHeader.read(file, isHashed);
+
+            if(header.isValid())
+            {
+                verifiedFilesList.add(header);
             }
             else
             {
-                thumbnailHeight = thumbnailWidth * oriHeight / oriWidth;
+                log.info("Image " + header.getStatus().name().toLowerCase().replace('_', ' ') + ". Skipped " + currentFileFullPath);
             }
-
-            Image tmp = img.getScaledInstance(thumbnailWidth, thumbnailHeight, Image.SCALE_SMOOTH);
-            BufferedImage resized = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = resized.createGraphics();
-            g2d.drawImage(tmp, 0, 0, null);
-            g2d.dispose();
-
-
-            Map<String, String> imageData = new HashMap<>();
-            imageData.put(ParamConfig.getImageDepth(), Integer.toString(depth));
-            imageData.put(ParamConfig.getImageORIHParam(), Integer.toString(oriHeight));
-            imageData.put(ParamConfig.getImageORIWParam(), Integer.toString(oriWidth));
-            imageData.put(ParamConfig.getBase64Param(), base64FromBufferedImage(resized));
-
-            return imageData;
-
-        }
-        catch (IOException e) {
-            log.debug("Failed in getting thumbnail for path " + imageAbsPath, e);
-            return null;
         }
+
+        return verifiedFilesList;
     }
-    public static String encodeFileToBase64Binary(File file)
-    {
-        try
-        {
-            String encodedfile = null;
 
-            FileInputStream fileInputStreamReader = new FileInputStream(file);
 
-            byte[] bytes = new byte[(int)file.length()];
+    /**
+     * Create ingestion pipeline inserting into database of project annotation type
+     *
+     * @param listener null to track file system status and progress in project loader
+     */
+    static IngestionPipeline createPipeline(@NonNull Integer projectID, IngestionPipeline.IngestionListener listener)
+    {
+        JDBCClient jdbcClient = getJdbcClient(projectID);
 
-            fileInputStreamReader.read(bytes);
+        return (jdbcClient != null) ? new IngestionPipeline(projectID, jdbcClient, AnnotationQuery.createData(), listener) : null;
+    }
 
-            encodedfile = new String(Base64.getEncoder().encode(bytes));
+    private static JDBCClient getJdbcClient(Integer projectID)
+    {
+        Integer annotationTypeInt = ProjectHandler.getProjectLoader(projectID).getAnnotationType();
 
-            return getImageHeader(file.getAbsolutePath()) + encodedfile;
+        if(annotationTypeInt.equals(AnnotationType.BOUNDINGBOX.ordinal()))
+        {
+            return BoundingBoxVerticle.getJdbcClient();
         }
-        catch(Exception e)
+        else if (annotationTypeInt.equals(AnnotationType.SEGMENTATION.ordinal()))
         {
-            log.error("Failed while converting File to base64", e);
+            return SegVerticle.getJdbcClient();
         }
 
+        log.error("Annotation type not supported for ingestion: " + annotationTypeInt);
         return null;
     }
 
+    /**
+     * Ingest selected files in background. Progress is updated in project loader.
+     */
+    public static void processFile(@NonNull Integer projectID, @NonNull List<File> filesInput)
+    {
+        IngestionPipeline pipeline = createPipeline(projectID, null);
 
+        if(pipeline != null) pipeline.ingestFiles(filesInput);
+    }
 
+    /**
+     * Ingest images under root folder recursively in background. Progress is updated in project loader.
+     */
+    public static void processFolder(@NonNull Integer projectID, @NonNull File rootPath)
+    {
+        IngestionPipeline pipeline = createPipeline(projectID, null);
 
-    private static boolean isImageFileValid(String file)
+        if(pipeline != null) pipeline.ingestFolder(rootPath);
+    }
+
+    /**
+     * Keep project synchronized with folder, replacing folder linked previously
+     * Link is kept in portfolio database and restored when project is loaded again
+     */
+    public static boolean linkFolder(@NonNull Integer projectID, @NonNull File rootFolder)
     {
-        try {
-            File filePath = new File(file);
+        LinkedFolderWatcher watcher = createLinkedFolderWatcher(projectID, rootFolder);
 
-            BufferedImage bimg = ImageIO.read(filePath);
+        if(watcher == null) return false;
 
-            if (bimg == null)
-            {
-                log.info("Failed in reading. Skipped " + filePath.getAbsolutePath());
-                return false;
-            }
-            else if((bimg.getWidth() > ImageFileType.getMaxWidth()) || (bimg.getHeight() > ImageFileType.getMaxHeight()))
-            {
-                log.info("Image size bigger than maximum allowed input size. Skipped " + filePath.getAbsolutePath());
-                return false;
-            }
-        }
-        catch(Exception e)
-        {
-            log.debug("Error in checking if image file valid - " + file, e);
-            return false;
-        }
+        LinkedFolderWatcher previous = linkedFolders.put(projectID, watcher);
+
+        if(previous != null) previous.close();
+
+        watcher.start();
+
+        PortfolioVerticle.updateLinkedFolder(projectID, rootFolder);
 
         return true;
     }
 
-    public static List<File> checkFile(@NonNull File file)
+    /**
+     * Link folder kept in portfolio database again, e.g. after restart. Nothing is done when a folder is linked already.
+     */
+    public static void restoreLinkedFolder(@NonNull Integer projectID)
     {
-        List<File> verifiedFilesList = new ArrayList<>();
+        if(linkedFolders.containsKey(projectID)) return;
 
-        String currentFileFullPath = file.getAbsolutePath();
+        PortfolioVerticle.getLinkedFolder(projectID, fetch -> {
 
-        if(FileHandler.isfileSupported(currentFileFullPath, ImageFileType.getImageFileTypes()))
-        {
-            if(isImageFileValid(currentFileFullPath))
+            if(fetch.failed())
             {
-                verifiedFilesList.add(file);
+                log.info("Failed in getting linked folder of project " + projectID, fetch.cause());
+                return;
             }
-        }
-
-        return verifiedFilesList;
-    }
 
+            File rootFolder = fetch.result();
 
-    public static void saveToDatabase(@NonNull Integer projectID, @NonNull List<File> filesCollection)
-    {
-        ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
-        AtomicInteger uuidGenerator = new AtomicInteger(loader.getUuidGeneratorSeed());
-
-        //update Portfolio Verticle Generator Seed
-        Integer uuidNewSeed = filesCollection.size() + loader.getUuidGeneratorSeed();
-        PortfolioVerticle.updateUUIDGeneratorSeed(projectID, uuidNewSeed);
+            if(rootFolder == null) return;
 
-        loader.reset(FileSystemStatus.WINDOW_CLOSE_DATABASE_UPDATING);
-        loader.setFileSysTotalUUIDSize(filesCollection.size());
-
-        Integer annotationTypeInt = loader.getAnnotationType();
-
-        if(annotationTypeInt.equals(AnnotationType.BOUNDINGBOX.ordinal()))
-        {
-            for(int i = 0; i < filesCollection.size(); ++i)
+            //link is kept, folder might be on a drive not mounted yet
+            if(!rootFolder.isDirectory())
             {
-                Integer uuid = uuidGenerator.incrementAndGet();
-
-                BoundingBoxVerticle.updateUUID(BoundingBoxVerticle.getJdbcClient(), BoundingBoxDbQuery.createData(), projectID, filesCollection.get(i), uuid, i + 1);
+                log.info("Linked folder " + rootFolder + " of project " + projectID + " not found. Folder is not synchronized.");
+                return;
             }
-        }
-        else if (annotationTypeInt.equals(AnnotationType.SEGMENTATION.ordinal()))
-        {
-            for(int i = 0; i < filesCollection.size(); ++i)
-            {
-                Integer uuid = uuidGenerator.incrementAndGet();
 
-                SegVerticle.updateUUID(SegVerticle.getJdbcClient(), SegDbQuery.createData(), projectID, filesCollection.get(i), uuid, i + 1);
+            LinkedFolderWatcher watcher = createLinkedFolderWatcher(projectID, rootFolder);
 
+            if((watcher != null) && (linkedFolders.putIfAbsent(projectID, watcher) == null))
+            {
+                log.info("Linked folder " + rootFolder + " of project " + projectID + " restored");
+
+                watcher.start();
             }
-        }
+        });
     }
-    public static void processFile(@NonNull Integer projectID, @NonNull List<File> filesInput)
-    {
-        List<File> validatedFilesList = new ArrayList<>();
 
-        for(File file : filesInput)
-        {
-            List<File> files = checkFile(file);
-            validatedFilesList.addAll(files);
-        }
+    private static LinkedFolderWatcher createLinkedFolderWatcher(Integer projectID, File rootFolder)
+    {
+        JDBCClient jdbcClient = getJdbcClient(projectID);
 
-        saveToDatabase(projectID, validatedFilesList);
+        return (jdbcClient != null) ? new LinkedFolderWatcher(projectID, rootFolder, jdbcClient) : null;
     }
 
-    public static void processFolder(@NonNull Integer projectID, @NonNull File rootPath)
+    /**
+     * @return false when no folder is linked to project
+     */
+    public static boolean unlinkFolder(@NonNull Integer projectID)
     {
-        List<File> totalFilelist = new ArrayList<>();
-        Stack<File> folderStack = new Stack<>();
-        ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
-        String[] fileExtension = ImageFileType.getImageFileTypes();
-        java.util.List<File> checkFileFormat = FileHandler.processFolder(rootPath, fileExtension);
+        LinkedFolderWatcher watcher = linkedFolders.remove(projectID);
 
-        folderStack.push(rootPath);
+        PortfolioVerticle.deleteLinkedFolder(projectID);
 
-        if(checkFileFormat.isEmpty())
-        {
-            loader.reset(FileSystemStatus.WINDOW_CLOSE_DATABASE_NOT_UPDATED);
-            return;
-        }
+        if(watcher == null) return false;
 
-        while(folderStack.isEmpty() != true)
-        {
-            File currentFolderPath = folderStack.pop();
+        watcher.close();
 
-            File[] folderList = currentFolderPath.listFiles();
+        return true;
+    }
 
-            for(File file : folderList)
-            {
-                if (file.isDirectory())
-                {
-                    folderStack.push(file);
-                }
-                else
-                {
-                    List<File> files = checkFile(file);
-                    totalFilelist.addAll(files);
-                }
-            }
+    public static File getLinkedFolder(@NonNull Integer projectID)
+    {
+        LinkedFolderWatcher watcher = linkedFolders.get(projectID);
 
-        }
+        return (watcher != null) ? watcher.getRootFolder() : null;
+    }
 
-        saveToDatabase(projectID, totalFilelist);
+    public static void closeLinkedFolders()
+    {
+        linkedFolders.values().forEach(LinkedFolderWatcher::close);
+        linkedFolders.clear();
     }
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.data.thumbnail.Thumbnail;
+import ai.classifai.data.thumbnail.ThumbnailCache;
+import ai.classifai.data.type.image.DocumentPage;
+import ai.classifai.database.annotation.AnnotationQuery;
+import ai.classifai.database.annotation.AnnotationVerticle;
+import ai.classifai.loader.ProjectLoader;
+import ai.classifai.util.ParamConfig;
+import ai.classifai.util.ProjectHandler;
+import ai.classifai.util.http.HTTPCacheValidator;
+import ai.classifai.util.message.ReplyHandler;
+import ai.classifai.util.type.AnnotationType;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefetch upcoming images of a project in annotation order
+ *
+ * On every image retrieval, the next images after the retrieved uuid in sanity uuid list are warmed on a low priority pool:
+ * image bytes are read into page cache of OS, thumbnail is put into thumbnail cache, and image path is registered for
+ * conditional requests. Retrieval outside of the prefetch window is a jump, prefetches queued for the old position are cancelled.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class ImagePrefetcher
+{
+    private static final int POOL_SIZE = 2;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Vertx vertx;
+
+    private final int prefetchSize;
+
+    private final ThreadPoolExecutor executor;
+
+    //prefetch state of each project, keyed by annotation type and project id
+    private final Map<String, PrefetchWindow> windows = new ConcurrentHashMap<>();
+
+    //retrievals of an image which was prefetched, against retrievals of one which was not
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+
+    private final AtomicLong prefetchCount = new AtomicLong(0);
+    private final AtomicLong cancelCount = new AtomicLong(0);
+
+    private static class PrefetchWindow
+    {
+        //bumped on every jump, prefetches of an older generation are cancelled before they start
+        private final AtomicInteger generation = new AtomicInteger(0);
+
+        //uuids in prefetch window, submitted in current generation
+        private final Set<Integer> submitted = new HashSet<>();
+
+        //uuids prefetched and not yet retrieved
+        private final Set<Integer> prefetched = ConcurrentHashMap.newKeySet();
+
+        private Integer lastUUID;
+        private int lastPosition = -1;
+    }
+
+    public ImagePrefetcher(@NonNull Vertx vertx, int prefetchSize)
+    {
+        this.vertx = vertx;
+        this.prefetchSize = prefetchSize;
+
+        AtomicInteger threadCount = new AtomicInteger(0);
+
+        executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "classifai-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Prefetch images following uuid in annotation order
+     * Called on every retrieval of full image, repeated retrievals of the same image are ignored
+     *
+     * @param queue event bus address of annotation verticle of project
+     * @param thumbnailSize thumbnail size to warm in thumbnail cache
+     */
+    public void prefetch(@NonNull String queue, @NonNull AnnotationType annotationType, @NonNull Integer projectID, @NonNull Integer uuid, int thumbnailSize)
+    {
+        ProjectLoader loader = ProjectHandler.getProjectLoader(projectID);
+
+        if(loader == null) return;
+
+        //copy taken under loader lock, linked folder and import threads keep updating the list
+        List<Integer> sanityUUIDList = loader.getSanityUUIDList();
+
+        PrefetchWindow window = windows.computeIfAbsent(annotationType.ordinal() + ":" + projectID, key -> new PrefetchWindow());
+
+        List<Integer> upcomingUUIDList = new ArrayList<>();
+        int generation;
+
+        synchronized(window)
+        {
+            if(uuid.equals(window.lastUUID)) return;
+
+            window.lastUUID = uuid;
+
+            if(window.prefetched.remove(uuid))
+            {
+                hitCount.incrementAndGet();
+            }
+            else
+            {
+                missCount.incrementAndGet();
+            }
+
+            int position = getPosition(sanityUUIDList, uuid, window.lastPosition);
+
+            if(position < 0) return;
+
+            if(!window.submitted.contains(uuid) && (Math.abs(position - window.lastPosition) > prefetchSize))
+            {
+                window.generation.incrementAndGet();
+                window.submitted.clear();
+                window.prefetched.clear();
+            }
+
+            window.lastPosition = position;
+            generation = window.generation.get();
+
+            Set<Integer> windowUUIDSet = new HashSet<>();
+
+            for(int i = position + 1; i < Math.min(position + 1 + prefetchSize, sanityUUIDList.size()); ++i)
+            {
+                Integer upcomingUUID = sanityUUIDList.get(i);
+
+                windowUUIDSet.add(upcomingUUID);
+
+                if(window.submitted.add(upcomingUUID)) upcomingUUIDList.add(upcomingUUID);
+            }
+
+            //keep window state bounded by prefetch size
+            window.submitted.retainAll(windowUUIDSet);
+        }
+
+        if(upcomingUUIDList.isEmpty()) return;
+
+        JsonObject request = new JsonObject()
+                .put(ParamConfig.getProjectIDParam(), projectID)
+                .put(ParamConfig.getUUIDListParam(), new JsonArray(upcomingUUIDList));
+
+        DeliveryOptions options = new DeliveryOptions().addHeader(ParamConfig.getActionKeyword(), AnnotationQuery.retrieveDataPathList());
+
+        vertx.eventBus().request(queue, request, options, fetch -> {
+
+            if(fetch.failed() || !ReplyHandler.isReplyOk((JsonObject) fetch.result().body()))
+            {
+                log.debug("Failure in retrieving image path to prefetch for project " + projectID);
+                return;
+            }
+
+            JsonArray imagePathList = ((JsonObject) fetch.result().body()).getJsonArray(ParamConfig.getImagePathListParam());
+
+            for(int i = 0; i < imagePathList.size(); ++i)
+            {
+                JsonObject data = imagePathList.getJsonObject(i);
+
+                Integer upcomingUUID = data.getInteger(ParamConfig.getUUIDParam());
+                String imagePath = data.getString(ParamConfig.getImagePathParam());
+
+                executor.execute(() -> {
+
+                    if(window.generation.get() != generation)
+                    {
+                        cancelCount.incrementAndGet();
+                        return;
+                    }
+
+                    if(warm(annotationType, projectID, upcomingUUID, imagePath, thumbnailSize) && (window.generation.get() == generation))
+                    {
+                        window.prefetched.add(upcomingUUID);
+                        prefetchCount.incrementAndGet();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Position of uuid in sanity uuid list, checking the position after last retrieval first
+     */
+    private static int getPosition(List<Integer> sanityUUIDList, Integer uuid, int lastPosition)
+    {
+        int nextPosition = lastPosition + 1;
+
+        if((nextPosition > 0) && (nextPosition < sanityUUIDList.size()) && uuid.equals(sanityUUIDList.get(nextPosition)))
+        {
+            return nextPosition;
+        }
+
+        return sanityUUIDList.indexOf(uuid);
+    }
+
+    private static boolean warm(AnnotationType annotationType, Integer projectID, Integer uuid, String imagePath, int thumbnailSize)
+    {
+        File image = DocumentPage.getSourceFile(imagePath);
+
+        if(!image.isFile()) return false;
+
+        //read through once so image source and image file are served from page cache, bytes are not kept
+        //a page of document is rendered for its thumbnail only, reading through the whole document is no use
+        if(!DocumentPage.isPagePath(imagePath)) try(InputStream input = new FileInputStream(image))
+        {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+            while(input.read(buffer) != -1)
+            {
+                //discard
+            }
+        }
+        catch(IOException e)
+        {
+            log.debug("Failure in prefetching " + imagePath, e);
+            return false;
+        }
+
+        HTTPCacheValidator.registerImagePath(annotationType, projectID, uuid, imagePath);
+
+        ThumbnailCache thumbnailCache = AnnotationVerticle.getThumbnailCache();
+
+        if((thumbnailCache == null) || thumbnailCache.contains(imagePath, thumbnailSize)) return true;
+
+        //also written to thumbnail store when configured, a page path renders the page instead of the document
+        Thumbnail thumbnail = ImageHandler.loadThumbnail(new File(imagePath), thumbnailSize, DecodeScheduler.Priority.BATCH);
+
+        if(thumbnail == null) return false;
+
+        thumbnailCache.put(imagePath, thumbnailSize, ImageHandler.getThumbnailData(thumbnail));
+
+        return true;
+    }
+
+    public JsonObject getStats()
+    {
+        long hit = hitCount.get();
+        long miss = missCount.get();
+
+        return new JsonObject()
+                .put("hit", hit)
+                .put("miss", miss)
+                .put("hit_rate", (hit + miss) > 0 ? (double) hit / (hit + miss) : 0.0)
+                .put("prefetched", prefetchCount.get())
+                .put("cancelled", cancelCount.get())
+                .put("pending", executor.getQueue().size())
+                .put("prefetch_size", prefetchSize);
+    }
+
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+}
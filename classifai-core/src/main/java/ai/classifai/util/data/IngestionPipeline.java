@@ -0,0 +1,578 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.data.thumbnail.ThumbnailGenerator;
+import ai.classifai.data.type.image.DocumentPage;
+import ai.classifai.data.type.image.ImageFileType;
+import ai.classifai.data.type.image.ImageHeader;
+import ai.classifai.database.BatchHandler;
+import ai.classifai.database.DatabaseConfig;
+import ai.classifai.database.annotation.AnnotationQuery;
+import ai.classifai.database.annotation.AnnotationVerticle;
+import ai.classifai.database.portfolio.PortfolioVerticle;
+import ai.classifai.loader.ProjectLoader;
+import ai.classifai.selector.filesystem.FileSystemStatus;
+import ai.classifai.util.ProjectHandler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.ResultSet;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged ingestion of new data points into a project
+ *
+ * Walking of files, header validation on a CPU sized pool and batched insertion run concurrently,
+ * connected by bounded queues so memory stays flat regardless of folder size.
+ * Every committed batch is made visible to the project right away.
+ * With deduplication enabled, images whose content hash is already in project are skipped and counted.
+ * Every page of a pdf or tif document is ingested as its own data point, rendered on demand instead of converted to images.
+ *
+ * Without listener, file system status and progress of project loader are tracked for the client polling them.
+ * With listener, ingestion runs silently in background and the listener is told of every committed and skipped file.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class IngestionPipeline
+{
+    //rows grouped into one transaction
+    private static final int BATCH_INSERT_SIZE = 1000;
+
+    //flush a partial batch when no image is validated within this time, so rows show up during slow walks
+    private static final long BATCH_LINGER_MS = 500;
+
+    private static final int PATH_QUEUE_CAPACITY = 4096;
+    private static final int HEADER_QUEUE_CAPACITY = 2 * BATCH_INSERT_SIZE;
+
+    //marks the end of paths for a validation worker
+    private static final File END_OF_FILES = new File("");
+
+    private final Integer projectID;
+    private final ProjectLoader loader;
+
+    private final JDBCClient jdbcClient;
+    private final String query;
+
+    private final int validationPoolSize = Runtime.getRuntime().availableProcessors();
+
+    private final BlockingQueue<File> fileQueue = new ArrayBlockingQueue<>(PATH_QUEUE_CAPACITY);
+    private final BlockingQueue<ImageHeader> headerQueue = new ArrayBlockingQueue<>(HEADER_QUEUE_CAPACITY);
+
+    private final CountDownLatch validationLatch = new CountDownLatch(validationPoolSize);
+
+    //content hash of data points in project, null when deduplication is disabled
+    private Set<String> contentHashSet;
+
+    //walked files which are either skipped or inserted
+    private final AtomicInteger processedCount = new AtomicInteger(0);
+
+    private final ExecutorService executor;
+
+    private final IngestionListener listener;
+
+    //completed when the last batch is committed
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    public interface IngestionListener
+    {
+        void onCommit(List<ImageHeader> headerList, List<Integer> uuidList);
+
+        void onSkip(File file);
+    }
+
+    public IngestionPipeline(@NonNull Integer projectID, @NonNull JDBCClient jdbcClient, @NonNull String query)
+    {
+        this(projectID, jdbcClient, query, null);
+    }
+
+    public IngestionPipeline(@NonNull Integer projectID, @NonNull JDBCClient jdbcClient, @NonNull String query, IngestionListener listener)
+    {
+        this.projectID = projectID;
+        this.loader = ProjectHandler.getProjectLoader(projectID);
+        this.jdbcClient = jdbcClient;
+        this.query = query;
+        this.listener = listener;
+
+        AtomicInteger threadCount = new AtomicInteger(0);
+
+        //walker, validation workers and inserter
+        executor = Executors.newFixedThreadPool(validationPoolSize + 2, runnable -> {
+            Thread thread = new Thread(runnable, "classifai-ingestion-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ingest supported images and documents under root folder recursively. Returns immediately.
+     */
+    public CompletableFuture<Void> ingestFolder(@NonNull File rootFolder)
+    {
+        String[] extensionFormat = getIngestionFileTypes();
+
+        return start(() -> Files.walkFileTree(rootFolder.toPath(), new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException
+            {
+                if(attrs.isRegularFile() && FileHandler.isfileSupported(path.toString(), extensionFormat))
+                {
+                    offer(path.toFile());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e)
+            {
+                log.debug("Skipped unreadable path " + path, e);
+                return FileVisitResult.CONTINUE;
+            }
+        }));
+    }
+
+    /**
+     * Ingest selected files. Returns immediately.
+     */
+    public CompletableFuture<Void> ingestFiles(@NonNull List<File> fileList)
+    {
+        return start(() -> {
+            for(File file : fileList)
+            {
+                offer(file);
+            }
+        });
+    }
+
+    public static String[] getIngestionFileTypes()
+    {
+        String[] imageFileTypes = ImageFileType.getImageFileTypes();
+        String[] documentFileTypes = DocumentPage.getDocumentFileTypes();
+
+        String[] fileTypes = Arrays.copyOf(imageFileTypes, imageFileTypes.length + documentFileTypes.length);
+        System.arraycopy(documentFileTypes, 0, fileTypes, imageFileTypes.length, documentFileTypes.length);
+
+        return fileTypes;
+    }
+
+    private interface Walker
+    {
+        void walk() throws Exception;
+    }
+
+    private CompletableFuture<Void> start(Walker walker)
+    {
+        if(listener == null)
+        {
+            loader.reset(FileSystemStatus.WINDOW_CLOSE_DATABASE_UPDATING);
+            loader.setFileSysTotalUUIDSize(0);
+        }
+
+        executor.execute(() -> {
+            try
+            {
+                //loaded before any file is offered, so validation always sees the index
+                if(DatabaseConfig.isDeduplication()) contentHashSet = loadContentHashSet();
+
+                walker.walk();
+            }
+            catch(Exception e)
+            {
+                log.info("Failed in walking files of project " + projectID, e);
+            }
+            finally
+            {
+                for(int i = 0; i < validationPoolSize; ++i)
+                {
+                    putUninterruptibly(fileQueue, END_OF_FILES);
+                }
+            }
+        });
+
+        for(int i = 0; i < validationPoolSize; ++i)
+        {
+            executor.execute(this::validate);
+        }
+
+        executor.execute(this::insert);
+
+        executor.shutdown();
+
+        return completion;
+    }
+
+    private void offer(File file)
+    {
+        if(listener == null) loader.addFileSysTotalUUIDSize(1);
+
+        putUninterruptibly(fileQueue, file);
+    }
+
+    private void validate()
+    {
+        try
+        {
+            while(true)
+            {
+                File file = fileQueue.take();
+
+                if(file == END_OF_FILES) return;
+
+                List<ImageHeader> headers = ImageHandler.checkFile(file, contentHashSet != null);
+
+                //file was counted once when offered, a document counts each of its pages
+                if((headers.size() > 1) && (listener == null)) loader.addFileSysTotalUUIDSize(headers.size() - 1);
+
+                boolean isInserted = false;
+
+                for(ImageHeader header : headers)
+                {
+                    if(isDuplicate(header))
+                    {
+                        processedCount.incrementAndGet();
+                    }
+                    else
+                    {
+                        putUninterruptibly(headerQueue, header);
+                        isInserted = true;
+                    }
+                }
+
+                if(!isInserted)
+                {
+                    if(headers.isEmpty()) processedCount.incrementAndGet();
+
+                    if(listener != null) listener.onSkip(file);
+                }
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            validationLatch.countDown();
+        }
+    }
+
+    /**
+     * Project level index shared by all imports of the project, loaded from database once
+     * Loaded without holding the loader lock, event loop handlers of the loader keep running while content is hashed
+     */
+    private Set<String> loadContentHashSet() throws Exception
+    {
+        CompletableFuture<Set<String>> hashSetFuture = new CompletableFuture<>();
+
+        CompletableFuture<Set<String>> loadedFuture = loader.putContentHashSetIfAbsent(hashSetFuture);
+
+        //loaded or being loaded by another import of the project
+        if(loadedFuture != null) return loadedFuture.get();
+
+        try
+        {
+            backfillContentHash();
+
+            CompletableFuture<ResultSet> query = new CompletableFuture<>();
+
+            jdbcClient.queryWithParams(AnnotationQuery.loadContentHash(), new JsonArray().add(projectID), fetch -> {
+                if(fetch.succeeded()) query.complete(fetch.result());
+                else query.completeExceptionally(fetch.cause());
+            });
+
+            Set<String> hashSet = ConcurrentHashMap.newKeySet();
+
+            for(JsonArray row : query.get().getResults())
+            {
+                hashSet.add(row.getString(0));
+            }
+
+            hashSetFuture.complete(hashSet);
+
+            return hashSet;
+        }
+        catch(Exception e)
+        {
+            //next import loads again
+            loader.invalidateContentHashSet();
+            hashSetFuture.completeExceptionally(e);
+
+            throw e;
+        }
+    }
+
+    /**
+     * Hash data points imported before deduplication, otherwise they are imported again as new data points
+     * Data points whose image is missing are left without hash and retried when the index is loaded next time
+     */
+    private void backfillContentHash() throws Exception
+    {
+        CompletableFuture<ResultSet> query = new CompletableFuture<>();
+
+        jdbcClient.queryWithParams(AnnotationQuery.loadUnhashedDataPath(), new JsonArray().add(projectID), fetch -> {
+            if(fetch.succeeded()) query.complete(fetch.result());
+            else query.completeExceptionally(fetch.cause());
+        });
+
+        List<JsonArray> rows = query.get().getResults();
+
+        if(rows.isEmpty()) return;
+
+        log.info("Computing content hash of " + rows.size() + " data points of project " + projectID + " imported before deduplication");
+
+        //pages of a document are hashed from one read of the document
+        Map<File, String> documentHashes = new HashMap<>();
+
+        List<JsonArray> batchParams = new ArrayList<>();
+
+        for(JsonArray row : rows)
+        {
+            String imagePath = row.getString(1);
+
+            try
+            {
+                String contentHash;
+
+                if(DocumentPage.isPagePath(imagePath))
+                {
+                    File document = DocumentPage.getDocument(imagePath);
+
+                    String documentHash = documentHashes.get(document);
+
+                    if(documentHash == null)
+                    {
+                        documentHash = ImageHeader.hash(document);
+                        documentHashes.put(document, documentHash);
+                    }
+
+                    contentHash = PageRenderer.getPageHash(documentHash, DocumentPage.getPageIndex(imagePath));
+                }
+                else
+                {
+                    contentHash = ImageHeader.hash(new File(imagePath));
+                }
+
+                batchParams.add(new JsonArray().add(contentHash).add(row.getInteger(0)).add(projectID));
+            }
+            catch(IOException e)
+            {
+                log.debug("Content hash of " + imagePath + " not computed", e);
+            }
+
+            if(batchParams.size() >= BATCH_INSERT_SIZE) updateContentHash(batchParams);
+        }
+
+        updateContentHash(batchParams);
+    }
+
+    private void updateContentHash(List<JsonArray> batchParams) throws Exception
+    {
+        if(batchParams.isEmpty()) return;
+
+        CompletableFuture<Void> update = new CompletableFuture<>();
+
+        BatchHandler.executeBatch(jdbcClient, AnnotationQuery.updateContentHash(), batchParams, reply -> {
+            if(reply.succeeded()) update.complete(null);
+            else update.completeExceptionally(reply.cause());
+        });
+
+        update.get();
+
+        batchParams.clear();
+    }
+
+    /**
+     * Claim content hash of image, so only the first of identical images in flight is inserted
+     */
+    private boolean isDuplicate(ImageHeader header)
+    {
+        if((contentHashSet == null) || (header.getContentHash() == null)) return false;
+
+        if(contentHashSet.add(header.getContentHash())) return false;
+
+        log.debug("Skipped duplicate image " + header.getPath());
+
+        loader.addFileSysDuplicate();
+
+        return true;
+    }
+
+    private void insert()
+    {
+        List<ImageHeader> batch = new ArrayList<>();
+
+        try
+        {
+            while(true)
+            {
+                ImageHeader header = headerQueue.poll(BATCH_LINGER_MS, TimeUnit.MILLISECONDS);
+
+                if(header != null) batch.add(header);
+
+                //validation workers put all headers before counting down
+                boolean isFinished = (validationLatch.getCount() == 0) && headerQueue.isEmpty();
+
+                if((batch.size() >= BATCH_INSERT_SIZE) || (!batch.isEmpty() && ((header == null) || isFinished)))
+                {
+                    insertBatch(batch);
+                    batch = new ArrayList<>();
+                }
+                else if(header == null)
+                {
+                    updateProgress();
+                }
+
+                if(isFinished && batch.isEmpty()) break;
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            if(listener == null)
+            {
+                updateProgress();
+                loader.completeFileSysLoading();
+            }
+
+            if(loader.getFileSysDuplicateCount() > 0)
+            {
+                log.info("Skipped " + loader.getFileSysDuplicateCount() + " duplicated images in project " + projectID);
+            }
+
+            completion.complete(null);
+        }
+    }
+
+    private void updateProgress()
+    {
+        if(listener == null) loader.updateFileSysLoadingProgress(processedCount.get());
+    }
+
+    /**
+     * Insert one batch in a transaction and wait for commit, which holds back validation when database is the bottleneck
+     */
+    private void insertBatch(List<ImageHeader> batch) throws InterruptedException
+    {
+        List<Integer> uuidList = new ArrayList<>();
+
+        //pipelines of the same project might run concurrently
+        synchronized(loader)
+        {
+            Integer uuidSeed = loader.getUuidGeneratorSeed();
+
+            for(int i = 1; i <= batch.size(); ++i)
+            {
+                uuidList.add(uuidSeed + i);
+            }
+
+            PortfolioVerticle.updateUUIDGeneratorSeed(projectID, uuidSeed + batch.size());
+        }
+
+        CompletableFuture<Void> commit = new CompletableFuture<>();
+
+        AnnotationVerticle.insertUUIDBatch(jdbcClient, query, projectID, batch, uuidList, ar -> {
+
+            if(ar.succeeded())
+            {
+                if(listener == null)
+                {
+                    loader.pushFileSysNewUUIDList(uuidList);
+                }
+                else
+                {
+                    loader.addUUIDList(uuidList);
+                    listener.onCommit(batch, uuidList);
+                }
+
+                submitThumbnail(batch);
+            }
+            else
+            {
+                log.error("Push " + batch.size() + " data points of project " + projectID + " failed: " + ar.cause().getMessage());
+
+                //release claimed hashes so the images can be imported again
+                if(contentHashSet != null) batch.forEach(header -> contentHashSet.remove(header.getContentHash()));
+            }
+
+            commit.complete(null);
+        });
+
+        try
+        {
+            commit.get();
+        }
+        catch(ExecutionException e)
+        {
+            log.debug("Unexpected failure in waiting batch insertion", e);
+        }
+
+        processedCount.addAndGet(batch.size());
+
+        updateProgress();
+    }
+
+    private void submitThumbnail(List<ImageHeader> batch)
+    {
+        ThumbnailGenerator thumbnailGenerator = ImageHandler.getThumbnailGenerator();
+
+        if(thumbnailGenerator == null) return;
+
+        List<File> imageList = new ArrayList<>();
+
+        batch.forEach(header -> imageList.add(new File(header.getPath())));
+
+        thumbnailGenerator.submit(loader, imageList);
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element)
+    {
+        boolean isInterrupted = false;
+
+        while(true)
+        {
+            try
+            {
+                queue.put(element);
+                break;
+            }
+            catch(InterruptedException e)
+            {
+                isInterrupted = true;
+            }
+        }
+
+        if(isInterrupted) Thread.currentThread().interrupt();
+    }
+}
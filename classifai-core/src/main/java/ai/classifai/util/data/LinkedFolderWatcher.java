@@ -0,0 +1,462 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.data.type.image.DocumentPage;
+import ai.classifai.data.type.image.ImageFileType;
+import ai.classifai.data.type.image.ImageHeader;
+import ai.classifai.database.annotation.AnnotationQuery;
+import ai.classifai.loader.LoaderStatus;
+import ai.classifai.loader.ProjectLoader;
+import ai.classifai.util.ProjectHandler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.ResultSet;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep a project synchronized with a linked folder
+ *
+ * Directories are registered with WatchService. A directory with events is listed again once it stays quiet
+ * for SETTLE_MS, so images still being written are not picked up half way. Directories whose mtime changed are
+ * also rescanned every RESCAN_INTERVAL_MS, for file systems which do not deliver watch events.
+ * Only images not in the project yet are ingested, deleted images are marked invalid and restored ones valid again.
+ * Synchronizing waits for a project load in progress to complete.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class LinkedFolderWatcher
+{
+    private static final long SETTLE_MS = 1000;
+
+    private static final long POLL_MS = 250;
+
+    private static final long RESCAN_INTERVAL_MS = 30000;
+
+    private final Integer projectID;
+    private final ProjectLoader loader;
+
+    @Getter private final File rootFolder;
+
+    private final JDBCClient jdbcClient;
+
+    //null when file system does not support watching
+    private WatchService watchService;
+
+    private final Map<WatchKey, Path> watchKeys = new HashMap<>();
+
+    //known images of project by directory, image path to uuid
+    private final Map<Path, Map<Path, Integer>> knownImages = new HashMap<>();
+
+    //uuid of known images missing from disk
+    private final Set<Integer> missingUUIDSet = new HashSet<>();
+
+    //images failed validation with their mtime, retried only after being modified
+    private final Map<Path, Long> rejectedImages = new HashMap<>();
+
+    //mtime of directory when last listed
+    private final Map<Path, Long> directoryMtime = new HashMap<>();
+
+    //directories to be listed again, with time of last event
+    private final Map<Path, Long> dirtyDirectories = new HashMap<>();
+
+    //results of ingestion reported from pipeline threads, applied on watcher thread
+    private final Queue<ImageHeader> committedHeaders = new ConcurrentLinkedQueue<>();
+    private final Queue<Integer> committedUUIDs = new ConcurrentLinkedQueue<>();
+    private final Queue<File> skippedFiles = new ConcurrentLinkedQueue<>();
+
+    private final Thread thread;
+
+    private volatile boolean isRunning = true;
+
+    public LinkedFolderWatcher(@NonNull Integer projectID, @NonNull File rootFolder, @NonNull JDBCClient jdbcClient)
+    {
+        this.projectID = projectID;
+        this.loader = ProjectHandler.getProjectLoader(projectID);
+        this.rootFolder = rootFolder.getAbsoluteFile();
+        this.jdbcClient = jdbcClient;
+
+        thread = new Thread(this::run, "classifai-linked-folder-" + projectID);
+        thread.setDaemon(true);
+    }
+
+    public void start()
+    {
+        thread.start();
+    }
+
+    public void close()
+    {
+        isRunning = false;
+
+        thread.interrupt();
+    }
+
+    private void run()
+    {
+        try
+        {
+            try
+            {
+                watchService = rootFolder.toPath().getFileSystem().newWatchService();
+            }
+            catch(IOException | UnsupportedOperationException e)
+            {
+                log.info("Watch service not available, linked folder " + rootFolder + " falls back to periodic rescan");
+            }
+
+            //completed project load replaces valid data points, so synchronizing starts after it
+            while(isRunning && (loader.getLoaderStatus() == LoaderStatus.LOADING))
+            {
+                Thread.sleep(POLL_MS);
+            }
+
+            loadKnownImages();
+
+            registerTree(rootFolder.toPath());
+
+            long lastRescan = System.currentTimeMillis();
+
+            while(isRunning)
+            {
+                pollEvents();
+
+                long now = System.currentTimeMillis();
+
+                if(now - lastRescan >= RESCAN_INTERVAL_MS)
+                {
+                    markModifiedDirectories();
+                    lastRescan = now;
+                }
+
+                synchronize(now);
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(Exception e)
+        {
+            log.info("Linked folder " + rootFolder + " of project " + projectID + " stopped", e);
+        }
+        finally
+        {
+            closeWatchService();
+        }
+    }
+
+    private void loadKnownImages() throws Exception
+    {
+        CompletableFuture<ResultSet> query = new CompletableFuture<>();
+
+        jdbcClient.queryWithParams(AnnotationQuery.loadValidProjectUUID(), new JsonArray().add(projectID), fetch -> {
+            if(fetch.succeeded()) query.complete(fetch.result());
+            else query.completeExceptionally(fetch.cause());
+        });
+
+        Path rootPath = rootFolder.toPath();
+
+        Set<Integer> sanityUUIDSet = new HashSet<>(loader.getSanityUUIDList());
+
+        for(JsonArray row : query.get().getResults())
+        {
+            //pages of pdf and tif documents are not watched, their paths never appear in a directory listing
+            if(DocumentPage.isPagePath(row.getString(1))) continue;
+
+            Path path = Paths.get(row.getString(1));
+
+            if(!path.startsWith(rootPath)) continue;
+
+            Integer uuid = row.getInteger(0);
+
+            knownImages.computeIfAbsent(path.getParent(), dir -> new HashMap<>()).put(path, uuid);
+
+            //found invalid when project was loaded, restored once listed on disk
+            if((loader.getLoaderStatus() == LoaderStatus.LOADED) && !sanityUUIDSet.contains(uuid)) missingUUIDSet.add(uuid);
+        }
+    }
+
+    private void registerTree(Path rootPath) throws IOException
+    {
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+            {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e)
+            {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path dir)
+    {
+        if(directoryMtime.containsKey(dir)) return;
+
+        //listed right away
+        directoryMtime.put(dir, -1L);
+        dirtyDirectories.put(dir, 0L);
+
+        if(watchService == null) return;
+
+        try
+        {
+            watchKeys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        }
+        catch(IOException e)
+        {
+            log.debug("Failed in watching " + dir + ", covered by periodic rescan", e);
+        }
+    }
+
+    private void pollEvents() throws InterruptedException
+    {
+        if(watchService == null)
+        {
+            Thread.sleep(POLL_MS);
+            return;
+        }
+
+        WatchKey key = watchService.poll(POLL_MS, TimeUnit.MILLISECONDS);
+
+        long now = System.currentTimeMillis();
+
+        while(key != null)
+        {
+            Path dir = watchKeys.get(key);
+
+            for(WatchEvent<?> event : key.pollEvents())
+            {
+                if(event.kind() == StandardWatchEventKinds.OVERFLOW)
+                {
+                    directoryMtime.keySet().forEach(path -> dirtyDirectories.put(path, now));
+                }
+                else if(dir != null)
+                {
+                    dirtyDirectories.put(dir, now);
+                }
+            }
+
+            //key is invalid once directory is deleted
+            if(!key.reset())
+            {
+                watchKeys.remove(key);
+
+                if(dir != null) dirtyDirectories.put(dir, now);
+            }
+
+            key = watchService.poll();
+        }
+    }
+
+    private void markModifiedDirectories()
+    {
+        long now = System.currentTimeMillis();
+
+        for(Map.Entry<Path, Long> entry : directoryMtime.entrySet())
+        {
+            if(entry.getValue() != entry.getKey().toFile().lastModified())
+            {
+                dirtyDirectories.putIfAbsent(entry.getKey(), now);
+            }
+        }
+    }
+
+    private void synchronize(long now) throws Exception
+    {
+        List<Path> settledDirectories = new ArrayList<>();
+
+        dirtyDirectories.forEach((dir, lastEvent) -> {
+            if(now - lastEvent >= SETTLE_MS) settledDirectories.add(dir);
+        });
+
+        if(settledDirectories.isEmpty()) return;
+
+        List<File> newFiles = new ArrayList<>();
+        List<Integer> deletedUUIDList = new ArrayList<>();
+        List<Integer> restoredUUIDList = new ArrayList<>();
+
+        for(Path dir : settledDirectories)
+        {
+            dirtyDirectories.remove(dir);
+
+            listDirectory(dir, newFiles, deletedUUIDList, restoredUUIDList);
+        }
+
+        if(!deletedUUIDList.isEmpty())
+        {
+            log.info(deletedUUIDList.size() + " images removed from linked folder " + rootFolder);
+            loader.removeSanityUUIDList(deletedUUIDList);
+        }
+
+        if(!restoredUUIDList.isEmpty()) loader.restoreSanityUUIDList(restoredUUIDList);
+
+        if(!newFiles.isEmpty())
+        {
+            log.info("Ingesting " + newFiles.size() + " new images from linked folder " + rootFolder);
+
+            ImageHandler.createPipeline(projectID, new IngestionPipeline.IngestionListener()
+            {
+                @Override
+                public void onCommit(List<ImageHeader> headerList, List<Integer> uuidList)
+                {
+                    committedHeaders.addAll(headerList);
+                    committedUUIDs.addAll(uuidList);
+                }
+
+                @Override
+                public void onSkip(File file)
+                {
+                    skippedFiles.add(file);
+                }
+            }).ingestFiles(newFiles).get();
+
+            applyIngestion();
+        }
+    }
+
+    /**
+     * Compare directory against known images
+     */
+    private void listDirectory(Path dir, List<File> newFiles, List<Integer> deletedUUIDList, List<Integer> restoredUUIDList) throws IOException
+    {
+        if(!Files.isDirectory(dir))
+        {
+            removeDirectory(dir, deletedUUIDList);
+            return;
+        }
+
+        directoryMtime.put(dir, dir.toFile().lastModified());
+
+        Map<Path, Integer> knownInDirectory = knownImages.getOrDefault(dir, Collections.emptyMap());
+
+        Set<Path> presentImages = new HashSet<>();
+
+        String[] extensionFormat = ImageFileType.getImageFileTypes();
+
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir))
+        {
+            for(Path path : stream)
+            {
+                if(Files.isDirectory(path))
+                {
+                    register(path);
+                    continue;
+                }
+
+                if(!FileHandler.isfileSupported(path.toString(), extensionFormat)) continue;
+
+                presentImages.add(path);
+
+                Integer uuid = knownInDirectory.get(path);
+
+                if(uuid == null)
+                {
+                    Long rejectedMtime = rejectedImages.get(path);
+
+                    if((rejectedMtime == null) || (rejectedMtime != path.toFile().lastModified())) newFiles.add(path.toFile());
+                }
+                else if(missingUUIDSet.remove(uuid))
+                {
+                    restoredUUIDList.add(uuid);
+                }
+            }
+        }
+
+        for(Map.Entry<Path, Integer> entry : knownInDirectory.entrySet())
+        {
+            if(!presentImages.contains(entry.getKey()) && missingUUIDSet.add(entry.getValue()))
+            {
+                deletedUUIDList.add(entry.getValue());
+            }
+        }
+
+        rejectedImages.keySet().removeIf(path -> path.getParent().equals(dir) && !presentImages.contains(path));
+    }
+
+    private void removeDirectory(Path dir, List<Integer> deletedUUIDList)
+    {
+        for(Map.Entry<Path, Map<Path, Integer>> entry : knownImages.entrySet())
+        {
+            if(!entry.getKey().startsWith(dir)) continue;
+
+            for(Integer uuid : entry.getValue().values())
+            {
+                if(missingUUIDSet.add(uuid)) deletedUUIDList.add(uuid);
+            }
+        }
+
+        directoryMtime.keySet().removeIf(path -> path.startsWith(dir));
+        dirtyDirectories.keySet().removeIf(path -> path.startsWith(dir));
+        watchKeys.entrySet().removeIf(entry -> entry.getValue().startsWith(dir));
+        rejectedImages.keySet().removeIf(path -> path.startsWith(dir));
+
+        //a directory created again at the same path is picked up by the listing of its parent
+    }
+
+    private void applyIngestion()
+    {
+        ImageHeader header;
+
+        while((header = committedHeaders.poll()) != null)
+        {
+            Path path = header.getFile().toPath();
+
+            knownImages.computeIfAbsent(path.getParent(), dir -> new HashMap<>()).put(path, committedUUIDs.poll());
+        }
+
+        File file;
+
+        while((file = skippedFiles.poll()) != null)
+        {
+            rejectedImages.put(file.toPath(), file.lastModified());
+        }
+    }
+
+    private void closeWatchService()
+    {
+        if(watchService == null) return;
+
+        try
+        {
+            watchService.close();
+        }
+        catch(IOException e)
+        {
+            log.debug("Failed in closing watch service of " + rootFolder, e);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.data.thumbnail.Thumbnail;
+import ai.classifai.data.thumbnail.ThumbnailDecoder;
+import ai.classifai.data.type.image.DocumentPage;
+import ai.classifai.data.type.image.ImageHeader;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Render pages of pdf and tif documents on demand, for data points ingested as document pages
+ *
+ * Full pages are rendered at conversion resolution, so annotation matches images of converted pages, and kept png encoded
+ * in a bounded least recently used cache validated against modification time and size of the document.
+ * A few pdf documents are kept open, so stepping through pages does not parse the document again.
+ * Thumbnails of pdf pages are rendered at reduced resolution, thumbnails of tif pages are decoded with subsampling.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class PageRenderer
+{
+    private static final long PAGE_CACHE_BUDGET = 64L * 1024 * 1024;
+
+    private static final int MAX_OPEN_DOCUMENTS = 2;
+
+    //pdf page is rendered for thumbnail at twice the thumbnail size, same margin as subsampling of images
+    private static final int THUMBNAIL_MARGIN = 2;
+
+    private static class CachedPage
+    {
+        private final byte[] data;
+        private final long mtime;
+        private final long fileSize;
+
+        private CachedPage(byte[] data, long mtime, long fileSize)
+        {
+            this.data = data;
+            this.mtime = mtime;
+            this.fileSize = fileSize;
+        }
+    }
+
+    //PDDocument is not thread safe, pages of the same document render one at a time under its lock
+    private static class OpenDocument
+    {
+        private final PDDocument document;
+        private final PDFRenderer renderer;
+        private final long mtime;
+        private final long fileSize;
+
+        private boolean isClosed = false;
+
+        private OpenDocument(PDDocument document, long mtime, long fileSize)
+        {
+            this.document = document;
+            this.renderer = new PDFRenderer(document);
+            this.mtime = mtime;
+            this.fileSize = fileSize;
+        }
+    }
+
+    private interface RenderedPageHandler<T>
+    {
+        T handle(BufferedImage image, int fullWidth, int fullHeight) throws IOException;
+    }
+
+    //png encoded full pages in access order, guarded by itself
+    private static final Map<String, CachedPage> pageCache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long pageCacheBytes = 0;
+
+    //open pdf documents in access order, guarded by itself
+    private static final Map<String, OpenDocument> openDocuments = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Read headers of all pages of document without rendering, for ingestion
+     *
+     * @param isHashed compute content hash of pages, from content of document and page number
+     * @return header of every page, empty when document could not be read
+     */
+    public static List<ImageHeader> readHeaders(@NonNull File document, boolean isHashed)
+    {
+        try
+        {
+            String documentHash = isHashed ? ImageHeader.hash(document) : null;
+
+            return DocumentPage.isPdf(document) ? readPdfHeaders(document, documentHash) : readTifHeaders(document, documentHash);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            log.info("Document skipped. Failed in reading pages of " + document.getAbsolutePath(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    private static List<ImageHeader> readPdfHeaders(File document, String documentHash) throws IOException
+    {
+        List<ImageHeader> headerList = new ArrayList<>();
+
+        try(PDDocument pdf = PdfHandler.loadDocument(document))
+        {
+            for(int pageIndex = 0; pageIndex < pdf.getNumberOfPages(); ++pageIndex)
+            {
+                int[] size = getRenderSize(pdf.getPage(pageIndex), PdfHandler.DOTS_PER_INCH);
+
+                headerList.add(ImageHeader.readPage(document, pageIndex, size[0], size[1], 3, getPageHash(documentHash, pageIndex)));
+            }
+        }
+
+        return headerList;
+    }
+
+    private static List<ImageHeader> readTifHeaders(File document, String documentHash) throws IOException
+    {
+        List<ImageHeader> headerList = new ArrayList<>();
+
+        try(ImageInputStream input = ImageIO.createImageInputStream(document))
+        {
+            ImageReader reader = getReader(input, document);
+
+            try
+            {
+                int pageCount = reader.getNumImages(true);
+
+                for(int pageIndex = 0; pageIndex < pageCount; ++pageIndex)
+                {
+                    headerList.add(ImageHeader.readPage(document, pageIndex, reader.getWidth(pageIndex), reader.getHeight(pageIndex),
+                            ImageHeader.getDepth(reader, pageIndex), getPageHash(documentHash, pageIndex)));
+                }
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+
+        return headerList;
+    }
+
+    static String getPageHash(String documentHash, int pageIndex)
+    {
+        return (documentHash != null) ? documentHash + "-" + (pageIndex + 1) : null;
+    }
+
+    /**
+     * Get page png encoded at full resolution, from cache or rendered
+     */
+    public static byte[] getPageData(@NonNull String pagePath) throws IOException
+    {
+        File document = DocumentPage.getDocument(pagePath);
+
+        long mtime = document.lastModified();
+        long fileSize = document.length();
+
+        synchronized(pageCache)
+        {
+            CachedPage cachedPage = pageCache.get(pagePath);
+
+            if((cachedPage != null) && (cachedPage.mtime == mtime) && (cachedPage.fileSize == fileSize)) return cachedPage.data;
+        }
+
+        int pageIndex = DocumentPage.getPageIndex(pagePath);
+
+        byte[] data = DocumentPage.isPdf(document) ?
+                renderPdf(document, pageIndex, 0, DecodeScheduler.Priority.INTERACTIVE, (image, fullWidth, fullHeight) -> encode(image)) :
+                encodeTif(document, pageIndex);
+
+        putPageData(pagePath, new CachedPage(data, mtime, fileSize));
+
+        return data;
+    }
+
+    private static void putPageData(String pagePath, CachedPage cachedPage)
+    {
+        //never cache a page larger than the whole budget
+        if(cachedPage.data.length > PAGE_CACHE_BUDGET) return;
+
+        synchronized(pageCache)
+        {
+            CachedPage previous = pageCache.put(pagePath, cachedPage);
+
+            pageCacheBytes += cachedPage.data.length - ((previous != null) ? previous.data.length : 0);
+
+            Iterator<CachedPage> iterator = pageCache.values().iterator();
+
+            while((pageCacheBytes > PAGE_CACHE_BUDGET) && iterator.hasNext())
+            {
+                pageCacheBytes -= iterator.next().data.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Thumbnail of page, with width and height of page at full resolution
+     */
+    public static Thumbnail loadThumbnail(@NonNull String pagePath, int thumbnailSize, @NonNull DecodeScheduler.Priority priority) throws IOException
+    {
+        File document = DocumentPage.getDocument(pagePath);
+        int pageIndex = DocumentPage.getPageIndex(pagePath);
+
+        if(!DocumentPage.isPdf(document)) return ThumbnailDecoder.decode(document, pageIndex, thumbnailSize, priority);
+
+        return renderPdf(document, pageIndex, thumbnailSize * THUMBNAIL_MARGIN, priority,
+                (image, fullWidth, fullHeight) -> ThumbnailDecoder.fromImage(image, fullWidth, fullHeight, thumbnailSize));
+    }
+
+    /**
+     * Render pdf page while holding decode memory for its raster, until the rendered page is handled
+     *
+     * @param maxDimension maximum of rendered width and height, 0 for full resolution
+     */
+    private static <T> T renderPdf(File document, int pageIndex, int maxDimension, DecodeScheduler.Priority priority, RenderedPageHandler<T> handler) throws IOException
+    {
+        while(true)
+        {
+            OpenDocument open = getOpenDocument(document);
+
+            int[] fullSize;
+
+            synchronized(open)
+            {
+                //closed by eviction after it was got
+                if(open.isClosed) continue;
+
+                if(pageIndex >= open.document.getNumberOfPages())
+                {
+                    throw new IOException("Page " + (pageIndex + 1) + " not found in " + document.getAbsolutePath());
+                }
+
+                fullSize = getRenderSize(open.document.getPage(pageIndex), PdfHandler.DOTS_PER_INCH);
+            }
+
+            float dpi = PdfHandler.DOTS_PER_INCH;
+
+            if(maxDimension > 0) dpi = Math.min(dpi, dpi * maxDimension / Math.max(fullSize[0], fullSize[1]));
+
+            long renderCost = DecodeScheduler.estimateCost((int) Math.ceil(fullSize[0] * dpi / PdfHandler.DOTS_PER_INCH),
+                    (int) Math.ceil(fullSize[1] * dpi / PdfHandler.DOTS_PER_INCH));
+
+            DecodeScheduler.Permit permit = DecodeScheduler.acquire(renderCost, priority);
+
+            try
+            {
+                BufferedImage image;
+
+                synchronized(open)
+                {
+                    if(open.isClosed) continue;
+
+                    image = open.renderer.renderImageWithDPI(pageIndex, dpi, ImageType.RGB);
+                }
+
+                //encoded outside of document lock, so the next page renders meanwhile
+                return handler.handle(image, fullSize[0], fullSize[1]);
+            }
+            finally
+            {
+                permit.close();
+            }
+        }
+    }
+
+    /**
+     * Size of page rendered at resolution, as computed by PDFRenderer
+     */
+    private static int[] getRenderSize(PDPage page, float dpi)
+    {
+        PDRectangle cropBox = page.getCropBox();
+
+        float scale = dpi / PdfHandler.POINTS_PER_INCH;
+
+        int width = (int) Math.max(Math.floor(cropBox.getWidth() * scale), 1);
+        int height = (int) Math.max(Math.floor(cropBox.getHeight() * scale), 1);
+
+        int rotation = page.getRotation();
+
+        return ((rotation == 90) || (rotation == 270)) ? new int[]{height, width} : new int[]{width, height};
+    }
+
+    private static OpenDocument getOpenDocument(File document) throws IOException
+    {
+        String key = document.getAbsolutePath();
+
+        long mtime = document.lastModified();
+        long fileSize = document.length();
+
+        synchronized(openDocuments)
+        {
+            OpenDocument open = openDocuments.get(key);
+
+            if((open != null) && (open.mtime == mtime) && (open.fileSize == fileSize)) return open;
+
+            if(open != null) close(openDocuments.remove(key));
+
+            open = new OpenDocument(PdfHandler.loadDocument(document), mtime, fileSize);
+
+            openDocuments.put(key, open);
+
+            Iterator<OpenDocument> iterator = openDocuments.values().iterator();
+
+            while(openDocuments.size() > MAX_OPEN_DOCUMENTS)
+            {
+                OpenDocument eldest = iterator.next();
+                iterator.remove();
+                close(eldest);
+            }
+
+            return open;
+        }
+    }
+
+    private static void close(OpenDocument open)
+    {
+        synchronized(open)
+        {
+            open.isClosed = true;
+
+            try
+            {
+                open.document.close();
+            }
+            catch(IOException e)
+            {
+                log.debug("Failure in closing document", e);
+            }
+        }
+    }
+
+    /**
+     * Decode tif page while holding decode memory for its raster, until the page is encoded
+     */
+    private static byte[] encodeTif(File document, int pageIndex) throws IOException
+    {
+        try(ImageInputStream input = ImageIO.createImageInputStream(document))
+        {
+            ImageReader reader = getReader(input, document);
+
+            try
+            {
+                long decodeCost = DecodeScheduler.estimateCost(reader.getWidth(pageIndex), reader.getHeight(pageIndex));
+
+                DecodeScheduler.Permit permit = DecodeScheduler.acquire(decodeCost, DecodeScheduler.Priority.INTERACTIVE);
+
+                try
+                {
+                    return encode(reader.read(pageIndex));
+                }
+                finally
+                {
+                    permit.close();
+                }
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader getReader(ImageInputStream input, File document) throws IOException
+    {
+        if(input == null) throw new IOException("Document could not be opened: " + document.getAbsolutePath());
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+        if(!readers.hasNext()) throw new IOException("No image reader found for " + document.getAbsolutePath());
+
+        ImageReader reader = readers.next();
+        reader.setInput(input, false, true);
+
+        return reader;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "PNG", out);
+
+        return out.toByteArray();
+    }
+
+    public static void close()
+    {
+        synchronized(openDocuments)
+        {
+            openDocuments.values().forEach(PageRenderer::close);
+            openDocuments.clear();
+        }
+
+        synchronized(pageCache)
+        {
+            pageCache.clear();
+            pageCacheBytes = 0;
+        }
+    }
+}
@@ -16,104 +16,262 @@
 package ai.classifai.util.data;
 
 import ai.classifai.data.type.image.ImageFileType;
-import ai.classifai.ui.launcher.conversion.ConverterLauncher;
-import ai.classifai.ui.launcher.conversion.Task;
-import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.DefaultResourceCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.tools.imageio.ImageIOUtil;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
 
 /**
  * PDF Handler
  *
+ * Pages are rendered in parallel, each render worker with its own PDDocument as PDFBox documents are not thread safe.
+ * Workers of the same document take pages from a shared counter, so the document is loaded once per worker.
+ * Rendered pages are handed to an encoder pool, so encoding of a page overlaps with rendering of the next.
+ * Streams of a document beyond SCRATCH_MAIN_MEMORY are kept in a temp file and page images are not cached,
+ * so heap stays flat regardless of page count.
+ *
  * @author codenamewei
  */
 @Slf4j
-@NoArgsConstructor
 public class PdfHandler
 {
-    private final Integer DOTS_PER_INCH = 300; //standard dots per inch is 300
+    static final int DOTS_PER_INCH = 300; //standard dots per inch is 300
+
+    static final float POINTS_PER_INCH = 72;
+
+    //main memory for streams of each loaded document, small documents stay in memory
+    private static final long SCRATCH_MAIN_MEMORY = 4 * 1024 * 1024;
 
-    public String savePdf2Image(@NonNull File pdfFullPath, String outputPath, @NonNull String extensionFormat)
+    //pages converted from each document at most, 0 for all pages
+    private final int maxPage;
+
+    //checked before each page, conversion stops taking pages once true
+    private final BooleanSupplier isStopped;
+
+    public PdfHandler(int maxPage, @NonNull BooleanSupplier isStopped)
     {
-        String message = null;
+        this.maxPage = maxPage;
+        this.isStopped = isStopped;
+    }
 
-        PDDocument document = null;
+    private static final String SKIPPED_MESSAGE_HEADER = "PDF Skipped. Failed in reading pdf of file: ";
 
+    public static String getSkippedMessage(@NonNull File pdfFullPath, @NonNull Exception e)
+    {
+        log.info(SKIPPED_MESSAGE_HEADER + pdfFullPath, e);
+
+        return SKIPPED_MESSAGE_HEADER + pdfFullPath.getName();
+    }
+
+    /**
+     * Render cost of each page left to convert in page order, pages already converted are left out
+     */
+    public Map<Integer, Long> getPageCostMap(@NonNull File pdfFullPath, String outputPath, @NonNull String extensionFormat) throws IOException
+    {
         String fileName = FileHandler.getFileName(pdfFullPath.getAbsolutePath());
-        try {
-            document = PDDocument.load(pdfFullPath);
-            PDFRenderer pdfRenderer = new PDFRenderer(document);
 
+        String savedPath = getSavedPath(pdfFullPath, outputPath);
+
+        Map<Integer, Long> pageCostMap = new LinkedHashMap<>();
+
+        try(PDDocument document = loadDocument(pdfFullPath))
+        {
             int maxPages = document.getNumberOfPages();
-            if(maxPages > ConverterLauncher.getMaxPage()) maxPages = ConverterLauncher.getMaxPage();
+            if((maxPage > 0) && (maxPages > maxPage)) maxPages = maxPage;
 
             for (int page = 0; page < maxPages; ++page)
             {
-                if(Task.isStop()) break;
-
-                String savedPath;
-
-                if(outputPath == null)
+                if(!getImageSavedFile(savedPath, fileName, page, extensionFormat).exists())
                 {
-                    savedPath = FileHandler.getAbsolutePath(pdfFullPath);
-                }
-                else
-                {
-                    savedPath = outputPath;
+                    pageCostMap.put(page, getRenderCost(document, page));
                 }
+            }
+        }
+
+        return pageCostMap;
+    }
 
-                String imageSavedFullPath = savedPath + File.separator +  fileName + "_" + (page+1) + "." + extensionFormat;
+    /**
+     * Render pages with one document, each page is encoded on encodeExecutor while the next page renders
+     * Workers converting the same file share nextIndex, so each loads the document once and takes pages until none is left.
+     * Stops taking pages once stopped or once any worker failed, returns after all rendered pages are encoded
+     *
+     * @param nextIndex index into pageList of the next page to take, moved past the end on failure to stop the other workers
+     * @param onPageTaken called with each page before it is rendered
+     */
+    public void savePdfPages(@NonNull File pdfFullPath, @NonNull List<Integer> pageList, @NonNull AtomicInteger nextIndex, String outputPath,
+                             @NonNull String extensionFormat, @NonNull ExecutorService encodeExecutor, @NonNull IntConsumer onPageTaken) throws Exception
+    {
+        //all pages taken by other workers, document is not loaded for nothing
+        if(nextIndex.get() >= pageList.size()) return;
 
-                File fImageSavedFullPath = new File(imageSavedFullPath);
+        String fileName = FileHandler.getFileName(pdfFullPath.getAbsolutePath());
 
-                if(fImageSavedFullPath.exists() == false)
-                {
-                    BufferedImage bim = pdfRenderer.renderImageWithDPI(page, DOTS_PER_INCH, ImageType.RGB); //do it needs to be ImageType.COLOR or GRAY?
+        String savedPath = getSavedPath(pdfFullPath, outputPath);
 
-                    if((bim.getWidth() > ImageFileType.getMaxWidth()) || (bim.getHeight() > ImageFileType.getMaxHeight()))
-                    {
-                        document.close();
-                        log.debug("Image width and/or height bigger than " + ImageFileType.getMaxHeight());
-                    }
+        List<Future<Void>> encodeList = new ArrayList<>();
 
-                    // suffix in filename will be used as the file format
-                    ImageIOUtil.writeImage(bim, imageSavedFullPath, DOTS_PER_INCH);
-                }
-            }
+        Exception failure = null;
+
+        try(PDDocument document = loadDocument(pdfFullPath))
+        {
+            PDFRenderer pdfRenderer = new PDFRenderer(document);
+
+            int index;
+
+            while(!isStopped.getAsBoolean() && ((index = nextIndex.getAndIncrement()) < pageList.size()))
+            {
+                int page = pageList.get(index);
+
+                onPageTaken.accept(page);
 
-            document.close();
+                File imageSavedFile = getImageSavedFile(savedPath, fileName, page, extensionFormat);
 
+                encodeList.add(encodeExecutor.submit(renderPage(document, pdfRenderer, page, imageSavedFile)));
+            }
         }
         catch(Exception e)
         {
-            String messageHeader = "PDF Skipped. Failed in reading pdf of file: ";
+            failure = e;
+        }
+
+        //wait for every encode, so decode memory of all rendered pages is released
+        for(Future<Void> encode : encodeList)
+        {
+            try
+            {
+                getResult(encode);
+            }
+            catch(Exception e)
+            {
+                if(failure == null) failure = e;
+            }
+        }
+
+        if(failure != null)
+        {
+            nextIndex.set(pageList.size());
+            throw failure;
+        }
+    }
+
+    /**
+     * Load document with streams spilling to temp file, parsing a scanned document otherwise copies all of its images into heap
+     */
+    static PDDocument loadDocument(File pdfFullPath) throws IOException
+    {
+        PDDocument document = PDDocument.load(pdfFullPath, MemoryUsageSetting.setupMixed(SCRATCH_MAIN_MEMORY));
+
+        document.setResourceCache(new PageResourceCache());
+
+        return document;
+    }
+
+    /**
+     * Fonts and color spaces stay cached across pages, images are freed once their page is rendered
+     */
+    private static class PageResourceCache extends DefaultResourceCache
+    {
+        @Override
+        public void put(COSObject indirect, PDXObject xobject)
+        {
+            //not cached
+        }
+    }
+
+    private static String getSavedPath(File pdfFullPath, String outputPath)
+    {
+        return (outputPath == null) ? FileHandler.getAbsolutePath(pdfFullPath) : outputPath;
+    }
+
+    private static File getImageSavedFile(String savedPath, String fileName, int page, String extensionFormat)
+    {
+        return new File(savedPath + File.separator +  fileName + "_" + (page+1) + "." + extensionFormat);
+    }
 
-            message = messageHeader + pdfFullPath.getName();
+    /**
+     * Rendered raster size from crop box of page at rendering resolution
+     */
+    private long getRenderCost(PDDocument document, int page)
+    {
+        PDRectangle cropBox = document.getPage(page).getCropBox();
+
+        return DecodeScheduler.estimateCost(Math.round(cropBox.getWidth() / POINTS_PER_INCH * DOTS_PER_INCH),
+                Math.round(cropBox.getHeight() / POINTS_PER_INCH * DOTS_PER_INCH));
+    }
+
+    /**
+     * Render page while holding decode memory for its raster, memory is released after the page is encoded
+     *
+     * @return encoding of rendered page
+     */
+    private Callable<Void> renderPage(PDDocument document, PDFRenderer pdfRenderer, int page, File imageSavedFile) throws IOException
+    {
+        DecodeScheduler.Permit permit = DecodeScheduler.acquire(getRenderCost(document, page), DecodeScheduler.Priority.BATCH);
+
+        BufferedImage bim;
 
-            log.info(messageHeader + pdfFullPath, e);
+        try
+        {
+            bim = pdfRenderer.renderImageWithDPI(page, DOTS_PER_INCH, ImageType.RGB); //do it needs to be ImageType.COLOR or GRAY?
         }
-        finally
+        catch(Exception e)
+        {
+            permit.close();
+            throw e;
+        }
+
+        if((bim.getWidth() > ImageFileType.getMaxWidth()) || (bim.getHeight() > ImageFileType.getMaxHeight()))
         {
+            log.debug("Image width and/or height bigger than " + ImageFileType.getMaxHeight());
+        }
+
+        return () -> {
             try
             {
-                if(document != null)
+                // suffix in filename will be used as the file format
+                if(!ImageIOUtil.writeImage(bim, imageSavedFile.getAbsolutePath(), DOTS_PER_INCH))
                 {
-                    document.close();
+                    throw new IOException("Save PDF page failed: " + imageSavedFile);
                 }
             }
-            catch(Exception e)
+            finally
             {
-                log.info("Error when closing pdf. ", e);
+                permit.close();
             }
-        }
 
-        return message;
+            return null;
+        };
+    }
+
+    private static void getResult(Future<Void> future) throws Exception
+    {
+        try
+        {
+            future.get();
+        }
+        catch(ExecutionException e)
+        {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
     }
 }
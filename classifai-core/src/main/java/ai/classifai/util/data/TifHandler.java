@@ -16,9 +16,6 @@
 package ai.classifai.util.data;
 
 import ai.classifai.data.type.image.ImageFileType;
-import ai.classifai.ui.launcher.conversion.ConverterLauncher;
-import ai.classifai.ui.launcher.conversion.Task;
-import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,28 +24,102 @@ import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 /**
- * PDF Handler
+ * TIF Handler
+ *
+ * Pages are decoded and written one at a time with a single reader over the file.
+ * Metadata of pages is not read, so memory stays bounded by one decoded page regardless of page count.
  *
  * @author codenamewei
  */
 @Slf4j
-@NoArgsConstructor
 public class TifHandler
 {
+    //pages converted from each document at most, 0 for all pages
+    private final int maxPage;
+
+    //checked before each page, conversion stops taking pages once true
+    private final BooleanSupplier isStopped;
+
+    public TifHandler(int maxPage, @NonNull BooleanSupplier isStopped)
+    {
+        this.maxPage = maxPage;
+        this.isStopped = isStopped;
+    }
+
+    /**
+     * Decode cost of each page left to convert in page order, from page dimensions in tif directory without decoding pixels
+     * Pages already converted are left out
+     */
+    public Map<Integer, Long> getPageCostMap(@NonNull File tifFullPath, String outputPath, @NonNull String extensionFormat) throws IOException
+    {
+        String fileName = FileHandler.getFileName(tifFullPath.getAbsolutePath());
+
+        String savedPath = (outputPath == null) ? FileHandler.getAbsolutePath(tifFullPath) : outputPath;
+
+        Map<Integer, Long> pageCostMap = new LinkedHashMap<>();
+
+        try(ImageInputStream is = ImageIO.createImageInputStream(tifFullPath))
+        {
+            if(is == null) return pageCostMap;
+
+            Iterator<ImageReader> iterator = ImageIO.getImageReaders(is);
+
+            if(!iterator.hasNext()) return pageCostMap;
+
+            ImageReader reader = iterator.next();
+
+            try
+            {
+                reader.setInput(is, false, true);
+
+                int maxPages = getMaxPages(reader);
+
+                for(int page = 0; page < maxPages; ++page)
+                {
+                    File imageSavedFile = new File(savedPath + File.separator +  fileName + "_" + (page+1) + "." + extensionFormat);
+
+                    if(!imageSavedFile.exists())
+                    {
+                        pageCostMap.put(page, DecodeScheduler.estimateCost(reader.getWidth(page), reader.getHeight(page)));
+                    }
+                }
+
+                return pageCostMap;
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    private int getMaxPages(ImageReader reader) throws IOException
+    {
+        int maxPages = reader.getNumImages(true);
+
+        return ((maxPage > 0) && (maxPages > maxPage)) ? maxPage : maxPages;
+    }
+
     public String saveTif2Image(@NonNull File tifFullPath, String outputPath, @NonNull String extensionFormat)
     {
         String message = null;
         String fileName = FileHandler.getFileName(tifFullPath.getAbsolutePath());
 
-        try {
+        ImageReader reader = null;
+
+        try(ImageInputStream is = ImageIO.createImageInputStream(tifFullPath))
+        {
             List<File> tif2Images = new ArrayList<>();
 
-            ImageInputStream is = ImageIO.createImageInputStream(tifFullPath);
             if (is == null || is.length() == 0){
                 return message;
             }
@@ -58,16 +129,14 @@ public class TifHandler
                 return message;
             }
 
-            ImageReader reader = iterator.next();
-            reader.setInput(is);
-
-            int maxPages = reader.getNumImages(true);
+            reader = iterator.next();
+            reader.setInput(is, false, true);
 
-            if(maxPages > ConverterLauncher.getMaxPage()) maxPages = ConverterLauncher.getMaxPage();
+            int maxPages = getMaxPages(reader);
 
             for (int page = 0; page < maxPages; ++page)
             {
-                if(Task.isStop()) break;
+                if(isStopped.getAsBoolean()) break;
 
                 String savedPath;
                 if(outputPath == null)
@@ -85,26 +154,37 @@ public class TifHandler
 
                 if(fImageSavedFullPath.exists() == false)
                 {
-                    BufferedImage bim = reader.read(page);
+                    long decodeCost = DecodeScheduler.estimateCost(reader.getWidth(page), reader.getHeight(page));
 
-                    if((bim.getWidth() > ImageFileType.getMaxWidth()) || (bim.getHeight() > ImageFileType.getMaxHeight()))
-                    {
-                        log.debug("Image width and/or height bigger than " + ImageFileType.getMaxHeight());
-                    }
-
-                    // suffix in filename will be used as the file format
-                    boolean bSavedSuccess = ImageIO.write(bim, extensionFormat, new File(imageSavedFullPath));
+                    DecodeScheduler.Permit permit = DecodeScheduler.acquire(decodeCost, DecodeScheduler.Priority.BATCH);
 
-                    if(!bSavedSuccess)
+                    try
                     {
-                        String messageHeader = "Save TIF image failed: ";
-                        message = messageHeader + tifFullPath.getName();
-                        log.info(messageHeader + fImageSavedFullPath);
-                        throw new Exception(messageHeader + fImageSavedFullPath);
+                        BufferedImage bim = reader.read(page);
+
+                        if((bim.getWidth() > ImageFileType.getMaxWidth()) || (bim.getHeight() > ImageFileType.getMaxHeight()))
+                        {
+                            log.debug("Image width and/or height bigger than " + ImageFileType.getMaxHeight());
+                        }
+
+                        // suffix in filename will be used as the file format
+                        boolean bSavedSuccess = ImageIO.write(bim, extensionFormat, new File(imageSavedFullPath));
+
+                        if(!bSavedSuccess)
+                        {
+                            String messageHeader = "Save TIF image failed: ";
+                            message = messageHeader + tifFullPath.getName();
+                            log.info(messageHeader + fImageSavedFullPath);
+                            throw new Exception(messageHeader + fImageSavedFullPath);
+                        }
+                        else
+                        {
+                            tif2Images.add(fImageSavedFullPath);
+                        }
                     }
-                    else
+                    finally
                     {
-                        tif2Images.add(fImageSavedFullPath);
+                        permit.close();
                     }
                 }
             }
@@ -114,6 +194,10 @@ public class TifHandler
         {
             log.info("Tif Skipped. Failed in reading tif of file: " + tifFullPath, e);
         }
+        finally
+        {
+            if(reader != null) reader.dispose();
+        }
         return message;
     }
 }
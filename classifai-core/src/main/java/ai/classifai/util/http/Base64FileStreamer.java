@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.http;
+
+import ai.classifai.util.message.ReplyHandler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Stream image file as base64 data uri inside a json body
+ *
+ * File is read in fixed size chunks, each chunk is encoded and written to the chunked response right away,
+ * so memory stays constant regardless of image size. Reading is paused while the response write queue is full.
+ *
+ * @author codenamewei
+ */
+@Slf4j
+public class Base64FileStreamer
+{
+    //multiple of 3, so every chunk but the last is encoded without padding
+    private static final int CHUNK_SIZE = 48 * 1024;
+
+    private static final Base64.Encoder ENCODER = Base64.getEncoder();
+
+    private final RoutingContext context;
+    private final File file;
+
+    private AsyncFile asyncFile;
+
+    private final ChunkEncoder encoder = new ChunkEncoder();
+
+    private boolean isClosed = false;
+
+    public Base64FileStreamer(@NonNull RoutingContext context, @NonNull File file)
+    {
+        this.context = context;
+        this.file = file;
+    }
+
+    /**
+     * Respond with fields of reply followed by data uri of file under dataURIParam
+     */
+    public void stream(@NonNull JsonObject reply, @NonNull String dataURIParam, @NonNull String dataURIHeader)
+    {
+        OpenOptions options = new OpenOptions().setRead(true).setWrite(false).setCreate(false);
+
+        context.vertx().fileSystem().open(file.getAbsolutePath(), options, open -> {
+
+            if(open.failed())
+            {
+                log.debug("Failure in opening " + file.getAbsolutePath(), open.cause());
+                HTTPResponseHandler.configureOK(context, ReplyHandler.reportUserDefinedError("Failure in reading image file."));
+                return;
+            }
+
+            asyncFile = open.result();
+            asyncFile.setReadBufferSize(CHUNK_SIZE);
+
+            HttpServerResponse response = context.response();
+
+            response.setStatusCode(HTTPResponseCode.ok());
+            response.putHeader("Content-Type", "application/json");
+            response.setChunked(true);
+
+            response.closeHandler(v -> close());
+
+            //json fields without closing brace, data uri string is left open for the chunks
+            String fields = reply.encode();
+            String separator = reply.isEmpty() ? "" : ",";
+
+            response.write(fields.substring(0, fields.length() - 1) + separator + "\"" + dataURIParam + "\":\"" + dataURIHeader);
+
+            asyncFile.handler(this::writeChunk);
+            asyncFile.exceptionHandler(this::abort);
+            asyncFile.endHandler(v -> end());
+        });
+    }
+
+    /**
+     * Base64 encoding of a byte stream arriving in chunks of arbitrary length
+     */
+    static class ChunkEncoder
+    {
+        //bytes left over from the previous chunk when a read is not a multiple of 3
+        private byte[] remainder = new byte[0];
+
+        /**
+         * @return encoding of remainder and chunk up to the last multiple of 3, without padding
+         */
+        byte[] encode(byte[] bytes)
+        {
+            if(remainder.length > 0)
+            {
+                byte[] joined = new byte[remainder.length + bytes.length];
+
+                System.arraycopy(remainder, 0, joined, 0, remainder.length);
+                System.arraycopy(bytes, 0, joined, remainder.length, bytes.length);
+
+                bytes = joined;
+            }
+
+            int encodedLength = bytes.length - (bytes.length % 3);
+
+            remainder = new byte[bytes.length - encodedLength];
+            System.arraycopy(bytes, encodedLength, remainder, 0, remainder.length);
+
+            return ENCODER.encode(encodedLength == bytes.length ? bytes : Arrays.copyOf(bytes, encodedLength));
+        }
+
+        /**
+         * @return padded encoding of remainder at end of stream
+         */
+        byte[] end()
+        {
+            byte[] encoded = ENCODER.encode(remainder);
+
+            remainder = new byte[0];
+
+            return encoded;
+        }
+    }
+
+    private void writeChunk(Buffer chunk)
+    {
+        HttpServerResponse response = context.response();
+
+        response.write(Buffer.buffer(encoder.encode(chunk.getBytes())));
+
+        if(response.writeQueueFull())
+        {
+            asyncFile.pause();
+            response.drainHandler(v -> asyncFile.resume());
+        }
+    }
+
+    private void end()
+    {
+        close();
+
+        HttpServerResponse response = context.response();
+
+        response.write(Buffer.buffer(encoder.end()));
+        response.end("\"}");
+    }
+
+    /**
+     * Status line is already sent, so connection is reset to let client detect a truncated body
+     */
+    private void abort(Throwable cause)
+    {
+        log.error("Failure in streaming " + file.getAbsolutePath(), cause);
+
+        close();
+
+        context.response().close();
+    }
+
+    private void close()
+    {
+        if(isClosed) return;
+
+        isClosed = true;
+
+        asyncFile.close();
+    }
+}
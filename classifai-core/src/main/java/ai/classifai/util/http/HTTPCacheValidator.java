@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.http;
+
+import ai.classifai.util.type.AnnotationType;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import lombok.NonNull;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ETag and Last-Modified validators for image and annotation responses
+ *
+ * Validators derive from file size and mtime of the image, and for responses carrying annotation,
+ * from an in-memory annotation version and server start time. Image path of each data point is remembered
+ * after first response, so conditional requests are answered with 304 without database query or image decoding.
+ * Image path is forgotten when its data point or project is deleted.
+ *
+ * @author codenamewei
+ */
+public class HTTPCacheValidator
+{
+    //annotation version is kept in memory, restart invalidates all validators carrying annotation
+    private static final long SERVER_START_TIME = System.currentTimeMillis();
+
+    private static final Map<String, String> IMAGE_PATH = new ConcurrentHashMap<>();
+
+    //last annotation update time in millis, bumped to stay unique within same millisecond
+    private static final Map<String, Long> ANNOTATION_VERSION = new ConcurrentHashMap<>();
+
+    private static String getKey(AnnotationType annotationType, Integer projectID, Integer uuid)
+    {
+        return annotationType.ordinal() + ":" + projectID + ":" + uuid;
+    }
+
+    public static void registerImagePath(@NonNull AnnotationType annotationType, @NonNull Integer projectID, @NonNull Integer uuid, @NonNull String imagePath)
+    {
+        IMAGE_PATH.put(getKey(annotationType, projectID, uuid), imagePath);
+    }
+
+    public static String getImagePath(@NonNull AnnotationType annotationType, @NonNull Integer projectID, @NonNull Integer uuid)
+    {
+        return IMAGE_PATH.get(getKey(annotationType, projectID, uuid));
+    }
+
+    /**
+     * Forget deleted data points, so their conditional requests go to database instead of being answered with 304
+     */
+    public static void removeImagePath(@NonNull Integer projectID, @NonNull List<Integer> uuidList)
+    {
+        for(AnnotationType annotationType : AnnotationType.values())
+        {
+            for(Integer uuid : uuidList)
+            {
+                String key = getKey(annotationType, projectID, uuid);
+
+                IMAGE_PATH.remove(key);
+                ANNOTATION_VERSION.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forget all data points of deleted project
+     */
+    public static void removeProject(@NonNull Integer projectID)
+    {
+        //key without annotation type
+        String projectKey = ":" + projectID + ":";
+
+        IMAGE_PATH.keySet().removeIf(key -> key.substring(key.indexOf(':')).startsWith(projectKey));
+        ANNOTATION_VERSION.keySet().removeIf(key -> key.substring(key.indexOf(':')).startsWith(projectKey));
+    }
+
+    /**
+     * Invalidate validators carrying annotation of data point. Call after annotation update is visible to reads.
+     */
+    public static void updateAnnotationVersion(@NonNull AnnotationType annotationType, @NonNull Integer projectID, @NonNull Integer uuid)
+    {
+        ANNOTATION_VERSION.merge(getKey(annotationType, projectID, uuid), System.currentTimeMillis(),
+                (previous, now) -> Math.max(previous + 1, now));
+    }
+
+    /**
+     * @return annotation version to be snapshotted before reading annotation from database
+     */
+    public static long getAnnotationVersion(@NonNull AnnotationType annotationType, @NonNull Integer projectID, @NonNull Integer uuid)
+    {
+        return ANNOTATION_VERSION.getOrDefault(getKey(annotationType, projectID, uuid), SERVER_START_TIME);
+    }
+
+    /**
+     * @param annotationVersion annotation version snapshot, or null when response does not carry annotation
+     * @param variant distinguishes representations of the same image, e.g. thumbnail size
+     */
+    public static String getEntityTag(@NonNull File image, Long annotationVersion, @NonNull String variant)
+    {
+        StringBuilder builder = new StringBuilder("\"")
+                .append(Long.toHexString(image.length())).append('-')
+                .append(Long.toHexString(image.lastModified()));
+
+        if(annotationVersion != null)
+        {
+            builder.append('-').append(Long.toHexString(SERVER_START_TIME))
+                    .append('-').append(Long.toHexString(annotationVersion));
+        }
+
+        return builder.append('-').append(variant).append('"').toString();
+    }
+
+    public static long getLastModified(@NonNull File image, Long annotationVersion)
+    {
+        return (annotationVersion != null) ? Math.max(image.lastModified(), annotationVersion) : image.lastModified();
+    }
+
+    public static void putValidators(@NonNull RoutingContext context, @NonNull String entityTag, long lastModified)
+    {
+        HttpServerResponse response = context.response();
+
+        response.putHeader("ETag", entityTag);
+        response.putHeader("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneOffset.UTC)));
+    }
+
+    /**
+     * If-None-Match takes precedence over If-Modified-Since
+     */
+    public static boolean isNotModified(@NonNull RoutingContext context, @NonNull String entityTag, long lastModified)
+    {
+        String ifNoneMatch = context.request().getHeader("If-None-Match");
+
+        if(ifNoneMatch != null)
+        {
+            if(ifNoneMatch.trim().equals("*")) return true;
+
+            for(String tag : ifNoneMatch.split(","))
+            {
+                String candidate = tag.trim();
+
+                //weak comparison
+                if(candidate.startsWith("W/")) candidate = candidate.substring(2);
+
+                if(candidate.equals(entityTag)) return true;
+            }
+
+            return false;
+        }
+
+        String ifModifiedSince = context.request().getHeader("If-Modified-Since");
+
+        if(ifModifiedSince != null)
+        {
+            try
+            {
+                long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+
+                //http dates have second precision
+                return (lastModified / 1000) <= (since / 1000);
+            }
+            catch(DateTimeParseException e)
+            {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Answer with 304 when validators of cached response still match
+     *
+     * @return true when response is ended
+     */
+    public static boolean configureNotModified(@NonNull RoutingContext context, @NonNull String entityTag, long lastModified)
+    {
+        if(!isNotModified(context, entityTag, lastModified)) return false;
+
+        putValidators(context, entityTag, lastModified);
+
+        context.response().setStatusCode(HTTPResponseCode.notModified()).end();
+
+        return true;
+    }
+}
@@ -33,6 +33,10 @@ public class HTTPResponseCode{
 
         STATUS_CODE.put("OK", 200);
         STATUS_CODE.put("OK_NO_CONTENT", 204);
+        STATUS_CODE.put("PARTIAL_CONTENT", 206);
+        STATUS_CODE.put("NOT_MODIFIED", 304);
+        STATUS_CODE.put("NOT_FOUND", 404);
+        STATUS_CODE.put("RANGE_NOT_SATISFIABLE", 416);
     }
 
     public static Integer ok()
@@ -40,4 +44,24 @@ public class HTTPResponseCode{
         return STATUS_CODE.get("OK");
     }
 
+    public static Integer partialContent()
+    {
+        return STATUS_CODE.get("PARTIAL_CONTENT");
+    }
+
+    public static Integer notModified()
+    {
+        return STATUS_CODE.get("NOT_MODIFIED");
+    }
+
+    public static Integer notFound()
+    {
+        return STATUS_CODE.get("NOT_FOUND");
+    }
+
+    public static Integer rangeNotSatisfiable()
+    {
+        return STATUS_CODE.get("RANGE_NOT_SATISFIABLE");
+    }
+
 }
@@ -16,10 +16,16 @@
 package ai.classifai.util.http;
 
 import ai.classifai.util.message.ReplyHandler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import lombok.NonNull;
 
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * Configure response to send back to client in a more systematic manner
  *
@@ -27,6 +33,12 @@ import lombok.NonNull;
  */
 public class HTTPResponseHandler
 {
+    private static final String BYTE_RANGE_PREFIX = "bytes=";
+
+    //first-byte-pos "-" last-byte-pos, either may be absent
+    private static final Pattern BYTE_RANGE_SPEC = Pattern.compile("(\\d*)\\s*-\\s*(\\d*)");
+
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
 
     public static void configureOK(@NonNull RoutingContext context, JsonObject jsonObject)
     {
@@ -40,4 +52,119 @@ public class HTTPResponseHandler
         configureOK(context, ReplyHandler.getOkReply());
     }
 
+    public static void configureBytes(@NonNull RoutingContext context, @NonNull byte[] data, @NonNull String contentType)
+    {
+        context.response().setStatusCode(HTTPResponseCode.ok());
+        context.response().putHeader("Content-Type", contentType);
+        context.response().end(Buffer.buffer(data));
+    }
+
+    /**
+     * Stream file as binary body with sendFile, zero-copy where supported by platform
+     * Supports a single byte range (Range: bytes=start-end, bytes=start-, bytes=-suffix),
+     * multiple or malformed ranges are answered with the whole file, a range starting beyond the file with 416
+     */
+    public static void configureFile(@NonNull RoutingContext context, @NonNull File file, @NonNull String contentType)
+    {
+        HttpServerResponse response = context.response();
+
+        if(!file.isFile())
+        {
+            response.setStatusCode(HTTPResponseCode.notFound()).end();
+            return;
+        }
+
+        long fileLength = file.length();
+
+        response.putHeader("Accept-Ranges", "bytes");
+
+        String range = context.request().getHeader("Range");
+
+        if((range == null) || !range.startsWith(BYTE_RANGE_PREFIX) || range.contains(","))
+        {
+            response.setStatusCode(HTTPResponseCode.ok());
+            response.putHeader("Content-Type", contentType);
+            response.sendFile(file.getAbsolutePath());
+            return;
+        }
+
+        long[] byteRange = parseByteRange(range.substring(BYTE_RANGE_PREFIX.length()).trim(), fileLength);
+
+        //malformed range is ignored and answered with the whole file (RFC 7233 section 3.1)
+        if(byteRange == null)
+        {
+            response.setStatusCode(HTTPResponseCode.ok());
+            response.putHeader("Content-Type", contentType);
+            response.sendFile(file.getAbsolutePath());
+            return;
+        }
+
+        if(byteRange.length == 0)
+        {
+            response.setStatusCode(HTTPResponseCode.rangeNotSatisfiable());
+            response.putHeader("Content-Range", "bytes */" + fileLength);
+            response.end();
+            return;
+        }
+
+        long start = byteRange[0];
+        long end = byteRange[1];
+
+        response.setStatusCode(HTTPResponseCode.partialContent());
+        response.putHeader("Content-Type", contentType);
+        response.putHeader("Content-Range", "bytes " + start + "-" + end + "/" + fileLength);
+        response.sendFile(file.getAbsolutePath(), start, end - start + 1);
+    }
+
+    /**
+     * @return inclusive [start, end] clamped to file length, empty when well-formed but unsatisfiable, null when malformed
+     */
+    static long[] parseByteRange(String byteRange, long fileLength)
+    {
+        Matcher matcher = BYTE_RANGE_SPEC.matcher(byteRange);
+
+        if(!matcher.matches()) return null;
+
+        String startValue = matcher.group(1);
+        String endValue = matcher.group(2);
+
+        //both empty as in "bytes=-"
+        if(startValue.isEmpty() && endValue.isEmpty()) return null;
+
+        try
+        {
+            long start;
+            long end;
+
+            if(startValue.isEmpty())
+            {
+                //suffix range: last n bytes
+                long suffixLength = Long.parseLong(endValue);
+
+                if((suffixLength == 0) || (fileLength == 0)) return UNSATISFIABLE_RANGE;
+
+                start = Math.max(0, fileLength - suffixLength);
+                end = fileLength - 1;
+            }
+            else
+            {
+                start = Long.parseLong(startValue);
+                end = endValue.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endValue);
+
+                //last byte before first byte is invalid syntax rather than unsatisfiable
+                if(end < start) return null;
+
+                if(start >= fileLength) return UNSATISFIABLE_RANGE;
+
+                end = Math.min(end, fileLength - 1);
+            }
+
+            return new long[]{start, end};
+        }
+        catch(NumberFormatException e)
+        {
+            //positions beyond long range
+            return null;
+        }
+    }
 }
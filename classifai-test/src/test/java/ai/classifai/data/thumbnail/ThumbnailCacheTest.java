@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.thumbnail;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Byte budget, frequency based eviction and validation of thumbnail cache
+ *
+ * @author codenamewei
+ */
+public class ThumbnailCacheTest
+{
+    private static final int THUMBNAIL_SIZE = 200;
+
+    //cost of an entry is fixed overhead of 256 bytes, path and values at two bytes per char
+    private static final int VALUE_LENGTH = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, String> createImgData(char fill)
+    {
+        return Collections.singletonMap("img_thumbnail", String.valueOf(fill).repeat(VALUE_LENGTH));
+    }
+
+    private static long getCost(String imagePath)
+    {
+        return 256 + (imagePath.length() + VALUE_LENGTH) * 2L;
+    }
+
+    private String[] createImages(int count) throws Exception
+    {
+        String[] imagePaths = new String[count];
+
+        for(int i = 0; i < count; ++i)
+        {
+            //same path length so that all entries cost the same
+            File image = folder.newFile(String.format("%03d.jpg", i));
+            Files.write(image.toPath(), image.getName().getBytes(StandardCharsets.UTF_8));
+
+            imagePaths[i] = image.getAbsolutePath();
+        }
+
+        return imagePaths;
+    }
+
+    @Test
+    public void leastFrequentlyUsedEntryIsEvicted() throws Exception
+    {
+        String[] imagePaths = createImages(5);
+
+        long cost = getCost(imagePaths[0]);
+
+        //room for four and a half entries, eviction drops usage to 90% of it
+        ThumbnailCache cache = new ThumbnailCache(cost * 9 / 2);
+
+        for(int i = 0; i < 4; ++i)
+        {
+            cache.put(imagePaths[i], THUMBNAIL_SIZE, createImgData('a'));
+        }
+
+        for(int access = 0; access < 3; ++access)
+        {
+            for(int i = 0; i < 3; ++i)
+            {
+                assertNotNull(cache.get(imagePaths[i], THUMBNAIL_SIZE));
+            }
+        }
+
+        cache.put(imagePaths[4], THUMBNAIL_SIZE, createImgData('b'));
+
+        JsonObject stats = cache.getStats();
+
+        assertEquals(1L, (long) stats.getLong("eviction"));
+        assertEquals(4, (int) stats.getInteger("entries"));
+        assertTrue(stats.getLong("used_bytes") <= cost * 9 / 2);
+
+        //frequently used entries survive, one of the entries used once is evicted
+        for(int i = 0; i < 3; ++i)
+        {
+            assertTrue(cache.contains(imagePaths[i], THUMBNAIL_SIZE));
+        }
+
+        assertTrue(cache.contains(imagePaths[3], THUMBNAIL_SIZE) ^ cache.contains(imagePaths[4], THUMBNAIL_SIZE));
+    }
+
+    @Test
+    public void usageStaysWithinBudget() throws Exception
+    {
+        String[] imagePaths = createImages(50);
+
+        long budget = getCost(imagePaths[0]) * 10;
+
+        ThumbnailCache cache = new ThumbnailCache(budget);
+
+        for(String imagePath : imagePaths)
+        {
+            cache.put(imagePath, THUMBNAIL_SIZE, createImgData('a'));
+
+            assertTrue(cache.getStats().getLong("used_bytes") <= budget);
+        }
+
+        JsonObject stats = cache.getStats();
+
+        assertTrue(stats.getLong("eviction") >= 40);
+        assertEquals(stats.getInteger("entries") * getCost(imagePaths[0]), (long) stats.getLong("used_bytes"));
+    }
+
+    @Test
+    public void replacedEntryIsAccountedOnce() throws Exception
+    {
+        String[] imagePaths = createImages(1);
+
+        ThumbnailCache cache = new ThumbnailCache(1024 * 1024);
+
+        cache.put(imagePaths[0], THUMBNAIL_SIZE, createImgData('a'));
+        cache.put(imagePaths[0], THUMBNAIL_SIZE, createImgData('b'));
+
+        assertEquals(getCost(imagePaths[0]), (long) cache.getStats().getLong("used_bytes"));
+        assertEquals(createImgData('b'), cache.get(imagePaths[0], THUMBNAIL_SIZE));
+    }
+
+    @Test
+    public void entryLargerThanBudgetIsNotCached() throws Exception
+    {
+        String[] imagePaths = createImages(1);
+
+        ThumbnailCache cache = new ThumbnailCache(getCost(imagePaths[0]) - 1);
+
+        cache.put(imagePaths[0], THUMBNAIL_SIZE, createImgData('a'));
+
+        assertNull(cache.get(imagePaths[0], THUMBNAIL_SIZE));
+        assertEquals(0L, (long) cache.getStats().getLong("used_bytes"));
+    }
+
+    @Test
+    public void changedImageIsInvalidated() throws Exception
+    {
+        String[] imagePaths = createImages(1);
+
+        ThumbnailCache cache = new ThumbnailCache(1024 * 1024);
+
+        cache.put(imagePaths[0], THUMBNAIL_SIZE, createImgData('a'));
+
+        assertNotNull(cache.get(imagePaths[0], THUMBNAIL_SIZE));
+
+        Files.write(new File(imagePaths[0]).toPath(), "changed content".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(cache.get(imagePaths[0], THUMBNAIL_SIZE));
+
+        JsonObject stats = cache.getStats();
+
+        assertEquals(1L, (long) stats.getLong("hit"));
+        assertEquals(1L, (long) stats.getLong("miss"));
+        assertEquals(0, (int) stats.getInteger("entries"));
+        assertEquals(0L, (long) stats.getLong("used_bytes"));
+    }
+}
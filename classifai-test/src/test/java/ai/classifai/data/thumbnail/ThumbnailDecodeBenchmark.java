@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.thumbnail;
+
+import ai.classifai.util.data.DecodeScheduler;
+import ai.classifai.util.data.ImageHandler;
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * JMH benchmark of thumbnail generation, subsampled decode against the full decode and smooth scaling it replaced
+ *
+ * Not part of the default test run. Run with
+ * mvn -P test test -pl classifai-test -am -Dtest=ThumbnailDecodeBenchmark -Dbenchmark=true -Dsurefire.failIfNoSpecifiedTests=false
+ * Runs in the surefire JVM (no JMH fork) as the test classpath is not available to a forked JVM, JMH prints the result table
+ *
+ * @author codenamewei
+ */
+public class ThumbnailDecodeBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class SourceImage
+    {
+        @Param({"jpg", "png"})
+        public String format;
+
+        @Param({"1920", "4000"})
+        public int width;
+
+        File file;
+
+        int thumbnailSize;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException
+        {
+            int height = width * 3 / 4;
+
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            Random random = new Random(width);
+
+            for(int i = 0; i < 500; ++i)
+            {
+                graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+                graphics.fillOval(random.nextInt(width), random.nextInt(height), random.nextInt(width / 4) + 1, random.nextInt(height / 4) + 1);
+            }
+            graphics.dispose();
+
+            file = Files.createTempFile("classifai-decode", "." + format).toFile();
+            ImageIO.write(image, format, file);
+
+            thumbnailSize = ImageHandler.getDefaultThumbnailSize();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException
+        {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Thumbnail subsampledDecode(SourceImage source) throws IOException
+    {
+        return ThumbnailDecoder.decode(source.file, source.thumbnailSize, DecodeScheduler.Priority.INTERACTIVE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BufferedImage fullDecodeSmoothScale(SourceImage source) throws IOException
+    {
+        BufferedImage img = ImageIO.read(source.file);
+
+        int thumbnailWidth = source.thumbnailSize;
+        int thumbnailHeight = source.thumbnailSize;
+
+        if(img.getHeight() > img.getWidth())
+        {
+            thumbnailWidth = thumbnailHeight * img.getWidth() / img.getHeight();
+        }
+        else
+        {
+            thumbnailHeight = thumbnailWidth * img.getHeight() / img.getWidth();
+        }
+
+        Image tmp = img.getScaledInstance(thumbnailWidth, thumbnailHeight, Image.SCALE_SMOOTH);
+        BufferedImage resized = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = resized.createGraphics();
+        g2d.drawImage(tmp, 0, 0, null);
+        g2d.dispose();
+
+        return resized;
+    }
+
+    @Test
+    public void decodeLatency() throws Exception
+    {
+        Assume.assumeTrue("Benchmark skipped, run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+        Options options = new OptionsBuilder()
+                .include(ThumbnailDecodeBenchmark.class.getName() + "\\.")
+                .forks(0)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(2))
+                .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        assertFalse(results.isEmpty());
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.thumbnail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scan and compaction of thumbnail pack
+ *
+ * @author codenamewei
+ */
+public class ThumbnailStoreTest
+{
+    private static final int THUMBNAIL_SIZE = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File packFile;
+
+    @Before
+    public void setUp()
+    {
+        packFile = new File(folder.getRoot(), "thumbnail/thumbnail.pack");
+    }
+
+    private File createImage(String name) throws Exception
+    {
+        File image = folder.newFile(name);
+        Files.write(image.toPath(), name.getBytes(StandardCharsets.UTF_8));
+
+        return image;
+    }
+
+    private static Thumbnail createThumbnail(String data)
+    {
+        return new Thumbnail(3, 640, 480, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertThumbnail(String expected, Thumbnail thumbnail)
+    {
+        assertNotNull(thumbnail);
+        assertEquals(Integer.valueOf(3), thumbnail.getDepth());
+        assertEquals(Integer.valueOf(640), thumbnail.getOriWidth());
+        assertEquals(Integer.valueOf(480), thumbnail.getOriHeight());
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), thumbnail.getData());
+    }
+
+    @Test
+    public void thumbnailIsRestoredByScanOnOpen() throws Exception
+    {
+        File image = createImage("a.jpg");
+
+        ThumbnailStore store = new ThumbnailStore(packFile.getAbsolutePath());
+        store.put(image, THUMBNAIL_SIZE, createThumbnail("first"));
+        store.put(image, THUMBNAIL_SIZE, createThumbnail("second"));
+        store.close();
+
+        store = new ThumbnailStore(packFile.getAbsolutePath());
+
+        assertThumbnail("second", store.get(image, THUMBNAIL_SIZE));
+        assertNull(store.get(image, THUMBNAIL_SIZE * 2));
+
+        store.close();
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnOpen() throws Exception
+    {
+        File image = createImage("a.jpg");
+
+        ThumbnailStore store = new ThumbnailStore(packFile.getAbsolutePath());
+        store.put(image, THUMBNAIL_SIZE, createThumbnail("complete"));
+        store.close();
+
+        long completeLength = packFile.length();
+
+        //header of a record whose append never finished
+        try(FileOutputStream out = new FileOutputStream(packFile, true))
+        {
+            out.write(new byte[]{0x54, 0x48, 0x4D, 0x42, 0, 0, 0, 8, 1, 2, 3});
+        }
+
+        store = new ThumbnailStore(packFile.getAbsolutePath());
+
+        assertEquals(completeLength, packFile.length());
+        assertThumbnail("complete", store.get(image, THUMBNAIL_SIZE));
+
+        File other = createImage("b.jpg");
+        store.put(other, THUMBNAIL_SIZE, createThumbnail("appended"));
+        store.close();
+
+        store = new ThumbnailStore(packFile.getAbsolutePath());
+
+        assertThumbnail("complete", store.get(image, THUMBNAIL_SIZE));
+        assertThumbnail("appended", store.get(other, THUMBNAIL_SIZE));
+
+        store.close();
+    }
+
+    @Test
+    public void changedImageIsNotServed() throws Exception
+    {
+        File image = createImage("a.jpg");
+
+        ThumbnailStore store = new ThumbnailStore(packFile.getAbsolutePath());
+        store.put(image, THUMBNAIL_SIZE, createThumbnail("stale"));
+
+        Files.write(image.toPath(), "changed content".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(store.get(image, THUMBNAIL_SIZE));
+
+        store.close();
+    }
+
+    @Test
+    public void compactionIsNeededOnlyWithStaleRecords() throws Exception
+    {
+        File image = createImage("a.jpg");
+
+        ThumbnailStore store = new ThumbnailStore(packFile.getAbsolutePath());
+
+        assertFalse(store.isCompactionNeeded());
+
+        store.put(image, THUMBNAIL_SIZE, createThumbnail("first"));
+
+        assertFalse(store.isCompactionNeeded());
+
+        store.put(image, THUMBNAIL_SIZE, createThumbnail("second"));
+
+        assertTrue(store.isCompactionNeeded());
+
+        store.close();
+    }
+
+    @Test
+    public void compactionKeepsLatestRecordOfLiveImages() throws Exception
+    {
+        File live = createImage("live.jpg");
+        File removed = createImage("removed.jpg");
+
+        ThumbnailStore store = new ThumbnailStore(packFile.getAbsolutePath());
+        store.put(live, THUMBNAIL_SIZE, createThumbnail("old"));
+        store.put(removed, THUMBNAIL_SIZE, createThumbnail("removed"));
+        store.put(live, THUMBNAIL_SIZE, createThumbnail("new"));
+
+        long packSize = store.getPackSize();
+
+        Set<String> livePaths = new HashSet<>(Arrays.asList(live.getAbsolutePath()));
+        store.compact(livePaths, store.getPackSize());
+
+        assertTrue(store.getPackSize() < packSize);
+        assertEquals(store.getPackSize(), packFile.length());
+        assertFalse(store.isCompactionNeeded());
+
+        assertThumbnail("new", store.get(live, THUMBNAIL_SIZE));
+        assertNull(store.get(removed, THUMBNAIL_SIZE));
+
+        //store stays writable after the pack is swapped
+        File added = createImage("added.jpg");
+        store.put(added, THUMBNAIL_SIZE, createThumbnail("added"));
+        store.close();
+
+        assertFalse(new File(packFile.getAbsolutePath() + ".compact").exists());
+
+        store = new ThumbnailStore(packFile.getAbsolutePath());
+
+        assertThumbnail("new", store.get(live, THUMBNAIL_SIZE));
+        assertThumbnail("added", store.get(added, THUMBNAIL_SIZE));
+        assertNull(store.get(removed, THUMBNAIL_SIZE));
+
+        store.close();
+    }
+
+    @Test
+    public void compactionKeepsRecordsStoredAfterLivePathsWereLoaded() throws Exception
+    {
+        File live = createImage("live.jpg");
+        File imported = createImage("imported.jpg");
+
+        ThumbnailStore store = new ThumbnailStore(packFile.getAbsolutePath());
+        store.put(live, THUMBNAIL_SIZE, createThumbnail("live"));
+
+        long livePathsPackSize = store.getPackSize();
+        Set<String> livePaths = new HashSet<>(Arrays.asList(live.getAbsolutePath()));
+
+        //imported while live paths were loaded, absent from them
+        store.put(imported, THUMBNAIL_SIZE, createThumbnail("imported"));
+
+        store.compact(livePaths, livePathsPackSize);
+
+        assertThumbnail("live", store.get(live, THUMBNAIL_SIZE));
+        assertThumbnail("imported", store.get(imported, THUMBNAIL_SIZE));
+
+        store.close();
+    }
+
+    @Test
+    public void recordsAreReadAcrossSegmentsAndTail() throws Exception
+    {
+        //segments of 256 bytes, records of a few hundred bytes span boundaries and end up in the tail
+        ThumbnailStore store = new ThumbnailStore(packFile.getAbsolutePath(), 256);
+
+        File[] images = new File[12];
+
+        for(int i = 0; i < images.length; ++i)
+        {
+            images[i] = createImage(i + ".jpg");
+
+            char[] data = new char[40 * (i + 1)];
+            Arrays.fill(data, (char) ('a' + i));
+
+            store.put(images[i], THUMBNAIL_SIZE, createThumbnail(new String(data)));
+
+            //read everything back after each append so earlier segments stay mapped while the pack grows
+            for(int j = 0; j <= i; ++j)
+            {
+                char[] expected = new char[40 * (j + 1)];
+                Arrays.fill(expected, (char) ('a' + j));
+
+                assertThumbnail(new String(expected), store.get(images[j], THUMBNAIL_SIZE));
+            }
+        }
+
+        store.close();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.type.image;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Image path of pages of pdf and tif documents
+ *
+ * @author codenamewei
+ */
+public class DocumentPageTest
+{
+    private static final File DOCUMENT = new File("scan.pdf").getAbsoluteFile();
+
+    @Test
+    public void pagePathRoundTrip()
+    {
+        String pagePath = DocumentPage.getPagePath(DOCUMENT, 2);
+
+        assertEquals(DOCUMENT.getAbsolutePath() + "#page=3", pagePath);
+        assertTrue(DocumentPage.isPagePath(pagePath));
+        assertEquals(DOCUMENT, DocumentPage.getDocument(pagePath));
+        assertEquals(2, DocumentPage.getPageIndex(pagePath));
+        assertEquals(DOCUMENT, DocumentPage.getSourceFile(pagePath));
+    }
+
+    @Test
+    public void tifPageIsPagePath()
+    {
+        assertTrue(DocumentPage.isPagePath("/data/scan.tiff#page=1"));
+        assertTrue(DocumentPage.isPagePath("/data/scan.TIF#page=12"));
+        assertEquals(11, DocumentPage.getPageIndex("/data/scan.TIF#page=12"));
+    }
+
+    @Test
+    public void fragmentInFolderNameUsesLastFragment()
+    {
+        String pagePath = "/data/a.pdf#page=2/b.pdf#page=4";
+
+        assertTrue(DocumentPage.isPagePath(pagePath));
+        assertEquals(new File("/data/a.pdf#page=2/b.pdf"), DocumentPage.getDocument(pagePath));
+        assertEquals(3, DocumentPage.getPageIndex(pagePath));
+    }
+
+    @Test
+    public void imagePathIsNotPagePath()
+    {
+        assertFalse(DocumentPage.isPagePath("/data/image.jpg"));
+        assertFalse(DocumentPage.isPagePath("/data/scan.pdf"));
+        assertEquals(new File("/data/image.jpg"), DocumentPage.getSourceFile("/data/image.jpg"));
+    }
+
+    @Test
+    public void malformedFragmentIsNotPagePath()
+    {
+        assertFalse(DocumentPage.isPagePath("/data/image.jpg#page=1"));
+        assertFalse(DocumentPage.isPagePath("/data/scan.pdf#page=0"));
+        assertFalse(DocumentPage.isPagePath("/data/scan.pdf#page=-1"));
+        assertFalse(DocumentPage.isPagePath("/data/scan.pdf#page="));
+        assertFalse(DocumentPage.isPagePath("/data/scan.pdf#page=one"));
+        assertFalse(DocumentPage.isPagePath("#page=1"));
+    }
+
+    @Test
+    public void documentFileTypes()
+    {
+        assertTrue(DocumentPage.isDocument(new File("scan.pdf")));
+        assertTrue(DocumentPage.isDocument(new File("scan.TIFF")));
+        assertFalse(DocumentPage.isDocument(new File("image.png")));
+
+        assertTrue(DocumentPage.isPdf(new File("scan.PDF")));
+        assertFalse(DocumentPage.isPdf(new File("scan.tif")));
+    }
+}
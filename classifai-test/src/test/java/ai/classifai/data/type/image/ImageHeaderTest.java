@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.data.type.image;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Classification of complete, truncated and trailing data images by header read
+ *
+ * @author codenamewei
+ */
+public class ImageHeaderTest
+{
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 192;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeImage(String formatName) throws Exception
+    {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        //noise so that compressed data spans most of the file
+        Random random = new Random(7);
+
+        for(int y = 0; y < HEIGHT; ++y)
+        {
+            for(int x = 0; x < WIDTH; ++x)
+            {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+
+        File file = folder.newFile("image." + formatName);
+        ImageIO.write(image, formatName, file);
+
+        return file;
+    }
+
+    private static void appendTrailer(File file) throws Exception
+    {
+        //e.g. motion photo video or vendor metadata after end of image
+        byte[] trailer = new byte[4096];
+        new Random(11).nextBytes(trailer);
+
+        try(FileOutputStream out = new FileOutputStream(file, true))
+        {
+            out.write(trailer);
+        }
+    }
+
+    private static void truncate(File file) throws Exception
+    {
+        byte[] data = Files.readAllBytes(file.toPath());
+
+        Files.write(file.toPath(), Arrays.copyOf(data, data.length / 2));
+    }
+
+    private static void assertStatus(ImageHeaderStatus expected, File file)
+    {
+        assertEquals(expected, ImageHeader.read(file).getStatus());
+
+        ImageHeader hashed = ImageHeader.read(file, true);
+
+        assertEquals(expected, hashed.getStatus());
+
+        if(expected.equals(ImageHeaderStatus.VALID)) assertNotNull(hashed.getContentHash());
+    }
+
+    @Test
+    public void completeJpegIsValid() throws Exception
+    {
+        File file = writeImage("jpg");
+
+        assertStatus(ImageHeaderStatus.VALID, file);
+
+        ImageHeader header = ImageHeader.read(file);
+
+        assertEquals(WIDTH, header.getOriWidth());
+        assertEquals(HEIGHT, header.getOriHeight());
+    }
+
+    @Test
+    public void completePngIsValid() throws Exception
+    {
+        assertStatus(ImageHeaderStatus.VALID, writeImage("png"));
+    }
+
+    @Test
+    public void jpegWithAppendedDataIsValid() throws Exception
+    {
+        File file = writeImage("jpg");
+        appendTrailer(file);
+
+        assertStatus(ImageHeaderStatus.VALID, file);
+    }
+
+    @Test
+    public void pngWithAppendedDataIsValid() throws Exception
+    {
+        File file = writeImage("png");
+        appendTrailer(file);
+
+        assertStatus(ImageHeaderStatus.VALID, file);
+    }
+
+    @Test
+    public void truncatedJpegIsTruncated() throws Exception
+    {
+        File file = writeImage("jpg");
+        truncate(file);
+
+        assertStatus(ImageHeaderStatus.TRUNCATED, file);
+    }
+
+    @Test
+    public void truncatedPngIsTruncated() throws Exception
+    {
+        File file = writeImage("png");
+        truncate(file);
+
+        assertStatus(ImageHeaderStatus.TRUNCATED, file);
+    }
+
+    @Test
+    public void missingFileIsNotFound()
+    {
+        assertEquals(ImageHeaderStatus.FILE_NOT_FOUND, ImageHeader.read(new File(folder.getRoot(), "absent.jpg")).getStatus());
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database;
+
+import ai.classifai.database.annotation.AnnotationQuery;
+import ai.classifai.database.annotation.bndbox.BoundingBoxDbQuery;
+import ai.classifai.database.annotation.seg.SegDbQuery;
+import ai.classifai.database.engine.H2StorageEngine;
+import ai.classifai.database.engine.HsqlStorageEngine;
+import ai.classifai.database.engine.StorageEngine;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.ResultSet;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of annotation database on every storage engine, for bounding box and segmentation tables
+ *
+ * Not part of the default test run. Run with
+ * mvn -P test test -pl classifai-test -am -Dtest=AnnotationDbBenchmark -Dbenchmark=true -Dsurefire.failIfNoSpecifiedTests=false
+ * Rows are configured with -Dbenchmark.rows=n for insert and -Dbenchmark.lookup.rows=n for retrieval
+ *
+ * @author codenamewei
+ */
+@Slf4j
+@RunWith(Parameterized.class)
+public class AnnotationDbBenchmark
+{
+    private static final int BATCH_INSERT_SIZE = 1000;
+
+    private static final int PROJECT_ID = 1;
+
+    private final StorageEngine engine;
+    private final String tableName;
+    private final String createProject;
+    private final String retrieveData;
+
+    private TemporaryDatabase database;
+
+    @Parameterized.Parameters(name = "{0} {1}")
+    public static Collection<Object[]> getParameters()
+    {
+        List<Object[]> parameters = new ArrayList<>();
+
+        for(StorageEngine engine : Arrays.asList(new HsqlStorageEngine(), new H2StorageEngine()))
+        {
+            parameters.add(new Object[]{engine.getName(), "bndbox", engine, BoundingBoxDbQuery.createProject(), BoundingBoxDbQuery.retrieveData()});
+            parameters.add(new Object[]{engine.getName(), "seg", engine, SegDbQuery.createProject(), SegDbQuery.retrieveData()});
+        }
+
+        return parameters;
+    }
+
+    public AnnotationDbBenchmark(String engineName, String tableName, StorageEngine engine, String createProject, String retrieveData)
+    {
+        this.engine = engine;
+        this.tableName = tableName;
+        this.createProject = createProject;
+        this.retrieveData = retrieveData;
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Assume.assumeTrue("Benchmark skipped, run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+
+        database = new TemporaryDatabase(engine);
+
+    }
+
+    private void execute(String query) throws Exception
+    {
+        TemporaryDatabase.<ResultSet>await(handler -> database.getJdbcClient().call(query, handler));
+    }
+
+    private void insertBatch(int fromUUID, int toUUID) throws Exception
+    {
+        for(int offset = fromUUID; offset < toUUID; offset += BATCH_INSERT_SIZE)
+        {
+            List<JsonArray> batchParams = new ArrayList<>();
+
+            for(int uuid = offset; uuid < Math.min(toUUID, offset + BATCH_INSERT_SIZE); ++uuid)
+            {
+                batchParams.add(getNewDataParams(uuid));
+            }
+
+            TemporaryDatabase.<Void>await(handler -> BatchHandler.executeBatch(database.getJdbcClient(), AnnotationQuery.createData(), batchParams, handler));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if(database != null) database.close();
+    }
+
+    private static JsonArray getNewDataParams(int uuid)
+    {
+        return new JsonArray().add(uuid).add(PROJECT_ID).add("/data/image_" + uuid + ".jpg").add("[]")
+                .add(3).add(0).add(0).add(0).add(0).add(1024).add(640).add(480).add(0).addNull();
+    }
+
+    private int countRows() throws Exception
+    {
+        ResultSet result = TemporaryDatabase.await(handler -> database.getJdbcClient().queryWithParams(
+                "select count(*) from Project where project_id = ?", new JsonArray().add(PROJECT_ID), handler));
+
+        return result.getResults().get(0).getInteger(0);
+    }
+
+    private static double getRate(int rows, long nanos)
+    {
+        return rows / (nanos / 1e9);
+    }
+
+    /**
+     * Rows per second of one insert per data point against inserts grouped in chunked transactions
+     */
+    @Test
+    public void insertRowsPerSecond() throws Exception
+    {
+        execute(createProject);
+
+        int rows = Integer.getInteger("benchmark.rows", 20000);
+
+        JDBCClient jdbcClient = database.getJdbcClient();
+
+        //one query per row, fired together as the previous per-row ingestion did
+        CountDownLatch latch = new CountDownLatch(rows);
+        AtomicInteger failedCount = new AtomicInteger(0);
+
+        long start = System.nanoTime();
+
+        for(int uuid = 0; uuid < rows; ++uuid)
+        {
+            jdbcClient.queryWithParams(AnnotationQuery.createData(), getNewDataParams(uuid), ar -> {
+                if(ar.failed()) failedCount.incrementAndGet();
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(30, TimeUnit.MINUTES));
+
+        long perRowNanos = System.nanoTime() - start;
+
+        assertEquals(0, failedCount.get());
+        assertEquals(rows, countRows());
+
+        TemporaryDatabase.<ResultSet>await(handler -> jdbcClient.queryWithParams(AnnotationQuery.deleteProjectUUIDListwithProjectID(), new JsonArray().add(PROJECT_ID), handler));
+
+        //chunks in one transaction each, chained on a single connection at a time
+        start = System.nanoTime();
+
+        insertBatch(0, rows);
+
+        long batchNanos = System.nanoTime() - start;
+
+        assertEquals(rows, countRows());
+
+        log.info(String.format("%s %s insert of %d rows: per row %.0f rows/s, batch of %d %.0f rows/s", engine.getName(), tableName,
+                rows, getRate(rows, perRowNanos), BATCH_INSERT_SIZE, getRate(rows, batchNanos)));
+    }
+
+    /**
+     * Latency of retrieveData by (uuid, project_id) on a table created by previous version without primary key,
+     * then after the in-place upgrade adding primary key and project_id index
+     */
+    @Test
+    public void retrieveDataLatency() throws Exception
+    {
+        int rows = Integer.getInteger("benchmark.lookup.rows", 1000000);
+
+        //project table as created by previous version
+        execute(createProject.replace(", primary key(uuid, project_id)", ""));
+
+        insertBatch(0, rows);
+
+        assertEquals(rows, countRows());
+
+        double[] before = measureRetrieveData(rows, 50);
+
+        long start = System.nanoTime();
+
+        //same statements as AnnotationVerticle.upgradeProjectTable
+        execute(AnnotationQuery.setUUIDNotNull());
+        execute(AnnotationQuery.setProjectIDNotNull());
+        execute(AnnotationQuery.addPrimaryKey());
+        execute(AnnotationQuery.createProjectIDIndex());
+
+        long upgradeMillis = (System.nanoTime() - start) / 1000000;
+
+        double[] after = measureRetrieveData(rows, 2000);
+
+        log.info(String.format("%s %s retrieveData on %d rows: without primary key mean %.3f ms p99 %.3f ms, upgrade took %d ms, with primary key mean %.3f ms p99 %.3f ms",
+                engine.getName(), tableName, rows, before[0], before[1], upgradeMillis, after[0], after[1]));
+    }
+
+    /**
+     * @return mean and 99th percentile latency in milliseconds of retrieving random data points one after another
+     */
+    private double[] measureRetrieveData(int rows, int lookups) throws Exception
+    {
+        Random random = new Random(rows);
+
+        //warm up query plan and caches
+        for(int i = 0; i < Math.min(10, lookups); ++i)
+        {
+            retrieveData(random.nextInt(rows));
+        }
+
+        double[] latencies = new double[lookups];
+        double total = 0;
+
+        for(int i = 0; i < lookups; ++i)
+        {
+            long start = System.nanoTime();
+
+            retrieveData(random.nextInt(rows));
+
+            latencies[i] = (System.nanoTime() - start) / 1e6;
+            total += latencies[i];
+        }
+
+        Arrays.sort(latencies);
+
+        return new double[]{total / lookups, latencies[(int) Math.min(lookups - 1, Math.ceil(lookups * 0.99) - 1)]};
+    }
+
+    private void retrieveData(int uuid) throws Exception
+    {
+        ResultSet result = TemporaryDatabase.await(handler -> database.getJdbcClient().queryWithParams(retrieveData, new JsonArray().add(uuid).add(PROJECT_ID), handler));
+
+        assertEquals(1, result.getNumRows());
+    }
+}
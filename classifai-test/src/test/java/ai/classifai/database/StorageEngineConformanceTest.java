@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database;
+
+import ai.classifai.database.annotation.AnnotationQuery;
+import ai.classifai.database.annotation.bndbox.BoundingBoxDbQuery;
+import ai.classifai.database.annotation.seg.SegDbQuery;
+import ai.classifai.database.engine.H2StorageEngine;
+import ai.classifai.database.engine.HsqlStorageEngine;
+import ai.classifai.database.engine.StorageEngine;
+import ai.classifai.database.portfolio.PortfolioDbQuery;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.UpdateResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Conformance of every statement in *DbQuery on every storage engine
+ *
+ * @author codenamewei
+ */
+@RunWith(Parameterized.class)
+public class StorageEngineConformanceTest
+{
+    private static final int PROJECT_ID = 7;
+
+    private final StorageEngine engine;
+
+    private TemporaryDatabase database;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getParameters()
+    {
+        return Arrays.asList(new Object[][]{{"hsqldb", new HsqlStorageEngine()}, {"h2", new H2StorageEngine()}});
+    }
+
+    public StorageEngineConformanceTest(String engineName, StorageEngine engine)
+    {
+        this.engine = engine;
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        database = new TemporaryDatabase(engine);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        database.close();
+    }
+
+    private void execute(String query) throws Exception
+    {
+        TemporaryDatabase.<ResultSet>await(handler -> database.getJdbcClient().call(query, handler));
+    }
+
+    private int update(String query, JsonArray params) throws Exception
+    {
+        UpdateResult result = TemporaryDatabase.await(handler -> database.getJdbcClient().updateWithParams(query, params, handler));
+
+        return result.getUpdated();
+    }
+
+    private List<JsonArray> query(String query, JsonArray params) throws Exception
+    {
+        ResultSet result = TemporaryDatabase.await(handler -> database.getJdbcClient().queryWithParams(query, params, handler));
+
+        return result.getResults();
+    }
+
+    private static JsonArray getNewDataParams(int uuid, String imagePath, String contentHash)
+    {
+        return new JsonArray().add(uuid).add(PROJECT_ID).add(imagePath).add("[]")
+                .add(3).add(0).add(0).add(0).add(0).add(2048).add(640).add(480).add(6).add(contentHash);
+    }
+
+    @Test
+    public void boundingBoxQueries() throws Exception
+    {
+        verifyAnnotationQueries(BoundingBoxDbQuery.createProject(), BoundingBoxDbQuery.retrieveData(), BoundingBoxDbQuery.updateData());
+    }
+
+    @Test
+    public void segmentationQueries() throws Exception
+    {
+        verifyAnnotationQueries(SegDbQuery.createProject(), SegDbQuery.retrieveData(), SegDbQuery.updateData());
+    }
+
+    private void verifyAnnotationQueries(String createProject, String retrieveData, String updateData) throws Exception
+    {
+        execute(createProject);
+
+        //startup runs create and upgrade on every launch, all of them are idempotent
+        execute(createProject);
+        assertEquals(1, (int) query(AnnotationQuery.countPrimaryKey(), new JsonArray()).get(0).getInteger(0));
+        execute(AnnotationQuery.createProjectIDIndex());
+        execute(AnnotationQuery.addOrientationColumn());
+        execute(AnnotationQuery.addContentHashColumn());
+        execute(AnnotationQuery.createContentHashIndex());
+        execute(AnnotationQuery.createProjectIDIndex());
+
+        assertEquals(1, update(AnnotationQuery.createData(), getNewDataParams(1, "/data/a.jpg", "hash-a")));
+        assertEquals(1, update(AnnotationQuery.createData(), getNewDataParams(2, "/data/b.jpg", null)));
+        assertEquals(1, update(AnnotationQuery.createData(), getNewDataParams(3, "/data/a.jpg", "hash-c")));
+
+        //retrieve data: img_path, annotation, img_x, img_y, img_w, img_h, file_size, img_ori_w, img_ori_h, img_depth
+        JsonArray data = query(retrieveData, new JsonArray().add(1).add(PROJECT_ID)).get(0);
+        assertEquals("/data/a.jpg", data.getString(0));
+        assertEquals("[]", data.getString(1));
+        assertEquals(2048, (int) data.getInteger(6));
+        assertEquals(640, (int) data.getInteger(7));
+        assertEquals(3, (int) data.getInteger(9));
+
+        String annotation = "[{\"x\":1}]";
+        assertEquals(1, update(updateData, new JsonArray().add(annotation).add(1).add(10).add(20).add(0.5).add(0.25).add(4096).add(320).add(240).add(1).add(PROJECT_ID)));
+
+        data = query(retrieveData, new JsonArray().add(1).add(PROJECT_ID)).get(0);
+        assertEquals(annotation, data.getString(1));
+        assertEquals(10, (int) data.getInteger(2));
+        assertEquals(0.5, data.getDouble(4), 1e-9);
+        assertEquals(1, (int) data.getInteger(9));
+
+        assertEquals("/data/b.jpg", query(AnnotationQuery.retrieveDataPath(), new JsonArray().add(2).add(PROJECT_ID)).get(0).getString(0));
+        assertEquals("/data/b.jpg", query(AnnotationQuery.retrieveImageFile(), new JsonArray().add(PROJECT_ID).add(2)).get(0).getString(0));
+
+        List<JsonArray> pathList = query(AnnotationQuery.retrieveDataPathList() + "(?, ?, ?)", new JsonArray().add(PROJECT_ID).add(2).add(3).add(99));
+        assertEquals(2, pathList.size());
+
+        //metadata: img_path, img_depth, file_size, img_ori_w, img_ori_h, img_orientation
+        assertEquals(1, update(AnnotationQuery.updateMetadata(), new JsonArray().add(1).add(512).add(480).add(640).add(8).add(2).add(PROJECT_ID)));
+        JsonArray metadata = query(AnnotationQuery.retrieveMetadata(), new JsonArray().add(2).add(PROJECT_ID)).get(0);
+        assertEquals(1, (int) metadata.getInteger(1));
+        assertEquals(512, (int) metadata.getInteger(2));
+        assertEquals(8, (int) metadata.getInteger(5));
+
+        assertEquals(2, query(AnnotationQuery.loadContentHash(), new JsonArray().add(PROJECT_ID)).size());
+        assertEquals(3, query(AnnotationQuery.loadValidProjectUUID(), new JsonArray().add(PROJECT_ID)).size());
+        assertEquals(2, query(AnnotationQuery.loadImagePathList(), new JsonArray()).size());
+
+        update(AnnotationQuery.deleteProjectUUIDList() + "(1,2)", new JsonArray().add(PROJECT_ID));
+        assertEquals(1, query(AnnotationQuery.loadValidProjectUUID(), new JsonArray().add(PROJECT_ID)).size());
+
+        update(AnnotationQuery.deleteProjectUUIDListwithProjectID(), new JsonArray().add(PROJECT_ID));
+        assertEquals(0, query(AnnotationQuery.loadValidProjectUUID(), new JsonArray().add(PROJECT_ID)).size());
+    }
+
+    /**
+     * Project table created by previous version, without primary key and newer columns
+     */
+    @Test
+    public void upgradeLegacyProjectTable() throws Exception
+    {
+        execute("create table if not exists Project (uuid integer, project_id integer, img_path varchar(2000), bnd_box clob, img_depth integer, " +
+                "img_x integer, img_y integer, img_w double, img_h double, file_size integer, img_ori_w integer, img_ori_h integer)");
+
+        update("insert into Project values (1, " + PROJECT_ID + ", '/data/a.jpg', '[]', 3, 0, 0, 0, 0, 10, 20, 30)", new JsonArray());
+
+        assertEquals(0, (int) query(AnnotationQuery.countPrimaryKey(), new JsonArray()).get(0).getInteger(0));
+
+        //same order as AnnotationVerticle.upgradeProjectTable
+        execute(AnnotationQuery.setUUIDNotNull());
+        execute(AnnotationQuery.setProjectIDNotNull());
+        execute(AnnotationQuery.addPrimaryKey());
+        execute(AnnotationQuery.createProjectIDIndex());
+        execute(AnnotationQuery.addOrientationColumn());
+        execute(AnnotationQuery.addContentHashColumn());
+        execute(AnnotationQuery.createContentHashIndex());
+
+        assertEquals(1, (int) query(AnnotationQuery.countPrimaryKey(), new JsonArray()).get(0).getInteger(0));
+
+        JsonArray metadata = query(AnnotationQuery.retrieveMetadata(), new JsonArray().add(1).add(PROJECT_ID)).get(0);
+        assertEquals(0, (int) metadata.getInteger(5));
+
+        assertEquals(1, update(AnnotationQuery.createData(), getNewDataParams(2, "/data/b.jpg", "hash-b")));
+        assertEquals(1, query(AnnotationQuery.loadContentHash(), new JsonArray().add(PROJECT_ID)).size());
+    }
+
+    @Test
+    public void portfolioQueries() throws Exception
+    {
+        execute(PortfolioDbQuery.createPortfolioTable());
+        execute(PortfolioDbQuery.createProjectUUIDTable());
+        execute(PortfolioDbQuery.createPortfolioTable());
+        execute(PortfolioDbQuery.createProjectUUIDTable());
+
+        assertEquals(1, update(PortfolioDbQuery.createNewProject(), new JsonArray().add(PROJECT_ID).add("project").add(0).add("[]").add(0).add("[4,5]")));
+        assertEquals(1, update(PortfolioDbQuery.createNewProject(), new JsonArray().add(PROJECT_ID + 1).add("other").add(1).add("[]").add(0).addNull()));
+
+        //legacy uuid list migrated into ProjectUUID, merge leaves existing membership untouched
+        assertEquals(1, query(PortfolioDbQuery.loadLegacyUUIDList(), new JsonArray()).size());
+        assertEquals(1, update(PortfolioDbQuery.createProjectUUID(), new JsonArray().add(PROJECT_ID).add(4)));
+        update(PortfolioDbQuery.migrateProjectUUID(), new JsonArray().add(PROJECT_ID).add(4));
+        update(PortfolioDbQuery.migrateProjectUUID(), new JsonArray().add(PROJECT_ID).add(5));
+        update(PortfolioDbQuery.clearLegacyUUIDList(), new JsonArray());
+        assertEquals(0, query(PortfolioDbQuery.loadLegacyUUIDList(), new JsonArray()).size());
+        assertEquals(2, query(PortfolioDbQuery.loadProjectUUIDList(), new JsonArray()).size());
+
+        assertEquals(1, update(PortfolioDbQuery.updateUUIDGeneratorSeed(), new JsonArray().add(6).add(PROJECT_ID)));
+        assertEquals(1, update(PortfolioDbQuery.updateLabelList(), new JsonArray().add("[\"cat\"]").add(PROJECT_ID)));
+        assertEquals("[\"cat\"]", query(PortfolioDbQuery.getProjectLabelList(), new JsonArray().add(PROJECT_ID)).get(0).getString(0));
+        assertEquals("project", query(PortfolioDbQuery.getProjectName(), new JsonArray().add(PROJECT_ID)).get(0).getString(0));
+        assertEquals(2, query(PortfolioDbQuery.loadDbProject(), new JsonArray()).size());
+        assertEquals(1, query(PortfolioDbQuery.getAllProjectsForAnnotationType(), new JsonArray().add(1)).size());
+
+        List<JsonArray> uuidList = query(PortfolioDbQuery.getProjectUUIDList(), new JsonArray().add(PROJECT_ID));
+        assertEquals(2, uuidList.size());
+        assertEquals(6, (int) uuidList.get(0).getInteger(0));
+        assertEquals(4, (int) uuidList.get(0).getInteger(1));
+
+        //project without data points still returns its seed
+        uuidList = query(PortfolioDbQuery.getProjectUUIDList(), new JsonArray().add(PROJECT_ID + 1));
+        assertEquals(1, uuidList.size());
+        assertNull(uuidList.get(0).getInteger(1));
+
+        assertEquals(1, update(PortfolioDbQuery.deleteProjectUUID(), new JsonArray().add(PROJECT_ID).add(4)));
+        assertEquals(1, update(PortfolioDbQuery.deleteProjectUUIDList(), new JsonArray().add(PROJECT_ID)));
+        assertEquals(1, update(PortfolioDbQuery.deleteProject(), new JsonArray().add(PROJECT_ID)));
+        assertEquals(1, query(PortfolioDbQuery.loadDbProject(), new JsonArray()).size());
+    }
+
+    @Test
+    public void linkedFolderQueries() throws Exception
+    {
+        execute(PortfolioDbQuery.createLinkedFolderTable());
+        execute(PortfolioDbQuery.createLinkedFolderTable());
+
+        assertEquals(0, query(PortfolioDbQuery.getLinkedFolder(), new JsonArray().add(PROJECT_ID)).size());
+
+        //merge inserts the first link and replaces it on relink
+        update(PortfolioDbQuery.updateLinkedFolder(), new JsonArray().add(PROJECT_ID).add("/data/a"));
+        update(PortfolioDbQuery.updateLinkedFolder(), new JsonArray().add(PROJECT_ID + 1).add("/data/b"));
+        update(PortfolioDbQuery.updateLinkedFolder(), new JsonArray().add(PROJECT_ID).add("/data/c"));
+
+        List<JsonArray> folder = query(PortfolioDbQuery.getLinkedFolder(), new JsonArray().add(PROJECT_ID));
+        assertEquals(1, folder.size());
+        assertEquals("/data/c", folder.get(0).getString(0));
+
+        assertEquals(1, update(PortfolioDbQuery.deleteLinkedFolder(), new JsonArray().add(PROJECT_ID)));
+        assertEquals(0, query(PortfolioDbQuery.getLinkedFolder(), new JsonArray().add(PROJECT_ID)).size());
+        assertEquals("/data/b", query(PortfolioDbQuery.getLinkedFolder(), new JsonArray().add(PROJECT_ID + 1)).get(0).getString(0));
+    }
+}
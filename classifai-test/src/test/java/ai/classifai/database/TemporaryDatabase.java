@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database;
+
+import ai.classifai.database.engine.StorageEngine;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.jdbc.JDBCClient;
+import lombok.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Temporary file database on a storage engine, for tests and benchmarks of database queries
+ *
+ * @author codenamewei
+ */
+public class TemporaryDatabase implements AutoCloseable
+{
+    private static final long TIMEOUT_MINUTES = 30;
+
+    private final File folder;
+    private final Vertx vertx;
+    private final JDBCClient jdbcClient;
+
+    public TemporaryDatabase(@NonNull StorageEngine engine) throws IOException
+    {
+        folder = Files.createTempDirectory("classifai-" + engine.getName()).toFile();
+        vertx = Vertx.vertx();
+        jdbcClient = JDBCClient.createNonShared(vertx, engine.getJdbcConfig(new File(folder, "testdb").getAbsolutePath()));
+    }
+
+    public JDBCClient getJdbcClient()
+    {
+        return jdbcClient;
+    }
+
+    /**
+     * Block until asynchronous call completes
+     */
+    public static <T> T await(@NonNull Consumer<Handler<AsyncResult<T>>> call) throws Exception
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        call.accept(ar -> {
+            if(ar.succeeded()) future.complete(ar.result());
+            else future.completeExceptionally(ar.cause());
+        });
+
+        return future.get(TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        jdbcClient.close();
+        TemporaryDatabase.<Void>await(vertx::close);
+
+        try(Stream<Path> paths = Files.walk(folder.toPath()))
+        {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.database.annotation;
+
+import ai.classifai.database.TemporaryDatabase;
+import ai.classifai.database.annotation.bndbox.BoundingBoxDbQuery;
+import ai.classifai.database.engine.HsqlStorageEngine;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.sql.ResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Flush of write-behind buffer with a row which always fails
+ *
+ * @author codenamewei
+ */
+public class AnnotationWriteBufferTest
+{
+    private static final int PROJECT_ID = 1;
+    private static final int ROWS = 5;
+    private static final int BAD_UUID = 2;
+
+    private TemporaryDatabase database;
+    private Vertx vertx;
+    private AnnotationWriteBuffer writeBuffer;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        database = new TemporaryDatabase(new HsqlStorageEngine());
+        vertx = Vertx.vertx();
+
+        TemporaryDatabase.<ResultSet>await(handler -> database.getJdbcClient().call(BoundingBoxDbQuery.createProject(), handler));
+
+        for(int uuid = 0; uuid < ROWS; ++uuid)
+        {
+            JsonArray params = new JsonArray().add(uuid).add(PROJECT_ID).add("/data/" + uuid + ".jpg").add("[]")
+                    .add(3).add(0).add(0).add(0).add(0).add(100).add(64).add(48).add(0).addNull();
+
+            TemporaryDatabase.<ResultSet>await(handler -> database.getJdbcClient().queryWithParams(AnnotationQuery.createData(), params, handler));
+        }
+
+        writeBuffer = new AnnotationWriteBuffer(vertx, database.getJdbcClient(), BoundingBoxDbQuery.updateData());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        TemporaryDatabase.<Void>await(vertx::close);
+        database.close();
+    }
+
+    private static JsonArray getUpdateParams(int uuid, Object depth)
+    {
+        return new JsonArray().add("[{\"uuid\":" + uuid + "}]").add(depth).add(1).add(2).add(0.5).add(0.5).add(100).add(64).add(48).add(uuid).add(PROJECT_ID);
+    }
+
+    private String getAnnotation(int uuid) throws Exception
+    {
+        ResultSet result = TemporaryDatabase.await(handler -> database.getJdbcClient().queryWithParams(BoundingBoxDbQuery.retrieveData(),
+                new JsonArray().add(uuid).add(PROJECT_ID), handler));
+
+        return result.getResults().get(0).getString(1);
+    }
+
+    @Test
+    public void badRowDoesNotBlockOtherUpdates() throws Exception
+    {
+        for(int uuid = 0; uuid < ROWS; ++uuid)
+        {
+            //img_depth which is not a number fails only this update
+            writeBuffer.put(PROJECT_ID, uuid, getUpdateParams(uuid, (uuid == BAD_UUID) ? "not a number" : 3));
+        }
+
+        TemporaryDatabase.<Void>await(handler -> writeBuffer.flush().onComplete(handler));
+
+        for(int uuid = 0; uuid < ROWS; ++uuid)
+        {
+            if(uuid == BAD_UUID) continue;
+
+            assertEquals("[{\"uuid\":" + uuid + "}]", getAnnotation(uuid));
+            assertNull(writeBuffer.get(PROJECT_ID, uuid));
+        }
+
+        //bad row is retried in next flush, then dropped after its last attempt
+        assertEquals("[]", getAnnotation(BAD_UUID));
+        assertNotNull(writeBuffer.get(PROJECT_ID, BAD_UUID));
+
+        TemporaryDatabase.<Void>await(handler -> writeBuffer.flush().onComplete(handler));
+        assertNotNull(writeBuffer.get(PROJECT_ID, BAD_UUID));
+
+        TemporaryDatabase.<Void>await(handler -> writeBuffer.flush().onComplete(handler));
+        assertNull(writeBuffer.get(PROJECT_ID, BAD_UUID));
+        assertEquals("[]", getAnnotation(BAD_UUID));
+    }
+
+    @Test
+    public void closeFlushesPendingUpdates() throws Exception
+    {
+        writeBuffer.put(PROJECT_ID, 1, getUpdateParams(1, 3));
+
+        //closing outside of vert.x thread blocks till flushed, as the shutdown hook does
+        writeBuffer.close(Promise.promise());
+
+        assertEquals("[{\"uuid\":1}]", getAnnotation(1));
+    }
+}
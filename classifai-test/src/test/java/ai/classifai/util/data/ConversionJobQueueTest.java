@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.util.type.FileFormat;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Submission, cancellation and pruning of headless conversion jobs
+ *
+ * A running job is held by taking the whole decode memory budget, so its page render waits for admission.
+ *
+ * @author codenamewei
+ */
+public class ConversionJobQueueTest
+{
+    private static final long TIMEOUT_MS = 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File pdfFolder;
+    private File emptyFolder;
+
+    private ConversionJobQueue queue;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        pdfFolder = folder.newFolder("pdf");
+        emptyFolder = folder.newFolder("empty");
+
+        try(PDDocument document = new PDDocument())
+        {
+            document.addPage(new PDPage());
+            document.save(new File(pdfFolder, "one.pdf"));
+        }
+
+        queue = new ConversionJobQueue(1);
+    }
+
+    @After
+    public void tearDown()
+    {
+        queue.close();
+    }
+
+    private ConversionJob submit(File inputFolder)
+    {
+        return queue.submit(inputFolder, folder.getRoot().getAbsolutePath(), FileFormat.PDF.getText(), FileFormat.png.getText(), 0);
+    }
+
+    private static void awaitStatus(ConversionJob job, ConversionJob.Status status) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while((job.getStatus() != status) && (System.currentTimeMillis() < deadline))
+        {
+            Thread.sleep(10);
+        }
+
+        assertEquals(status, job.getStatus());
+    }
+
+    private static void awaitFinished(ConversionJob job) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while(!job.getStatus().isFinished() && (System.currentTimeMillis() < deadline))
+        {
+            Thread.sleep(10);
+        }
+
+        assertTrue(job.getStatus().isFinished());
+    }
+
+    @Test
+    public void fullQueueRejectsJob() throws Exception
+    {
+        List<ConversionJob> queuedJobs = new ArrayList<>();
+
+        try(DecodeScheduler.Permit blocker = DecodeScheduler.acquire(Long.MAX_VALUE, DecodeScheduler.Priority.INTERACTIVE))
+        {
+            ConversionJob running = submit(pdfFolder);
+            awaitStatus(running, ConversionJob.Status.RUNNING);
+
+            for(int i = 0; i < ConversionJobQueue.QUEUE_CAPACITY; ++i)
+            {
+                ConversionJob job = submit(emptyFolder);
+
+                assertNotNull(job);
+                assertEquals(ConversionJob.Status.QUEUED, job.getStatus());
+
+                queuedJobs.add(job);
+            }
+
+            assertNull(submit(emptyFolder));
+            assertEquals(ConversionJobQueue.QUEUE_CAPACITY + 1, queue.getJobList().size());
+
+            queuedJobs.add(running);
+        }
+
+        for(ConversionJob job : queuedJobs)
+        {
+            awaitStatus(job, ConversionJob.Status.COMPLETED);
+        }
+    }
+
+    @Test
+    public void cancelledQueuedJobNeverRuns() throws Exception
+    {
+        ConversionJob running;
+        ConversionJob queued;
+
+        try(DecodeScheduler.Permit blocker = DecodeScheduler.acquire(Long.MAX_VALUE, DecodeScheduler.Priority.INTERACTIVE))
+        {
+            running = submit(pdfFolder);
+            awaitStatus(running, ConversionJob.Status.RUNNING);
+
+            queued = submit(emptyFolder);
+
+            assertTrue(queue.cancel(queued.getJobID()));
+            assertEquals(ConversionJob.Status.CANCELLED, queued.getStatus());
+
+            //finished job can not be cancelled again
+            assertFalse(queue.cancel(queued.getJobID()));
+        }
+
+        awaitStatus(running, ConversionJob.Status.COMPLETED);
+
+        assertEquals(ConversionJob.Status.CANCELLED, queued.getStatus());
+        assertEquals(0, (int) queued.getJsonObject().getInteger("total_files"));
+        assertEquals(0.0, queued.getJsonObject().getDouble("elapsed_seconds"), 0.0);
+    }
+
+    @Test
+    public void cancelledRunningJobStops() throws Exception
+    {
+        ConversionJob running;
+
+        try(DecodeScheduler.Permit blocker = DecodeScheduler.acquire(Long.MAX_VALUE, DecodeScheduler.Priority.INTERACTIVE))
+        {
+            running = submit(pdfFolder);
+            awaitStatus(running, ConversionJob.Status.RUNNING);
+
+            assertTrue(queue.cancel(running.getJobID()));
+
+            //stops after the page in progress
+            assertEquals(ConversionJob.Status.RUNNING, running.getStatus());
+        }
+
+        awaitStatus(running, ConversionJob.Status.CANCELLED);
+
+        assertFalse(queue.cancel(running.getJobID()));
+        assertFalse(queue.cancel(-1));
+    }
+
+    @Test
+    public void oldestFinishedJobsArePruned() throws Exception
+    {
+        int jobSize = ConversionJobQueue.MAX_FINISHED_JOBS + 10;
+
+        List<ConversionJob> jobs = new ArrayList<>();
+
+        for(int i = 0; i < jobSize; ++i)
+        {
+            ConversionJob job = submit(emptyFolder);
+            awaitFinished(job);
+
+            jobs.add(job);
+        }
+
+        //pruned on next submission, the job just submitted is not finished yet
+        ConversionJob latest = submit(emptyFolder);
+
+        assertEquals(ConversionJobQueue.MAX_FINISHED_JOBS + 1, queue.getJobList().size());
+
+        for(int i = 0; i < jobSize; ++i)
+        {
+            boolean isPruned = i < jobSize - ConversionJobQueue.MAX_FINISHED_JOBS;
+
+            assertEquals(isPruned, queue.getJob(jobs.get(i).getJobID()) == null);
+        }
+
+        assertNotNull(queue.getJob(latest.getJobID()));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Conversion of a large synthetic pdf keeps heap flat
+ *
+ * @author codenamewei
+ */
+public class ConversionSchedulerTest
+{
+    private static final int PAGE_COUNT = 1000;
+
+    //one inch page, rendered at 300 dpi into 300 x 300 pixels
+    private static final float PAGE_SIZE = 72;
+
+    private static final int IMAGE_SIZE = 150;
+
+    //heap retained after gc may grow at most this much from 10% to 100% of pages converted
+    private static final long MAX_HEAP_GROWTH = 16 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Every page carries its own image, so images cached across pages would pile up in heap
+     */
+    private File createPdf(int pageCount) throws Exception
+    {
+        File pdf = new File(folder.getRoot(), "synthetic.pdf");
+
+        try(PDDocument document = new PDDocument(MemoryUsageSetting.setupTempFileOnly()))
+        {
+            for(int i = 0; i < pageCount; ++i)
+            {
+                PDPage page = new PDPage(new PDRectangle(PAGE_SIZE, PAGE_SIZE));
+                document.addPage(page);
+
+                BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+
+                Graphics2D graphics = image.createGraphics();
+                graphics.setColor(new Color(Color.HSBtoRGB(i / (float) pageCount, 0.8f, 0.8f)));
+                graphics.fillRect(0, 0, IMAGE_SIZE, IMAGE_SIZE);
+                graphics.setColor(Color.WHITE);
+                graphics.drawString(String.valueOf(i), 10, IMAGE_SIZE / 2);
+                graphics.dispose();
+
+                PDImageXObject xObject = LosslessFactory.createFromImage(document, image);
+
+                try(PDPageContentStream content = new PDPageContentStream(document, page))
+                {
+                    content.drawImage(xObject, 0, 0, PAGE_SIZE, PAGE_SIZE);
+                }
+            }
+
+            document.save(pdf);
+        }
+
+        return pdf;
+    }
+
+    private static long getRetainedHeap(MemoryMXBean memory)
+    {
+        System.gc();
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Test
+    public void thousandPagePdfIsConvertedInFlatHeap() throws Exception
+    {
+        File pdf = createPdf(PAGE_COUNT);
+
+        File outputFolder = folder.newFolder("output");
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        List<Long> retainedHeap = Collections.synchronizedList(new ArrayList<>());
+        List<String> messages = new ArrayList<>();
+        List<Integer> pageCounts = new ArrayList<>();
+
+        ConversionScheduler scheduler = new ConversionScheduler(4, 0, () -> false);
+
+        scheduler.convert(Collections.singletonList(pdf), "pdf", outputFolder.getAbsolutePath(), "png", new ConversionScheduler.ConversionListener()
+        {
+            @Override
+            public void onFileConverted(File file, String message, int pageCount)
+            {
+                messages.add(message);
+                pageCounts.add(pageCount);
+            }
+
+            @Override
+            public void onProgress(int progress)
+            {
+                if((progress == 10) || (progress == 100)) retainedHeap.add(getRetainedHeap(memory));
+            }
+        });
+
+        assertEquals(Collections.singletonList(PAGE_COUNT), pageCounts);
+        assertNull(messages.get(0));
+
+        String[] outputFiles = outputFolder.list();
+        assertEquals(PAGE_COUNT, outputFiles.length);
+        assertTrue(new File(outputFolder, "synthetic_" + PAGE_COUNT + ".png").isFile());
+
+        assertEquals(2, retainedHeap.size());
+
+        long growth = retainedHeap.get(1) - retainedHeap.get(0);
+
+        assertTrue("Heap retained grew by " + growth + " bytes over " + PAGE_COUNT + " pages", growth < MAX_HEAP_GROWTH);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Admission order of decodes waiting for memory budget
+ *
+ * @author codenamewei
+ */
+public class DecodeSchedulerTest
+{
+    private static final long TIMEOUT_MS = 10000;
+
+    private final List<String> admissions = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Decode on its own thread, recording admission while the permit is held
+     */
+    private Thread startDecode(String name, long cost, DecodeScheduler.Priority priority) throws Exception
+    {
+        int waitingCount = DecodeScheduler.getWaitingCount();
+
+        Thread thread = new Thread(() -> {
+            try
+            {
+                DecodeScheduler.Permit permit = DecodeScheduler.acquire(cost, priority);
+
+                try
+                {
+                    admissions.add(name);
+                }
+                finally
+                {
+                    permit.close();
+                }
+            }
+            catch(InterruptedIOException e)
+            {
+                admissions.add(name + " interrupted");
+            }
+        }, name);
+
+        thread.start();
+
+        //queued in the order started
+        awaitWaitingCount(waitingCount + 1);
+
+        return thread;
+    }
+
+    private static void awaitWaitingCount(int waitingCount) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+        while(DecodeScheduler.getWaitingCount() != waitingCount)
+        {
+            assertTrue("Waiting decodes did not reach " + waitingCount, System.currentTimeMillis() < deadline);
+
+            Thread.sleep(5);
+        }
+    }
+
+    private static void join(Thread... threads) throws Exception
+    {
+        for(Thread thread : threads)
+        {
+            thread.join(TIMEOUT_MS);
+
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test
+    public void interactiveDecodesAreAdmittedBeforeBatchInArrivalOrder() throws Exception
+    {
+        long budget = DecodeScheduler.getMemoryBudget();
+
+        DecodeScheduler.Permit permit = DecodeScheduler.acquire(budget, DecodeScheduler.Priority.BATCH);
+
+        //each decode takes the whole budget, so they are admitted one at a time
+        Thread batch1 = startDecode("batch1", budget, DecodeScheduler.Priority.BATCH);
+        Thread batch2 = startDecode("batch2", budget, DecodeScheduler.Priority.BATCH);
+        Thread interactive1 = startDecode("interactive1", budget, DecodeScheduler.Priority.INTERACTIVE);
+        Thread interactive2 = startDecode("interactive2", budget, DecodeScheduler.Priority.INTERACTIVE);
+
+        assertTrue(admissions.isEmpty());
+
+        permit.close();
+
+        join(batch1, batch2, interactive1, interactive2);
+
+        assertEquals(Arrays.asList("interactive1", "interactive2", "batch1", "batch2"), admissions);
+        assertEquals(0, DecodeScheduler.getWaitingCount());
+    }
+
+    @Test
+    public void smallDecodeDoesNotOvertakeLargeDecode() throws Exception
+    {
+        long budget = DecodeScheduler.getMemoryBudget();
+
+        DecodeScheduler.Permit permit = DecodeScheduler.acquire(budget / 2, DecodeScheduler.Priority.BATCH);
+
+        Thread large = startDecode("large", budget, DecodeScheduler.Priority.BATCH);
+
+        //fits into remaining budget but waits behind the large decode
+        Thread small = startDecode("small", 1, DecodeScheduler.Priority.BATCH);
+
+        small.join(200);
+
+        assertTrue(small.isAlive());
+        assertTrue(admissions.isEmpty());
+
+        permit.close();
+
+        join(large, small);
+
+        assertEquals(Arrays.asList("large", "small"), admissions);
+    }
+
+    @Test
+    public void decodesWithinBudgetAreAdmittedTogether() throws Exception
+    {
+        long budget = DecodeScheduler.getMemoryBudget();
+
+        DecodeScheduler.Permit first = DecodeScheduler.acquire(budget / 2, DecodeScheduler.Priority.BATCH);
+
+        CompletableFuture<DecodeScheduler.Permit> second = CompletableFuture.supplyAsync(() -> {
+            try
+            {
+                return DecodeScheduler.acquire(budget / 2, DecodeScheduler.Priority.BATCH);
+            }
+            catch(InterruptedIOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        second.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).close();
+        first.close();
+    }
+
+    @Test
+    public void decodeLargerThanBudgetIsAdmittedAlone() throws Exception
+    {
+        long budget = DecodeScheduler.getMemoryBudget();
+
+        DecodeScheduler.Permit oversize = DecodeScheduler.acquire(budget * 4, DecodeScheduler.Priority.INTERACTIVE);
+
+        Thread next = startDecode("next", 1, DecodeScheduler.Priority.INTERACTIVE);
+
+        oversize.close();
+
+        //closing again does not release memory twice
+        oversize.close();
+
+        join(next);
+
+        assertEquals(Collections.singletonList("next"), admissions);
+
+        DecodeScheduler.acquire(budget, DecodeScheduler.Priority.BATCH).close();
+    }
+
+    @Test
+    public void interruptedDecodeLeavesQueue() throws Exception
+    {
+        long budget = DecodeScheduler.getMemoryBudget();
+
+        DecodeScheduler.Permit permit = DecodeScheduler.acquire(budget, DecodeScheduler.Priority.BATCH);
+
+        Thread interrupted = startDecode("waiting", budget, DecodeScheduler.Priority.INTERACTIVE);
+        Thread next = startDecode("next", budget, DecodeScheduler.Priority.BATCH);
+
+        interrupted.interrupt();
+        join(interrupted);
+
+        assertEquals(1, DecodeScheduler.getWaitingCount());
+
+        permit.close();
+
+        join(next);
+
+        assertEquals(Arrays.asList("waiting interrupted", "next"), admissions);
+    }
+}
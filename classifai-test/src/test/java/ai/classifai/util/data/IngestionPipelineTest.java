@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.data;
+
+import ai.classifai.data.type.image.ImageHeader;
+import ai.classifai.database.DatabaseConfig;
+import ai.classifai.database.TemporaryDatabase;
+import ai.classifai.database.annotation.AnnotationQuery;
+import ai.classifai.database.annotation.bndbox.BoundingBoxDbQuery;
+import ai.classifai.database.engine.HsqlStorageEngine;
+import ai.classifai.database.portfolio.PortfolioDbQuery;
+import ai.classifai.database.portfolio.PortfolioVerticle;
+import ai.classifai.loader.LoaderStatus;
+import ai.classifai.util.ProjectHandler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.ResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Deduplicated ingestion of images into a project
+ *
+ * @author codenamewei
+ */
+public class IngestionPipelineTest
+{
+    private static final int PROJECT_ID = 9001;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TemporaryDatabase database;
+    private TemporaryDatabase portfolioDatabase;
+
+    private final AtomicInteger skipCount = new AtomicInteger(0);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        database = new TemporaryDatabase(new HsqlStorageEngine());
+        portfolioDatabase = new TemporaryDatabase(new HsqlStorageEngine());
+
+        TemporaryDatabase.<ResultSet>await(handler -> database.getJdbcClient().call(BoundingBoxDbQuery.createProject(), handler));
+        TemporaryDatabase.<ResultSet>await(handler -> portfolioDatabase.getJdbcClient().call(PortfolioDbQuery.createPortfolioTable(), handler));
+        TemporaryDatabase.<ResultSet>await(handler -> portfolioDatabase.getJdbcClient().call(PortfolioDbQuery.createProjectUUIDTable(), handler));
+
+        //portfolio verticle is not deployed, seed and membership of ingested data points go to a temporary database
+        setPortfolioDbClient(portfolioDatabase.getJdbcClient());
+
+        ProjectHandler.buildProjectLoader("dedup", PROJECT_ID, 0, LoaderStatus.LOADED);
+
+        DatabaseConfig.setDeduplication(true);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        DatabaseConfig.setDeduplication(false);
+
+        ProjectHandler.deleteProjectWithID(PROJECT_ID);
+
+        setPortfolioDbClient(null);
+
+        database.close();
+        portfolioDatabase.close();
+    }
+
+    private static void setPortfolioDbClient(JDBCClient jdbcClient) throws Exception
+    {
+        Field field = PortfolioVerticle.class.getDeclaredField("portfolioDbClient");
+        field.setAccessible(true);
+        field.set(null, jdbcClient);
+    }
+
+    private File createImage(String name, Color color) throws Exception
+    {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, 64, 48);
+        graphics.dispose();
+
+        File file = folder.newFile(name);
+        ImageIO.write(image, "png", file);
+
+        return file;
+    }
+
+    private void ingest(File... files) throws Exception
+    {
+        IngestionPipeline pipeline = new IngestionPipeline(PROJECT_ID, database.getJdbcClient(), AnnotationQuery.createData(), new IngestionPipeline.IngestionListener()
+        {
+            @Override
+            public void onCommit(List<ImageHeader> headerList, List<Integer> uuidList) {}
+
+            @Override
+            public void onSkip(File file)
+            {
+                skipCount.incrementAndGet();
+            }
+        });
+
+        pipeline.ingestFiles(Arrays.asList(files)).get(1, TimeUnit.MINUTES);
+    }
+
+    private List<JsonArray> getDataPoints() throws Exception
+    {
+        ResultSet result = TemporaryDatabase.await(handler -> database.getJdbcClient().queryWithParams(AnnotationQuery.loadValidProjectUUID(),
+                new JsonArray().add(PROJECT_ID), handler));
+
+        return result.getResults();
+    }
+
+    @Test
+    public void sameImageImportedOnce() throws Exception
+    {
+        File image = createImage("a.png", Color.RED);
+
+        ingest(image);
+        ingest(image);
+
+        assertEquals(1, getDataPoints().size());
+        assertEquals(1, skipCount.get());
+    }
+
+    @Test
+    public void copyOfImageIsSkipped() throws Exception
+    {
+        File image = createImage("a.png", Color.RED);
+        File copy = folder.newFile("copy.png");
+        Files.copy(image.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        ingest(image, createImage("b.png", Color.BLUE));
+        ingest(copy);
+
+        assertEquals(2, getDataPoints().size());
+        assertEquals(1, skipCount.get());
+    }
+
+    @Test
+    public void legacyDataPointIsBackfilled() throws Exception
+    {
+        File image = createImage("legacy.png", Color.GREEN);
+
+        //data point imported before deduplication, without content hash
+        JsonArray params = new JsonArray().add(1).add(PROJECT_ID).add(image.getAbsolutePath()).add("[]")
+                .add(3).add(0).add(0).add(0).add(0).add(image.length()).add(64).add(48).add(0).addNull();
+
+        TemporaryDatabase.<ResultSet>await(handler -> database.getJdbcClient().queryWithParams(AnnotationQuery.createData(), params, handler));
+
+        ingest(image);
+
+        List<JsonArray> dataPoints = getDataPoints();
+
+        assertEquals(1, dataPoints.size());
+        assertEquals(1, (int) dataPoints.get(0).getInteger(0));
+        assertEquals(1, skipCount.get());
+
+        ResultSet hashes = TemporaryDatabase.await(handler -> database.getJdbcClient().queryWithParams(AnnotationQuery.loadContentHash(),
+                new JsonArray().add(PROJECT_ID), handler));
+
+        assertEquals(1, hashes.getResults().size());
+        assertEquals(ImageHeader.hash(image), hashes.getResults().get(0).getString(0));
+    }
+}
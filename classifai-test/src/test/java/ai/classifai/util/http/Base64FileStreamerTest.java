@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.http;
+
+import ai.classifai.database.TemporaryDatabase;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Base64 data uri streamed in chunks matches encoding of the whole file
+ *
+ * @author codenamewei
+ */
+public class Base64FileStreamerTest
+{
+    private static final int CHUNK_SIZE = 48 * 1024;
+
+    private static final String DATA_URI_HEADER = "data:image/png;base64,";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx vertx;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        vertx = Vertx.vertx();
+
+        Router router = Router.router(vertx);
+
+        router.get("/:name").handler(context -> new Base64FileStreamer(context, new File(folder.getRoot(), context.request().getParam("name")))
+                .stream(new JsonObject().put("uuid", 1), "img_src", DATA_URI_HEADER));
+
+        server = TemporaryDatabase.<HttpServer>await(handler -> vertx.createHttpServer().requestHandler(router).listen(0, handler));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        TemporaryDatabase.<Void>await(vertx::close);
+    }
+
+    private static byte[] createData(int length)
+    {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+
+        return data;
+    }
+
+    /**
+     * Feed data in chunks of given lengths, cycled until all data is encoded
+     */
+    private static String encodeInChunks(byte[] data, int... chunkLengths)
+    {
+        Base64FileStreamer.ChunkEncoder encoder = new Base64FileStreamer.ChunkEncoder();
+
+        StringBuilder builder = new StringBuilder();
+
+        int offset = 0;
+
+        for(int i = 0; offset < data.length; ++i)
+        {
+            int length = Math.min(chunkLengths[i % chunkLengths.length], data.length - offset);
+
+            builder.append(new String(encoder.encode(Arrays.copyOfRange(data, offset, offset + length)), StandardCharsets.US_ASCII));
+
+            offset += length;
+        }
+
+        return builder.append(new String(encoder.end(), StandardCharsets.US_ASCII)).toString();
+    }
+
+    @Test
+    public void remainderIsCarriedAcrossChunks()
+    {
+        for(int length : new int[]{0, 1, 2, 3, 4, 5, 100, 1001})
+        {
+            byte[] data = createData(length);
+            String expected = Base64.getEncoder().encodeToString(data);
+
+            assertEquals(expected, encodeInChunks(data, 1));
+            assertEquals(expected, encodeInChunks(data, 2));
+            assertEquals(expected, encodeInChunks(data, 3));
+            assertEquals(expected, encodeInChunks(data, 4));
+            assertEquals(expected, encodeInChunks(data, 1, 5, 7, 2));
+            assertEquals(expected, encodeInChunks(data, length + 1));
+        }
+    }
+
+    @Test
+    public void emptyChunkKeepsRemainder()
+    {
+        byte[] data = createData(8);
+
+        Base64FileStreamer.ChunkEncoder encoder = new Base64FileStreamer.ChunkEncoder();
+
+        String encoded = new String(encoder.encode(Arrays.copyOf(data, 4)), StandardCharsets.US_ASCII)
+                + new String(encoder.encode(new byte[0]), StandardCharsets.US_ASCII)
+                + new String(encoder.encode(Arrays.copyOfRange(data, 4, 8)), StandardCharsets.US_ASCII)
+                + new String(encoder.end(), StandardCharsets.US_ASCII);
+
+        assertEquals(Base64.getEncoder().encodeToString(data), encoded);
+    }
+
+    private JsonObject fetch(String name) throws Exception
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.actualPort() + "/" + name).openConnection();
+
+        try(InputStream input = connection.getInputStream())
+        {
+            assertEquals(200, connection.getResponseCode());
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            input.transferTo(body);
+
+            return new JsonObject(body.toString(StandardCharsets.UTF_8));
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void streamedDataURIDecodesToFile() throws Exception
+    {
+        for(int length : new int[]{0, 1, 2, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, CHUNK_SIZE * 3 + 2})
+        {
+            byte[] data = createData(length);
+
+            String name = "image" + length + ".png";
+            Files.write(new File(folder.getRoot(), name).toPath(), data);
+
+            JsonObject reply = fetch(name);
+
+            assertEquals(1, (int) reply.getInteger("uuid"));
+
+            String dataURI = reply.getString("img_src");
+
+            assertEquals(DATA_URI_HEADER, dataURI.substring(0, DATA_URI_HEADER.length()));
+            assertArrayEquals(data, Base64.getDecoder().decode(dataURI.substring(DATA_URI_HEADER.length())));
+        }
+    }
+}
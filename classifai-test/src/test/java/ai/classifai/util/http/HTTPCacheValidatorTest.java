@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.http;
+
+import ai.classifai.util.type.AnnotationType;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Image path of data points remembered for conditional requests
+ *
+ * @author codenamewei
+ */
+public class HTTPCacheValidatorTest
+{
+    @Test
+    public void deletedDataPointIsForgotten()
+    {
+        HTTPCacheValidator.registerImagePath(AnnotationType.BOUNDINGBOX, 1, 1, "/data/1.jpg");
+        HTTPCacheValidator.registerImagePath(AnnotationType.BOUNDINGBOX, 1, 2, "/data/2.jpg");
+
+        HTTPCacheValidator.removeImagePath(1, Collections.singletonList(1));
+
+        assertNull(HTTPCacheValidator.getImagePath(AnnotationType.BOUNDINGBOX, 1, 1));
+        assertEquals("/data/2.jpg", HTTPCacheValidator.getImagePath(AnnotationType.BOUNDINGBOX, 1, 2));
+    }
+
+    @Test
+    public void deletedProjectIsForgotten()
+    {
+        HTTPCacheValidator.registerImagePath(AnnotationType.BOUNDINGBOX, 2, 1, "/data/a.jpg");
+        HTTPCacheValidator.registerImagePath(AnnotationType.SEGMENTATION, 2, 2, "/data/b.jpg");
+
+        //project id sharing a prefix is kept
+        HTTPCacheValidator.registerImagePath(AnnotationType.BOUNDINGBOX, 21, 1, "/data/c.jpg");
+
+        HTTPCacheValidator.updateAnnotationVersion(AnnotationType.BOUNDINGBOX, 2, 1);
+
+        HTTPCacheValidator.removeProject(2);
+
+        assertNull(HTTPCacheValidator.getImagePath(AnnotationType.BOUNDINGBOX, 2, 1));
+        assertNull(HTTPCacheValidator.getImagePath(AnnotationType.SEGMENTATION, 2, 2));
+        assertEquals("/data/c.jpg", HTTPCacheValidator.getImagePath(AnnotationType.BOUNDINGBOX, 21, 1));
+
+        //annotation version is back to server start time
+        assertEquals(HTTPCacheValidator.getAnnotationVersion(AnnotationType.BOUNDINGBOX, 3, 1),
+                HTTPCacheValidator.getAnnotationVersion(AnnotationType.BOUNDINGBOX, 2, 1));
+    }
+}
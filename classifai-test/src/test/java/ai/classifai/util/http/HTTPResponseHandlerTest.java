@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020-2021 CertifAI Sdn. Bhd.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Apache License, Version 2.0 which is available at
+ * https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package ai.classifai.util.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Parsing of single byte range of Range header
+ *
+ * @author codenamewei
+ */
+public class HTTPResponseHandlerTest
+{
+    private static final long FILE_LENGTH = 1000;
+
+    private static void assertRange(long start, long end, String byteRange)
+    {
+        assertArrayEquals(new long[]{start, end}, HTTPResponseHandler.parseByteRange(byteRange, FILE_LENGTH));
+    }
+
+    private static void assertUnsatisfiable(String byteRange, long fileLength)
+    {
+        assertEquals(0, HTTPResponseHandler.parseByteRange(byteRange, fileLength).length);
+    }
+
+    @Test
+    public void boundedRange()
+    {
+        assertRange(0, 499, "0-499");
+        assertRange(500, 500, "500-500");
+        assertRange(10, 20, "10 - 20");
+    }
+
+    @Test
+    public void lastBytePositionIsClampedToFileLength()
+    {
+        assertRange(900, 999, "900-5000");
+        assertRange(0, 999, "0-" + Long.MAX_VALUE);
+    }
+
+    @Test
+    public void openEndedRange()
+    {
+        assertRange(0, 999, "0-");
+        assertRange(999, 999, "999-");
+    }
+
+    @Test
+    public void suffixRange()
+    {
+        assertRange(900, 999, "-100");
+        assertRange(0, 999, "-1000");
+        assertRange(0, 999, "-5000");
+    }
+
+    @Test
+    public void unsatisfiableRange()
+    {
+        assertUnsatisfiable("1000-", FILE_LENGTH);
+        assertUnsatisfiable("1000-2000", FILE_LENGTH);
+        assertUnsatisfiable("-0", FILE_LENGTH);
+        assertUnsatisfiable("-10", 0);
+        assertUnsatisfiable("0-", 0);
+    }
+
+    @Test
+    public void malformedRangeIsIgnored()
+    {
+        assertNull(HTTPResponseHandler.parseByteRange("", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("-", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("abc", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("10", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("a-b", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("--5", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("+1-5", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("500-100", FILE_LENGTH));
+        assertNull(HTTPResponseHandler.parseByteRange("99999999999999999999-", FILE_LENGTH));
+    }
+}
@@ -26,8 +26,8 @@ import org.junit.Test;
 public class AppTest 
 {
     @Test
-    public void initializeAppSuccessfully()
+    public void initializeAppSuccessfully() throws Exception
     {
-        ai.classifai.ClassifaiApp.main(null);
+        ai.classifai.ClassifaiApp.main(new String[]{});
     }
 }